@@ -0,0 +1,34 @@
+package com.omprakashyadav.arrange.photos;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Temporary directories for the benchmarks to generate their files in, see {@link SyntheticCorpus} for media files.
+ */
+final class BenchmarkFiles {
+
+  private BenchmarkFiles() {
+  }
+
+  static Path createTempDirectory(String prefix) {
+    try {
+      return Files.createTempDirectory(prefix);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  static void deleteRecursively(Path directory) {
+    if (directory == null) {
+      return;
+    }
+    try {
+      FileUtil.deleteRecursively(directory);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
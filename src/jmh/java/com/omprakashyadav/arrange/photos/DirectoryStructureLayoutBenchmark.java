@@ -0,0 +1,55 @@
+package com.omprakashyadav.arrange.photos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DirectoryStructureLayout#getFormat} over capture dates spread across ten years, as in a photo library, and a
+ * custom {@link LayoutTemplate} with a camera folder, which is rendered for every file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DirectoryStructureLayoutBenchmark {
+
+  private static final int DATES = 4096;
+
+  @Param({"YEAR_MONTH", "YEAR_MONTH_DAY"})
+  DirectoryStructureLayout layout;
+
+  private final LayoutTemplate customTemplate = LayoutTemplate.compile("{yyyy}/{MM}-{MMM}/{dd}/{camera}", ZoneId.of("Europe/Paris"));
+  private final Date[] dates = new Date[DATES];
+  private int next;
+
+  @Setup
+  public void createDates() {
+    final Random random = new Random(42);
+    final long start = 1_420_070_400_000L; // 2015-01-01
+    for (int i = 0; i < DATES; i++) {
+      dates[i] = new Date(start + (long) (random.nextDouble() * TimeUnit.DAYS.toMillis(3650)));
+    }
+  }
+
+  @Benchmark
+  public String getFormat() {
+    next = (next + 1) & (DATES - 1);
+    return layout.getFormat(dates[next]);
+  }
+
+  @Benchmark
+  public String customTemplate() {
+    next = (next + 1) & (DATES - 1);
+    return customTemplate.format(dates[next], "Canon EOS R5", MediaType.IMAGE);
+  }
+}
@@ -0,0 +1,57 @@
+package com.omprakashyadav.arrange.photos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Capture date and coordinates extraction as the organizer does it: the bounded-read EXIF fast path for a JPEG, and
+ * the metadata-extractor fallback for a TIFF the fast path leaves alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExifDateBenchmark {
+
+  private Path directory;
+  private Path jpeg;
+  private Path tiff;
+
+  @Setup(Level.Trial)
+  public void createFiles() throws Exception {
+    directory = BenchmarkFiles.createTempDirectory("photo-organizer-exif");
+    final LocalDateTime captureDate = LocalDateTime.of(2021, 7, 4, 10, 20, 30);
+    jpeg = Files.write(directory.resolve("photo.jpg"), SyntheticCorpus.jpeg(captureDate, new double[]{48.8584, 2.2945}, new byte[0]));
+    tiff = Files.write(directory.resolve("photo.tif"), SyntheticCorpus.tiff(captureDate, new double[]{48.8584, 2.2945}));
+    if (ImageOrganizerWithGeo.readExifHeader(jpeg).captureDate() == null
+        || ImageOrganizerWithGeo.readExifHeader(tiff).captureDate() == null) {
+      throw new IllegalStateException("Generated files have no capture date");
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteFiles() {
+    BenchmarkFiles.deleteRecursively(directory);
+  }
+
+  @Benchmark
+  public ExifHeaderReader.ExifHeader jpegFastPath() throws Exception {
+    return ImageOrganizerWithGeo.readExifHeader(jpeg);
+  }
+
+  @Benchmark
+  public ExifHeaderReader.ExifHeader metadataExtractorFallback() throws Exception {
+    return ImageOrganizerWithGeo.readExifHeader(tiff);
+  }
+}
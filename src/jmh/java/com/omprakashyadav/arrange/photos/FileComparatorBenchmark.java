@@ -0,0 +1,79 @@
+package com.omprakashyadav.arrange.photos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FileComparator#areFilesIdentical} on same-size files differing in the first block, in the last block, or
+ * identical. The files stay in the page cache, so this measures the compare loop rather than the disk.
+ * {@link #fullHash} is the baseline the comparator replaced: a SHA-256 of both files, which reads them whole even when
+ * they differ in the first block.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FileComparatorBenchmark {
+
+  @Param({"1048576", "67108864"})
+  int size;
+
+  private Path directory;
+  private Path original;
+  private Path copy;
+  private Path prefixDiffers;
+  private Path tailDiffers;
+
+  @Setup(Level.Trial)
+  public void createFiles() throws IOException {
+    directory = BenchmarkFiles.createTempDirectory("photo-organizer-compare");
+    final byte[] content = new byte[size];
+    new Random(42).nextBytes(content);
+    original = Files.write(directory.resolve("original.jpg"), content);
+    copy = Files.write(directory.resolve("copy.jpg"), content);
+    content[0] ^= 1;
+    prefixDiffers = Files.write(directory.resolve("prefix.jpg"), content);
+    content[0] ^= 1;
+    content[size - 1] ^= 1;
+    tailDiffers = Files.write(directory.resolve("tail.jpg"), content);
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteFiles() {
+    BenchmarkFiles.deleteRecursively(directory);
+  }
+
+  @Benchmark
+  public boolean prefixDiffers() throws IOException {
+    return FileComparator.areFilesIdentical(original, prefixDiffers);
+  }
+
+  @Benchmark
+  public boolean tailDiffers() throws IOException {
+    return FileComparator.areFilesIdentical(original, tailDiffers);
+  }
+
+  @Benchmark
+  public boolean identical() throws IOException {
+    return FileComparator.areFilesIdentical(original, copy);
+  }
+
+  @Benchmark
+  public boolean fullHash() throws IOException {
+    final HashEngine engine = HashEngine.of(HashAlgorithm.SHA_256);
+    return engine.hashFile(original).equals(engine.hashFile(prefixDiffers));
+  }
+}
@@ -0,0 +1,100 @@
+package com.omprakashyadav.arrange.photos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Location lookups served from the cache: through {@link GeoLocationFetcher#getLocationAsync} for a point near an
+ * already resolved one, and straight on the {@link SpatialLocationCache} for hits and misses. The API is stubbed, it is
+ * only called while the cache is filled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GeoLocationCacheBenchmark {
+
+  private static final int QUERIES = 4096;
+  private static final double RADIUS_METERS = 100;
+  // About 30 meters, well within the radius
+  private static final double JITTER_DEGREES = 0.0003;
+
+  @Param({"1000", "100000"})
+  int entries;
+
+  private Path directory;
+  private GeoLocationFetcher fetcher;
+  private SpatialLocationCache<String> cache;
+  private final double[] hits = new double[QUERIES * 2];
+  private final double[] misses = new double[QUERIES * 2];
+  private int next;
+
+  @Setup(Level.Trial)
+  public void fillCache() {
+    directory = BenchmarkFiles.createTempDirectory("photo-organizer-geo");
+    fetcher = new GeoLocationFetcher(directory.resolve("location_cache.json"), RADIUS_METERS, entries, GeocoderBackend.GOOGLE);
+    fetcher.googleGeoLocationFetcher = new GoogleGeoLocationFetcher("key", "http://localhost", 1, 1, 0) {
+      @Override
+      public CompletableFuture<String> fetchLocationAsync(double latitude, double longitude) {
+        return CompletableFuture.completedFuture("Place " + Math.round(latitude) + "," + Math.round(longitude));
+      }
+    };
+    cache = new SpatialLocationCache<>(RADIUS_METERS, entries);
+    final Random random = new Random(42);
+    final double[] points = new double[entries * 2];
+    for (int i = 0; i < entries; i++) {
+      // Photo libraries cluster, keep the points on land-sized patches rather than spread over the globe
+      points[i * 2] = 40 + random.nextDouble() * 10;
+      points[i * 2 + 1] = -5 + random.nextDouble() * 20;
+      fetcher.getLocationAsync(points[i * 2], points[i * 2 + 1]).join();
+      cache.put(points[i * 2], points[i * 2 + 1], "Place " + i);
+    }
+    for (int i = 0; i < QUERIES; i++) {
+      final int point = random.nextInt(entries);
+      hits[i * 2] = points[point * 2] + (random.nextDouble() - 0.5) * JITTER_DEGREES;
+      hits[i * 2 + 1] = points[point * 2 + 1] + (random.nextDouble() - 0.5) * JITTER_DEGREES;
+      misses[i * 2] = -40 - random.nextDouble() * 10;
+      misses[i * 2 + 1] = 140 + random.nextDouble() * 20;
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteCache() {
+    BenchmarkFiles.deleteRecursively(directory);
+  }
+
+  @Benchmark
+  public String fetcherHit() {
+    final int query = next();
+    return fetcher.getLocationAsync(hits[query], hits[query + 1]).join();
+  }
+
+  @Benchmark
+  public String spatialHit() {
+    final int query = next();
+    return cache.get(hits[query], hits[query + 1]);
+  }
+
+  @Benchmark
+  public String spatialMiss() {
+    final int query = next();
+    return cache.get(misses[query], misses[query + 1]);
+  }
+
+  private int next() {
+    next = (next + 1) & (QUERIES - 1);
+    return next * 2;
+  }
+}
@@ -0,0 +1,43 @@
+package com.omprakashyadav.arrange.photos;
+
+import com.drew.lang.Rational;
+import com.drew.metadata.exif.GpsDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link GpsUtils#extractCoordinates} on a GPS directory as metadata-extractor reads it from a photo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GpsUtilsBenchmark {
+
+  private GpsDirectory gpsDirectory;
+
+  @Setup
+  public void createDirectory() {
+    gpsDirectory = new GpsDirectory();
+    gpsDirectory.setString(GpsDirectory.TAG_LATITUDE_REF, "N");
+    gpsDirectory.setRationalArray(GpsDirectory.TAG_LATITUDE, new Rational[]{new Rational(48, 1), new Rational(51, 1), new Rational(3024, 100)});
+    gpsDirectory.setString(GpsDirectory.TAG_LONGITUDE_REF, "E");
+    gpsDirectory.setRationalArray(GpsDirectory.TAG_LONGITUDE, new Rational[]{new Rational(2, 1), new Rational(17, 1), new Rational(4020, 100)});
+  }
+
+  @Benchmark
+  public double[] extractCoordinates() {
+    return GpsUtils.extractCoordinates(gpsDirectory);
+  }
+
+  @Benchmark
+  public boolean isValidGpsData() {
+    return GpsUtils.isValidGpsData(gpsDirectory);
+  }
+}
@@ -0,0 +1,68 @@
+package com.omprakashyadav.arrange.photos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link FileUtil#walkFiles} over a generated tree of year/month/day directories, a third of the files being of a type
+ * the walk skips.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WalkFilesBenchmark {
+
+  private static final String[] EXTENSIONS = {".jpg", ".mp4", ".txt"};
+
+  @Param({"1000", "20000"})
+  int files;
+
+  @Param({"50"})
+  int filesPerDirectory;
+
+  private Path directory;
+
+  @Setup(Level.Trial)
+  public void createTree() throws IOException {
+    directory = BenchmarkFiles.createTempDirectory("photo-organizer-walk");
+    for (int i = 0; i < files; i++) {
+      final int leaf = i / filesPerDirectory;
+      final Path parent = directory.resolve(String.valueOf(2000 + leaf / 360)).resolve(String.valueOf(leaf / 30 % 12)).resolve(String.valueOf(leaf % 30));
+      Files.createDirectories(parent);
+      Files.write(parent.resolve("IMG_" + i + EXTENSIONS[i % EXTENSIONS.length]), new byte[]{1});
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteTree() {
+    BenchmarkFiles.deleteRecursively(directory);
+  }
+
+  @Benchmark
+  public long walkFiles() throws IOException {
+    final LongAdder found = new LongAdder();
+    FileUtil.walkFiles(directory, FileFormats.COMMON_MEDIA, path -> found.increment());
+    return found.sum();
+  }
+
+  @Benchmark
+  public long walkFilesWithAttributes() throws IOException {
+    final LongAdder bytes = new LongAdder();
+    FileUtil.walkFilesWithAttributes(directory, FileFormats.COMMON_MEDIA, (path, attributes) -> bytes.add(attributes.size()));
+    return bytes.sum();
+  }
+}
@@ -0,0 +1,328 @@
+package com.omprakashyadav.arrange.photos;
+
+import com.google.gson.GsonBuilder;
+import jakarta.inject.Inject;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static com.omprakashyadav.arrange.photos.FileFormats.COMMON_MEDIA;
+
+@CommandLine.Command(
+  name = "bench",
+  mixinStandardHelpOptions = true,
+  description = "Generate a synthetic media library, organize it and detect its duplicates, and report the throughput as JSON."
+)
+public class BenchCli implements Runnable {
+
+  @CommandLine.Option(
+    names = {"-w", "--work-dir"},
+    description = "Empty or missing directory to generate the library and organize it in. Defaults to a temporary directory, deleted afterwards. "
+                  + "Only the library and organized folders created in a given directory are deleted.",
+    required = false
+  )
+  String workDir;
+
+  @CommandLine.Option(
+    names = {"--images"},
+    description = "Number of JPEG files.",
+    required = false,
+    defaultValue = "1000"
+  )
+  int images;
+
+  @CommandLine.Option(
+    names = {"--pngs"},
+    description = "Number of PNG files.",
+    required = false,
+    defaultValue = "100"
+  )
+  int pngs;
+
+  @CommandLine.Option(
+    names = {"--videos"},
+    description = "Number of MP4 files.",
+    required = false,
+    defaultValue = "10"
+  )
+  int videos;
+
+  @CommandLine.Option(
+    names = {"--duplicate-ratio"},
+    description = "Share of the files, from 0 to 1, which are byte-identical copies of another file.",
+    required = false,
+    defaultValue = "0.1"
+  )
+  double duplicateRatio;
+
+  @CommandLine.Option(
+    names = {"--depth"},
+    description = "Maximum directory nesting of the library.",
+    required = false,
+    defaultValue = "3"
+  )
+  int depth;
+
+  @CommandLine.Option(
+    names = {"--image-size"},
+    description = "Average image size in KB.",
+    required = false,
+    defaultValue = "256"
+  )
+  int imageSizeKb;
+
+  @CommandLine.Option(
+    names = {"--video-size"},
+    description = "Average video size in KB.",
+    required = false,
+    defaultValue = "8192"
+  )
+  int videoSizeKb;
+
+  @CommandLine.Option(
+    names = {"--seed"},
+    description = "Seed of the generated library, the same seed gives the same files.",
+    required = false,
+    defaultValue = "1"
+  )
+  long seed;
+
+  @CommandLine.Option(
+    names = {"-l", "--layout"},
+    description = "Layout or layout template to organize the library in, see photo-organizer. Place layouts call the configured geocoder.",
+    required = false,
+    defaultValue = "YYYY/MMM/DD"
+  )
+  String layout;
+
+  @CommandLine.Option(
+    names = {"--hash"},
+    description = "Hash confirming duplicates, see detect-duplicate.",
+    required = false,
+    defaultValue = "sha256"
+  )
+  String hash;
+
+  @CommandLine.Option(
+    names = {"--keep"},
+    description = "Keep the generated library and the organized copy.",
+    required = false,
+    defaultValue = "false"
+  )
+  boolean keep;
+
+  @CommandLine.Option(
+    names = {"-r", "--result-file"},
+    description = "File to write the JSON results to.",
+    required = false,
+    defaultValue = "bench-results.json"
+  )
+  String resultFile;
+
+  @Inject
+  GeoLocationFetcher geoLocationFetcher;
+
+  /**
+   * The results written as JSON.
+   *
+   * @param corpus              The generated library.
+   * @param phases              One entry per command run against the library.
+   * @param duplicatesFound     Files detect-duplicate found to be copies, should equal {@code corpus.duplicates}.
+   * @param peakRssBytes        Peak resident set size of the process, -1 where the OS doesn't report it.
+   * @param availableProcessors Processors available to the JVM.
+   * @param maxHeapBytes        Maximum heap size of the JVM.
+   * @param javaVersion         Version of the JVM.
+   */
+  record BenchResult(CorpusResult corpus, List<PhaseResult> phases, long duplicatesFound, long peakRssBytes,
+                     int availableProcessors, long maxHeapBytes, String javaVersion) {
+  }
+
+  record CorpusResult(SyntheticCorpus.Spec spec, int files, int duplicates, long bytes, double seconds) {
+  }
+
+  /**
+   * @param peakHeapBytes Sum of the peak usage of the heap pools during the phase, an upper bound of the heap used.
+   * @param stages        Latency of each stage which ran, keyed by {@link Stage#getId()}.
+   */
+  record PhaseResult(String name, long files, long bytes, double seconds, double filesPerSecond,
+                     double megabytesPerSecond, long gcCount, long gcMillis, long peakHeapBytes,
+                     Map<String, StageResult> stages) {
+  }
+
+  record StageResult(long count, double totalSeconds, double meanMillis, double p50Millis, double p95Millis,
+                     double p99Millis, double maxMillis) {
+  }
+
+  @Override
+  public void run() {
+    if (!HashAlgorithm.fromString(hash).isCryptographic()) {
+      ErrorBase.exit("Hash: \"{0}\" can not confirm duplicates, use sha256 or sha256-tree.", hash);
+      return;
+    }
+    try {
+      if (workDir != null && Files.exists(Path.of(workDir)) && !Files.isDirectory(Path.of(workDir))) {
+        ErrorBase.exit("Work dir: \"{0}\" is not a directory.", workDir);
+        return;
+      }
+      if (workDir != null && Files.isDirectory(Path.of(workDir)) && !isEmpty(Path.of(workDir))) {
+        ErrorBase.exit("Work dir: \"{0}\" is not empty.", workDir);
+        return;
+      }
+      final Path work = workDir != null ? Path.of(workDir) : Files.createTempDirectory("photo-organizer-bench");
+      final Path library = work.resolve("library");
+      final Path organized = work.resolve("organized");
+      try {
+        final BenchResult result = bench(library, organized);
+        Files.writeString(Path.of(resultFile), new GsonBuilder().setPrettyPrinting().create().toJson(result), StandardCharsets.UTF_8);
+        System.out.println("Results written to: " + Path.of(resultFile).toAbsolutePath());
+      } finally {
+        if (!keep) {
+          // Only what the bench created, a work dir given by the user is left in place
+          if (workDir != null) {
+            FileUtil.deleteRecursively(library);
+            FileUtil.deleteRecursively(organized);
+          } else {
+            FileUtil.deleteRecursively(work);
+          }
+        }
+      }
+    } catch (Exception e) {
+      System.err.println("Error: " + e.getMessage());
+      e.printStackTrace();
+    }
+  }
+
+  private BenchResult bench(Path library, Path organized) throws Exception {
+    final SyntheticCorpus.Spec spec = new SyntheticCorpus.Spec(images, pngs, videos, duplicateRatio, depth,
+                                                               imageSizeKb * 1024, videoSizeKb * 1024, seed);
+    System.out.println("Generating " + (images + pngs + videos) + " files in: " + library);
+    final long generateStart = System.nanoTime();
+    final SyntheticCorpus.Summary summary = SyntheticCorpus.generate(library, spec);
+    final CorpusResult corpus = new CorpusResult(spec, summary.files(), summary.duplicates(), summary.bytes(),
+                                                 (System.nanoTime() - generateStart) / 1e9);
+    System.out.printf("Generated %d files, %d duplicates, %s in %.1f s%n", corpus.files(), corpus.duplicates(),
+                      StatsCollector.humanReadableSize(corpus.bytes()), corpus.seconds());
+
+    final List<PhaseResult> phases = new ArrayList<>();
+    System.out.println("Running photo-organizer...");
+    final StatsCollector organizeStats = new StatsCollector();
+    Measurement measurement = Measurement.start();
+    new ImageOrganizerWithGeo(LayoutTemplate.parse(layout, ZoneId.systemDefault()), organizeStats, ScanCatalog.inMemory(),
+                              OrganizeOptions.defaults(), geoLocationFetcher)
+      .organizeImages(library, organized);
+    phases.add(print(measurement.finish("photo-organizer", organizeStats.completedFiles(), organizeStats.completedBytes(), organizeStats)));
+
+    System.out.println("Running detect-duplicate...");
+    final StatsCollector dedupStats = new StatsCollector();
+    measurement = Measurement.start();
+    final Map<Digest, DuplicateFinder.DuplicateGroup> duplicateGroups;
+    try (SizeIndex sizeIndex = new SizeIndex(256L * 1024 * 1024)) {
+      new MediaScanner(library, COMMON_MEDIA, MediaScanner.DEFAULT_BUFFER_SIZE, dedupStats)
+        .consume(file -> {
+          dedupStats.addScanned(file.attributes().size());
+          sizeIndex.add(file.attributes().size(), file.path());
+        })
+        .join();
+      duplicateGroups = new DuplicateFinder(ScanCatalog.inMemory(), HashEngine.of(HashAlgorithm.fromString(hash)), dedupStats)
+        .findDuplicates(sizeIndex);
+    }
+    phases.add(print(measurement.finish("detect-duplicate", dedupStats.scannedFiles(), dedupStats.scannedBytes(), dedupStats)));
+    final long duplicatesFound = duplicateGroups.values().stream().mapToLong(group -> group.files().size() - 1).sum();
+    System.out.println("Duplicates found: " + duplicatesFound + " of " + corpus.duplicates());
+
+    return new BenchResult(corpus, phases, duplicatesFound, peakRssBytes(), Runtime.getRuntime().availableProcessors(),
+                           Runtime.getRuntime().maxMemory(), System.getProperty("java.version"));
+  }
+
+  private static PhaseResult print(PhaseResult phase) {
+    System.out.printf("%s: %d files, %s in %.1f s, %.1f files/s, %.1f MB/s, GC %d ms%n", phase.name(), phase.files(),
+                      StatsCollector.humanReadableSize(phase.bytes()), phase.seconds(), phase.filesPerSecond(),
+                      phase.megabytesPerSecond(), phase.gcMillis());
+    return phase;
+  }
+
+  private static boolean isEmpty(Path directory) throws IOException {
+    try (Stream<Path> children = Files.list(directory)) {
+      return children.findAny().isEmpty();
+    }
+  }
+
+  /**
+   * @return VmHWM from /proc, -1 on systems without it.
+   */
+  private static long peakRssBytes() {
+    try {
+      for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+        if (line.startsWith("VmHWM:")) {
+          return Long.parseLong(line.substring("VmHWM:".length()).replace("kB", "").trim()) * 1024;
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      // Not Linux
+    }
+    return -1;
+  }
+
+  /**
+   * Wall time, GC activity and heap peak of a phase.
+   */
+  private static class Measurement {
+    private final long startNanos;
+    private final long startGcCount;
+    private final long startGcMillis;
+
+    private Measurement() {
+      this.startNanos = System.nanoTime();
+      this.startGcCount = gcCount();
+      this.startGcMillis = gcMillis();
+    }
+
+    static Measurement start() {
+      ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+      return new Measurement();
+    }
+
+    PhaseResult finish(String name, long files, long bytes, StatsCollector stats) {
+      final double seconds = Math.max(1e-3, (System.nanoTime() - startNanos) / 1e9);
+      final long peakHeap = ManagementFactory.getMemoryPoolMXBeans().stream()
+                                             .filter(pool -> pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null)
+                                             .mapToLong(pool -> pool.getPeakUsage().getUsed())
+                                             .sum();
+      final Map<String, StageResult> stages = new LinkedHashMap<>();
+      for (Stage stage : Stage.values()) {
+        final LatencyHistogram histogram = stats.latency(stage);
+        if (histogram.count() > 0) {
+          stages.put(stage.getId(), new StageResult(histogram.count(), histogram.sumNanos() / 1e9,
+                                                    histogram.sumNanos() / 1e6 / histogram.count(),
+                                                    histogram.percentileNanos(0.5) / 1e6, histogram.percentileNanos(0.95) / 1e6,
+                                                    histogram.percentileNanos(0.99) / 1e6, histogram.maxNanos() / 1e6));
+        }
+      }
+      return new PhaseResult(name, files, bytes, seconds, files / seconds, bytes / seconds / (1024 * 1024),
+                             gcCount() - startGcCount, gcMillis() - startGcMillis, peakHeap, stages);
+    }
+
+    private static long gcCount() {
+      return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                              .mapToLong(GarbageCollectorMXBean::getCollectionCount).filter(count -> count > 0).sum();
+    }
+
+    private static long gcMillis() {
+      return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                              .mapToLong(GarbageCollectorMXBean::getCollectionTime).filter(millis -> millis > 0).sum();
+    }
+  }
+}
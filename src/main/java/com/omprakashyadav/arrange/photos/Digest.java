@@ -0,0 +1,72 @@
+package com.omprakashyadav.arrange.photos;
+
+import java.util.Arrays;
+
+/**
+ * A raw digest value, usable as a map key. Digests of different algorithms are never equal.
+ */
+public final class Digest {
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private final HashAlgorithm algorithm;
+  private final byte[] bytes;
+  private final int hashCode;
+
+  public Digest(HashAlgorithm algorithm, byte[] bytes) {
+    this.algorithm = algorithm;
+    this.bytes = bytes;
+    this.hashCode = 31 * algorithm.hashCode() + Arrays.hashCode(bytes);
+  }
+
+  public HashAlgorithm getAlgorithm() {
+    return algorithm;
+  }
+
+  /**
+   * @return The digest bytes. Not copied, callers must not modify them.
+   */
+  public byte[] getBytes() {
+    return bytes;
+  }
+
+  /**
+   * @return The first 8 bytes of the digest as a little endian long.
+   */
+  public long asLong() {
+    long value = 0;
+    for (int i = Math.min(8, bytes.length) - 1; i >= 0; i--) {
+      value = (value << 8) | (bytes[i] & 0xFF);
+    }
+    return value;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Digest other)) {
+      return false;
+    }
+    return algorithm == other.algorithm && Arrays.equals(bytes, other.bytes);
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  /**
+   * @return The digest as a hexadecimal string, for display only.
+   */
+  @Override
+  public String toString() {
+    final char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+      chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+    }
+    return new String(chars);
+  }
+}
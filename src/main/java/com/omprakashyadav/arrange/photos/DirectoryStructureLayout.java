@@ -1,26 +1,49 @@
 package com.omprakashyadav.arrange.photos;
 
-import java.time.Instant;
 import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.temporal.ChronoField;
 import java.util.Date;
 
 public enum DirectoryStructureLayout {
   //YYYY/MMM/DD, YYY/MMM
-  YEAR_MONTH_DAY("YYYY/MMM/DD"),
-  YEAR_MONTH("YYYY/MMM");
+  YEAR_MONTH_DAY("YYYY/MMM/DD", "{yyyy}/{MMM}/{d}"),
+  YEAR_MONTH("YYYY/MMM", "{yyyy}/{MMM}"),
+  //Date folders followed by the place the photo was taken, resolved from its GPS coordinates
+  YEAR_MONTH_PLACE("YYYY/MMM/<place>", "{yyyy}/{MMM}/{place}"),
+  YEAR_MONTH_DAY_PLACE("YYYY/MMM/DD/<place>", "{yyyy}/{MMM}/{d}/{place}");
 
   private final String layout;
+  private final String template;
+  private final LayoutTemplate defaultZoneTemplate;
 
-  DirectoryStructureLayout(String layout) {
+  DirectoryStructureLayout(String layout, String template) {
     this.layout = layout;
+    this.template = template;
+    this.defaultZoneTemplate = LayoutTemplate.compile(template, ZoneId.systemDefault());
   }
 
   public String getLayout() {
     return layout;
   }
 
+  /**
+   * @return true if the layout ends with a place folder, which {@link #getFormat(Date)} leaves out.
+   */
+  public boolean hasPlace() {
+    return this == YEAR_MONTH_PLACE || this == YEAR_MONTH_DAY_PLACE;
+  }
+
+  public String getTemplate() {
+    return template;
+  }
+
+  /**
+   * @param zone Time zone the dates are rendered in.
+   * @return The layout as a compiled template.
+   */
+  public LayoutTemplate toTemplate(ZoneId zone) {
+    return zone.equals(defaultZoneTemplate.getZone()) ? defaultZoneTemplate : LayoutTemplate.compile(template, zone);
+  }
+
   public static DirectoryStructureLayout fromString(String v) {
     //Trim v
     if (v != null) {
@@ -35,23 +58,19 @@ public enum DirectoryStructureLayout {
         if (layout.name().replace("_", "/").equalsIgnoreCase(v)) {
           return layout;
         }
+        if (layout.layout.replace("<place>", "PLACE").equalsIgnoreCase(v)) {
+          return layout;
+        }
 
       }
     }
     return YEAR_MONTH;
   }
 
+  /**
+   * @return The date folders in the system time zone, see {@link LayoutTemplate#format(Date)}.
+   */
   public String getFormat(Date date) {
-    final Instant instant = date.toInstant();
-    final ZonedDateTime zonedDateTime = instant.atZone(ZoneId.systemDefault());
-    final int year = zonedDateTime.getYear();
-    final String monthLine = zonedDateTime.getMonth().toString().substring(0, 3);
-    final int day = zonedDateTime.getDayOfMonth();
-    return switch (this) {
-      case YEAR_MONTH -> String.format("%s/%s", year, monthLine);
-      case YEAR_MONTH_DAY -> String.format("%s/%s/%s", year, monthLine, day);
-      default -> String.format("%s/%s/%s", year, monthLine, day);
-    };
-
+    return defaultZoneTemplate.format(date);
   }
 }
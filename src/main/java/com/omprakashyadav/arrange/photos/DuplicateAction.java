@@ -0,0 +1,34 @@
+package com.omprakashyadav.arrange.photos;
+
+public enum DuplicateAction {
+  //Only report the duplicates
+  NONE("none"),
+  //Move the duplicates to the duplicates directory
+  MOVE("move"),
+  //Delete the duplicates
+  DELETE("delete"),
+  //Replace the duplicates with hard links to the kept file
+  HARD_LINK("hardlink");
+
+  private final String id;
+
+  DuplicateAction(String id) {
+    this.id = id;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public static DuplicateAction fromString(String v) {
+    if (v != null) {
+      v = v.trim();
+      for (DuplicateAction action : DuplicateAction.values()) {
+        if (action.id.equalsIgnoreCase(v) || action.name().equalsIgnoreCase(v)) {
+          return action;
+        }
+      }
+    }
+    return NONE;
+  }
+}
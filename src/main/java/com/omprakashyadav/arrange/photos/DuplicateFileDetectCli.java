@@ -4,10 +4,14 @@ import picocli.CommandLine;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Function;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static com.omprakashyadav.arrange.photos.FileFormats.COMMON_MEDIA;
 
@@ -28,96 +32,268 @@ public class DuplicateFileDetectCli implements Runnable {
 
   @CommandLine.Option(
     names = {"-a", "--action"},
-    description = "Possible values: move, delete, none. In case of move, duplicate files are moved to the duplicates directory.",
+    description = "Possible values: move, delete, hardlink, none. In case of move, duplicate files are moved to the duplicates directory. "
+                  + "hardlink replaces each duplicate with a hard link to the kept file, freeing its space without changing any directory. "
+                  + "With --similar only move and none are allowed.",
     defaultValue = "none"
   )
   String action;
 
+  @CommandLine.Option(
+    names = {"--hash"},
+    description = "Hash confirming duplicates. Possible values: sha256, sha256-tree (hashes large files in parallel chunks).",
+    defaultValue = "sha256"
+  )
+  String hash;
+
+  @CommandLine.Option(
+    names = {"--similar"},
+    description = "Detect visually similar images, like resized or re-encoded copies, instead of identical files.",
+    defaultValue = "false"
+  )
+  boolean similar;
+
+  @CommandLine.Option(
+    names = {"--fingerprint"},
+    description = "Perceptual fingerprint used by --similar. Possible values: phash (robust to re-encoding and small edits), dhash (faster).",
+    defaultValue = "phash"
+  )
+  String fingerprint;
+
+  @CommandLine.Option(
+    names = {"--max-distance"},
+    description = "Maximum number of differing fingerprint bits, out of 64, for images to be similar.",
+    defaultValue = "8"
+  )
+  int maxDistance;
+
+  @CommandLine.Option(
+    names = {"--threads"},
+    description = "Number of threads fingerprinting images and acting on duplicates. Defaults to the number of available processors.",
+    defaultValue = "0"
+  )
+  int threads;
+
+  @CommandLine.Option(
+    names = {"--index-memory"},
+    description = "Memory in MB for the index of scanned files, beyond which it is spilled to temporary files.",
+    defaultValue = "256"
+  )
+  long indexMemoryMb;
+
+  @CommandLine.Option(
+    names = {"--catalog"},
+    description = "Scan catalog file, used to skip hashing files unchanged since the last run.",
+    defaultValue = ScanCatalog.DEFAULT_CATALOG_FILE
+  )
+  String catalogFile;
+
+  @CommandLine.Option(
+    names = {"--rebuild-catalog"},
+    description = "Ignore the existing scan catalog and rebuild it from scratch.",
+    defaultValue = "false"
+  )
+  boolean rebuildCatalog;
+
+  private final FileTransfer fileTransfer = new FileTransfer(TransferMode.MOVE, new StatsCollector());
+  private final Set<Path> claimedTargets = new HashSet<>();
+
   @Override
   public void run() {
+    final HashAlgorithm hashAlgorithm = HashAlgorithm.fromString(hash);
+    if (!hashAlgorithm.isCryptographic()) {
+      ErrorBase.exit("Hash: \"{0}\" can not confirm duplicates, use sha256 or sha256-tree.", hash);
+      return;
+    }
+    final DuplicateAction duplicateAction = DuplicateAction.fromString(action);
+    if (similar && duplicateAction != DuplicateAction.MOVE && duplicateAction != DuplicateAction.NONE) {
+      // Similar images aren't identical, so they are never deleted or linked
+      ErrorBase.exit("Action: \"{0}\" can not be used with --similar, use move or none.", action);
+      return;
+    }
     System.out.println("Detecting duplicates...");
     try {
       System.out.println("Scanning files...");
-      final int filesScanned = FileUtil.walkFiles(Path.of(this.inputDir), COMMON_MEDIA, this::onEachFile);
-      System.out.print("Scanned: " + filesScanned);
-      for (Map.Entry<Long, List<Path>> entry : fileLengthToPaths.entrySet()) {
-        final List<Path> value = entry.getValue();
-        if (value.size() > 1) {
-          detectDuplicates(entry.getKey(), value);
-        }
+      final ScanCatalog catalog = ScanCatalog.open(Path.of(catalogFile), rebuildCatalog);
+      if (similar) {
+        final List<ScanCatalog.Entry> images = new ArrayList<>();
+        new MediaScanner(Path.of(this.inputDir), COMMON_MEDIA)
+          .consume(file -> {
+            if (file.mediaType() == MediaType.IMAGE) {
+              images.add(catalog.lookup(file.path(), file.attributes()));
+            } else {
+              catalog.found(file.path());
+            }
+          })
+          .join();
+        catalog.scanned(Path.of(this.inputDir));
+        detectSimilarImages(catalog, images);
+        catalog.save();
+        return;
       }
-      System.out.println("Duplicate files detect: " + this.fileLengthToDuplicates.size());
-      int i = 1;
-      Path duplicateFilesDest = Path.of("Duplicate files");
-      if (!fileLengthToDuplicates.isEmpty()) {
+      final Map<Digest, DuplicateFinder.DuplicateGroup> duplicateGroups;
+      try (SizeIndex sizeIndex = new SizeIndex(indexMemoryMb * 1024 * 1024)) {
+        new MediaScanner(Path.of(this.inputDir), COMMON_MEDIA)
+          .consume(file -> {
+            sizeIndex.add(file.attributes().size(), file.path());
+            catalog.found(file.path());
+          })
+          .join();
+        catalog.scanned(Path.of(this.inputDir));
+        System.out.println("Scanned: " + sizeIndex.size());
+        final StatsCollector hashStats = new StatsCollector();
+        duplicateGroups = new DuplicateFinder(catalog, HashEngine.of(hashAlgorithm), hashStats).findDuplicates(sizeIndex);
+        hashStats.printLatencies();
+      }
+      catalog.save();
+      System.out.println("Duplicate files detect: " + duplicateGroups.size());
+      final Path duplicateFilesDest = Path.of("Duplicate files");
+      if (!duplicateGroups.isEmpty() && duplicateAction == DuplicateAction.MOVE) {
         Files.createDirectories(duplicateFilesDest);
       }
-      for (Map.Entry<Long, Set<String>> longSetEntry : fileLengthToDuplicates.entrySet()) {
-        System.out.println("Duplicates files batch: " + i++ + " of file size: " + longSetEntry.getKey());
-        final List<String> duplicateFiles = longSetEntry.getValue().stream().sorted(Comparator.comparingInt(String::length).thenComparing(o -> o)).toList();
-        if (action.equalsIgnoreCase("move")) {
-          List<String> duplicatesFilesSkippingFirst = duplicateFiles.stream().skip(1).toList();
-          for (String duplicateFile : duplicatesFilesSkippingFirst) {
-            Path duplicateFilePath = Path.of(duplicateFile);
-            final String fileName = duplicateFilePath.getFileName().toString();
-            Path destinationFile = duplicateFilesDest.resolve(fileName);
-            if (Files.exists(destinationFile)) {
-              destinationFile = duplicateFilesDest.resolve(FileUtil.appendBeforeExtension(fileName, "_duplicate_" + System.currentTimeMillis()));
-            }
-            Files.copy(duplicateFilePath, destinationFile);
-            Files.delete(duplicateFilePath);
-            System.out.println("\tMoved: " + duplicateFile + " to: " + destinationFile);
+      final ExecutorService executor = Executors.newFixedThreadPool(workers());
+      final List<Future<?>> pendingActions = new ArrayList<>();
+      try {
+        int i = 1;
+        for (DuplicateFinder.DuplicateGroup duplicateGroup : duplicateGroups.values()) {
+          System.out.println("Duplicates files batch: " + i++ + " of file size: " + duplicateGroup.size());
+          final List<Path> duplicateFiles = duplicateGroup.files().stream().map(Path::toAbsolutePath).sorted(Comparator.comparingInt((Path path) -> path.toString().length()).thenComparing(Path::toString)).toList();
+          if (duplicateAction == DuplicateAction.NONE) {
+            duplicateFiles.forEach(file -> System.out.println("\t Duplicate: " + file));
+            continue;
+          }
+          final Path kept = duplicateFiles.get(0);
+          System.out.println("\tKept: " + kept);
+          for (Path duplicate : duplicateFiles.subList(1, duplicateFiles.size())) {
+            pendingActions.add(submitAction(executor, duplicateAction, duplicate, kept, duplicateGroup.size(), duplicateFilesDest, "_duplicate_"));
           }
-        } else {
-          duplicateFiles.forEach(s -> System.out.println("\t Duplicate: " + s));
         }
+      } finally {
+        executor.shutdown();
       }
+      awaitActions(pendingActions);
 
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
-  private Map<Long, Set<String>> fileLengthToDuplicates = new ConcurrentHashMap<>();
-
-  private void detectDuplicates(Long length, List<Path> paths) {
-    for (int i = 0; i < paths.size(); i++) {
-      for (int j = i + 1; j < paths.size(); j++) {
-        try {
-          Path p1 = paths.get(i);
-          Path p2 = paths.get(j);
-          if (FileComparator.areFilesIdentical(p1, p2)) {
-            Set<String> duplicates = fileLengthToDuplicates.computeIfAbsent(length, new Function<Long, Set<String>>() {
-              @Override
-              public Set<String> apply(Long aLong) {
-                return new HashSet<>();
-              }
-            });
-            duplicates.add(p1.toAbsolutePath().toString());
-            duplicates.add(p2.toAbsolutePath().toString());
+  private int workers() {
+    return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+  }
 
+  private void detectSimilarImages(ScanCatalog catalog, List<ScanCatalog.Entry> images) throws IOException {
+    System.out.println("Fingerprinting images: " + images.size());
+    final List<SimilarImageFinder.SimilarGroup> similarGroups =
+      new SimilarImageFinder(catalog, PerceptualHashAlgorithm.fromString(fingerprint), maxDistance, workers()).findSimilar(images);
+    System.out.println("Similar image groups detected: " + similarGroups.size());
+    final Path similarFilesDest = Path.of("Similar files");
+    final boolean move = DuplicateAction.fromString(action) == DuplicateAction.MOVE;
+    if (!similarGroups.isEmpty() && move) {
+      Files.createDirectories(similarFilesDest);
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(workers());
+    final List<Future<?>> pendingActions = new ArrayList<>();
+    try {
+      int i = 1;
+      for (SimilarImageFinder.SimilarGroup similarGroup : similarGroups) {
+        System.out.println("Similar images batch: " + i++);
+        // The largest file is kept, it is usually the original or the best quality copy
+        final List<ScanCatalog.Entry> similarFiles = similarGroup.files().stream()
+                                                                 .sorted(Comparator.comparingLong(ScanCatalog.Entry::size).reversed())
+                                                                 .toList();
+        if (move) {
+          System.out.println("\tKept: " + similarFiles.get(0).path());
+          for (ScanCatalog.Entry similarFile : similarFiles.subList(1, similarFiles.size())) {
+            pendingActions.add(submitAction(executor, DuplicateAction.MOVE, similarFile.toPath(), similarFiles.get(0).toPath(),
+                                            similarFile.size(), similarFilesDest, "_similar_"));
           }
-        } catch (IOException e) {
-          throw new RuntimeException(e);
+        } else {
+          similarFiles.forEach(file -> System.out.println("\t Similar: " + file.path() + " (" + file.size() + " bytes)"));
         }
       }
+    } finally {
+      executor.shutdown();
     }
+    awaitActions(pendingActions);
   }
 
-  private final Map<Long, List<Path>> fileLengthToPaths = new ConcurrentHashMap<>();
-
-  private void onEachFile(Integer index, Path path) {
-    try {
-      fileLengthToPaths.compute(Files.size(path), (size, paths) -> {
-        if (paths == null) {
-          paths = new ArrayList<>(List.of(path));
+  /**
+   * Submits the action on one duplicate. Move targets are claimed here, on the calling thread, so the names given to
+   * clashing files don't depend on the order the actions run in.
+   */
+  private Future<?> submitAction(ExecutorService executor, DuplicateAction duplicateAction, Path duplicate, Path kept,
+                                 long size, Path directory, String clashSuffix) {
+    return switch (duplicateAction) {
+      case MOVE -> {
+        final Path target = claimTarget(directory, duplicate.getFileName().toString(), clashSuffix);
+        yield executor.submit(() -> {
+          // A rename when the duplicates directory is on the same filesystem, copy and delete otherwise
+          fileTransfer.transfer(duplicate, target, size, null);
+          System.out.println("\tMoved: " + duplicate + " to: " + target);
+          return null;
+        });
+      }
+      case DELETE -> executor.submit(() -> {
+        verifyDuplicate(duplicate, kept, size);
+        Files.delete(duplicate);
+        System.out.println("\tDeleted: " + duplicate);
+        return null;
+      });
+      case HARD_LINK -> executor.submit(() -> {
+        verifyDuplicate(duplicate, kept, size);
+        if (fileTransfer.replaceWithHardLink(duplicate, kept)) {
+          System.out.println("\tLinked: " + duplicate + " to: " + kept);
         } else {
-          paths.add(path);
+          System.err.println("\tSkipped: " + duplicate + " is on another filesystem than " + kept);
         }
-        return paths;
+        return null;
       });
-    } catch (IOException e) {
-      throw new RuntimeException(e);
+      default -> throw new IllegalArgumentException("Unsupported action: " + duplicateAction);
+    };
+  }
+
+  /**
+   * Checks, right before a duplicate is deleted or linked, that it and the kept file are still regular files of the
+   * scanned size with the same bytes. The digests are from the scan and either file may have changed since.
+   *
+   * @throws IOException If they aren't, so the action fails and the duplicate is left alone.
+   */
+  private static void verifyDuplicate(Path duplicate, Path kept, long size) throws IOException {
+    for (Path file : List.of(duplicate, kept)) {
+      final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+      if (!attributes.isRegularFile() || attributes.size() != size) {
+        throw new IOException("Changed since the scan, left alone: " + file);
+      }
+    }
+    if (!FileComparator.areFilesIdentical(duplicate, kept)) {
+      throw new IOException("No longer identical to " + kept + ", left alone: " + duplicate);
+    }
+  }
+
+  private Path claimTarget(Path directory, String fileName, String clashSuffix) {
+    Path target = directory.resolve(fileName);
+    for (int attempt = 1; !claimedTargets.add(target) || Files.exists(target); attempt++) {
+      target = directory.resolve(FileUtil.appendBeforeExtension(fileName, clashSuffix + attempt));
+    }
+    return target;
+  }
+
+  private static void awaitActions(List<Future<?>> pendingActions) {
+    int failed = 0;
+    for (Future<?> pendingAction : pendingActions) {
+      try {
+        pendingAction.get();
+      } catch (ExecutionException e) {
+        failed++;
+        System.err.println("Error: " + e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+    }
+    if (!pendingActions.isEmpty()) {
+      System.out.println("Actions done: " + (pendingActions.size() - failed) + ", failed: " + failed);
     }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,113 @@
+package com.omprakashyadav.arrange.photos;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds byte-identical files in tiers: size (see {@link SizeIndex}), then a fast non-cryptographic digest of sampled
+ * blocks, then a full digest (SHA-256 by default).
+ * Each tier only sees the files that still collide after the previous one, and each file is read at most once per tier.
+ * Digests already in the scan catalog for an unchanged file are reused instead of reading the file again.
+ */
+public class DuplicateFinder {
+
+  private final ScanCatalog catalog;
+  private final HashEngine sampledEngine = HashEngine.of(HashAlgorithm.MURMUR3_128);
+  private final HashEngine fullEngine;
+  private final StatsCollector statsCollector;
+
+  public DuplicateFinder(ScanCatalog catalog, HashEngine fullEngine) {
+    this(catalog, fullEngine, new StatsCollector());
+  }
+
+  /**
+   * @param statsCollector Records the {@link Stage#HASH} latency of every digest looked up or computed.
+   */
+  public DuplicateFinder(ScanCatalog catalog, HashEngine fullEngine, StatsCollector statsCollector) {
+    this.catalog = catalog;
+    this.fullEngine = fullEngine;
+    this.statsCollector = statsCollector;
+  }
+
+  /**
+   * A set of identical files.
+   *
+   * @param digest Full digest shared by every file in the group.
+   * @param size   Size of each file in bytes.
+   * @param files  The identical files, at least two.
+   */
+  public record DuplicateGroup(Digest digest, long size, Set<Path> files) {
+  }
+
+  /**
+   * Finds duplicate groups among the files of the index sharing a size. Only those files are looked up in the catalog,
+   * with their current attributes.
+   *
+   * @param sizeIndex The scanned files.
+   * @return Duplicate groups keyed by their digest.
+   * @throws IOException If an I/O error occurs while reading a file.
+   */
+  public Map<Digest, DuplicateGroup> findDuplicates(SizeIndex sizeIndex) throws IOException {
+    final Map<Digest, DuplicateGroup> duplicates = new LinkedHashMap<>();
+    sizeIndex.forEachCollision((size, paths) -> {
+      final List<ScanCatalog.Entry> files = new ArrayList<>(paths.size());
+      for (Path path : paths) {
+        try {
+          final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+          if (attributes.size() == size) {
+            files.add(catalog.lookup(path, attributes));
+          }
+        } catch (NoSuchFileException e) {
+          // Deleted since the scan
+        }
+      }
+      findDuplicates(size, files, duplicates);
+    });
+    return duplicates;
+  }
+
+  private void findDuplicates(long size, List<ScanCatalog.Entry> sameSizeFiles, Map<Digest, DuplicateGroup> duplicates) throws IOException {
+    if (sameSizeFiles.size() < 2) {
+      return;
+    }
+    for (Map.Entry<Digest, List<ScanCatalog.Entry>> sampledGroup : groupByHash(sameSizeFiles, file -> catalog.sampledDigest(file, sampledEngine)).entrySet()) {
+      if (sampledGroup.getValue().size() < 2) {
+        continue;
+      }
+      final Map<Digest, List<ScanCatalog.Entry>> fullGroups = groupByHash(sampledGroup.getValue(), file -> catalog.fullDigest(file, fullEngine));
+      for (Map.Entry<Digest, List<ScanCatalog.Entry>> fullGroup : fullGroups.entrySet()) {
+        if (fullGroup.getValue().size() > 1) {
+          final Set<Path> files = new LinkedHashSet<>();
+          fullGroup.getValue().forEach(file -> files.add(file.toPath()));
+          duplicates.put(fullGroup.getKey(), new DuplicateGroup(fullGroup.getKey(), size, files));
+        }
+      }
+    }
+  }
+
+  private Map<Digest, List<ScanCatalog.Entry>> groupByHash(List<ScanCatalog.Entry> files, Hasher hasher) throws IOException {
+    final Map<Digest, List<ScanCatalog.Entry>> groups = new HashMap<>();
+    for (ScanCatalog.Entry file : files) {
+      final long start = System.nanoTime();
+      final Digest digest = hasher.hash(file);
+      statsCollector.recordLatency(Stage.HASH, System.nanoTime() - start);
+      groups.computeIfAbsent(digest, k -> new ArrayList<>()).add(file);
+    }
+    return groups;
+  }
+
+  @FunctionalInterface
+  private interface Hasher {
+    Digest hash(ScanCatalog.Entry file) throws IOException;
+  }
+}
@@ -0,0 +1,416 @@
+package com.omprakashyadav.arrange.photos;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+/**
+ * Bounded-read EXIF extractor for the organize hot path. Reads only the JPEG APP1 segment, or the PNG {@code eXIf} /
+ * {@code tEXt} exif chunk, and pulls the capture date, the camera and the GPS position out of the TIFF structure
+ * without building a full metadata tree. Chunk and segment headers are walked with positional reads, so image data
+ * is never read.
+ */
+public class ExifHeaderReader {
+
+  private static final int MAX_SEGMENT_SIZE = 64 * 1024; // APP1 segments can't be larger than 64 KB
+  private static final int MAX_PNG_TEXT_SIZE = 256 * 1024;
+  private static final long PNG_SIGNATURE = 0x89504E470D0A1A0AL;
+  private static final String RAW_EXIF_PROFILE = "Raw profile type exif";
+
+  private static final int TAG_MAKE = 0x010F;
+  private static final int TAG_MODEL = 0x0110;
+  private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+  private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+  private static final int TAG_EXIF_IFD = 0x8769;
+  private static final int TAG_GPS_IFD = 0x8825;
+  private static final int TAG_DATETIME_ORIGINAL = 0x9003;
+  private static final int TAG_GPS_LATITUDE_REF = 1;
+  private static final int TAG_GPS_LATITUDE = 2;
+  private static final int TAG_GPS_LONGITUDE_REF = 3;
+  private static final int TAG_GPS_LONGITUDE = 4;
+  private static final int TYPE_ASCII = 2;
+  private static final int TYPE_LONG = 4;
+  private static final int TYPE_RATIONAL = 5;
+  private static final ByteBuffer NO_EXIF = ByteBuffer.allocate(0);
+
+  private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(MAX_SEGMENT_SIZE));
+
+  /**
+   * The EXIF values the organizer needs.
+   *
+   * @param captureDate DateTimeOriginal, parsed as GMT like metadata-extractor does, or null.
+   * @param coordinates Latitude and longitude in decimal degrees, or null.
+   * @param camera      Make and model of the camera, see {@link #cameraName}, or null.
+   */
+  public record ExifHeader(Date captureDate, double[] coordinates, String camera) {
+    static final ExifHeader EMPTY = new ExifHeader(null, null, null);
+  }
+
+  /**
+   * Reads the EXIF header of a JPEG or PNG file.
+   *
+   * @param path The image file.
+   * @return The header, {@link ExifHeader#EMPTY} if the file has no EXIF block, or null if the fast path can't resolve
+   * the file, or its capture date isn't in the usual format, and the full metadata reader should be used instead.
+   */
+  public static ExifHeader read(Path path) {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      final ByteBuffer buffer = BUFFER.get();
+      buffer.clear().limit(8);
+      readFully(channel, buffer, 0);
+      if (buffer.position() < 8) {
+        return null;
+      }
+      buffer.flip();
+      if ((buffer.getShort(0) & 0xFFFF) == 0xFFD8) {
+        return readJpeg(channel, buffer);
+      }
+      if (buffer.getLong(0) == PNG_SIGNATURE) {
+        return readPng(channel, buffer);
+      }
+      return null;
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Reads the thumbnail JPEG embedded in the EXIF block of a JPEG file (IFD1), usually around 160x120 pixels.
+   *
+   * @param path The image file.
+   * @return The encoded thumbnail, or null if the file has none.
+   */
+  public static byte[] readThumbnail(Path path) {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      final ByteBuffer buffer = BUFFER.get();
+      buffer.clear().limit(2);
+      readFully(channel, buffer, 0);
+      if (buffer.position() < 2 || (buffer.getShort(0) & 0xFFFF) != 0xFFD8) {
+        return null;
+      }
+      final ByteBuffer tiff = findJpegTiff(channel, buffer);
+      if (tiff == null || tiff == NO_EXIF || !setByteOrder(tiff)) {
+        return null;
+      }
+      final int ifd0 = tiff.getInt(4);
+      if (ifd0 < 8 || ifd0 + 2 > tiff.limit()) {
+        return null;
+      }
+      final int nextIfd = ifd0 + 2 + (tiff.getShort(ifd0) & 0xFFFF) * 12;
+      if (nextIfd + 4 > tiff.limit()) {
+        return null;
+      }
+      final int ifd1 = tiff.getInt(nextIfd);
+      final int offset = readLong(tiff, findEntry(tiff, ifd1, TAG_THUMBNAIL_OFFSET));
+      final int length = readLong(tiff, findEntry(tiff, ifd1, TAG_THUMBNAIL_LENGTH));
+      if (offset < 8 || length < 4 || offset + length > tiff.limit()
+          || (tiff.get(offset) & 0xFF) != 0xFF || (tiff.get(offset + 1) & 0xFF) != 0xD8) {
+        return null;
+      }
+      final byte[] thumbnail = new byte[length];
+      tiff.get(offset, thumbnail);
+      return thumbnail;
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static ExifHeader readJpeg(FileChannel channel, ByteBuffer buffer) throws IOException {
+    final ByteBuffer tiff = findJpegTiff(channel, buffer);
+    if (tiff == null) {
+      return null;
+    }
+    return tiff == NO_EXIF ? ExifHeader.EMPTY : parseTiff(tiff);
+  }
+
+  /**
+   * @return The TIFF structure of the EXIF APP1 segment, read into the buffer, {@link #NO_EXIF} if the file has none,
+   * or null if the segments can't be walked.
+   */
+  private static ByteBuffer findJpegTiff(FileChannel channel, ByteBuffer buffer) throws IOException {
+    long position = 2;
+    while (true) {
+      buffer.clear().limit(4);
+      readFully(channel, buffer, position);
+      if (buffer.position() < 4 || (buffer.get(0) & 0xFF) != 0xFF) {
+        return null;
+      }
+      final int marker = buffer.get(1) & 0xFF;
+      if (marker == 0xDA || marker == 0xD9) {
+        return NO_EXIF; // Start of scan: metadata segments are over
+      }
+      final int length = buffer.getShort(2) & 0xFFFF;
+      if (marker == 0xE1 && length > 8) {
+        buffer.clear().limit(length - 2);
+        readFully(channel, buffer, position + 4);
+        buffer.flip();
+        if (hasExifPrefix(buffer)) {
+          return buffer.position(6).slice();
+        }
+      }
+      position += 2 + length;
+    }
+  }
+
+  private static ExifHeader readPng(FileChannel channel, ByteBuffer buffer) throws IOException {
+    long position = 8;
+    final long size = channel.size();
+    while (position + 8 <= size) {
+      buffer.clear().limit(8);
+      readFully(channel, buffer, position);
+      final int length = buffer.getInt(0);
+      final int type = buffer.getInt(4);
+      if (length < 0) {
+        return null;
+      }
+      if (type == 0x65584966 || type == 0x74455874) { // eXIf, tEXt
+        if (length > buffer.capacity() && (type == 0x65584966 || length > MAX_PNG_TEXT_SIZE)) {
+          return null;
+        }
+        final ByteBuffer chunk = length > buffer.capacity() ? ByteBuffer.allocate(length) : buffer;
+        final ExifHeader header = readPngChunk(channel, chunk, position, length, type);
+        if (type == 0x65584966 || isRawExifProfile(chunk)) {
+          return header; // Null if the profile doesn't parse, so the full reader gets a go at it
+        }
+      } else if (type == 0x7A545874 || type == 0x69545874) { // zTXt, iTXt
+        // Usually compressed, which the fast path doesn't inflate: an exif profile there is left to the full reader
+        buffer.clear().limit(Math.min(RAW_EXIF_PROFILE.length() + 1, length));
+        readFully(channel, buffer, position + 8);
+        buffer.flip();
+        if (isRawExifProfile(buffer)) {
+          return null;
+        }
+      } else if (type == 0x49454E44) { // IEND
+        break;
+      }
+      position += 12L + length;
+    }
+    return ExifHeader.EMPTY;
+  }
+
+  private static ExifHeader readPngChunk(FileChannel channel, ByteBuffer buffer, long position, int length, int type) throws IOException {
+    buffer.clear().limit(length);
+    readFully(channel, buffer, position + 8);
+    buffer.flip();
+    if (type == 0x65584966) {
+      // Some writers keep the JPEG style "Exif\0\0" prefix in eXIf
+      return parseTiff(buffer.position(hasExifPrefix(buffer) ? 6 : 0).slice());
+    }
+    return parseRawProfile(buffer);
+  }
+
+  /**
+   * Parses the hex encoded "Raw profile type exif" text chunk written by ImageMagick and exiftool:
+   * keyword, NUL, then "\nexif\n  length\n" followed by hex digits.
+   */
+  private static ExifHeader parseRawProfile(ByteBuffer buffer) {
+    if (!isRawExifProfile(buffer)) {
+      return null;
+    }
+    final int limit = buffer.limit();
+    int position = RAW_EXIF_PROFILE.length() + 1;
+    int newLines = 0;
+    while (position < limit && newLines < 3) {
+      if (buffer.get(position++) == '\n') {
+        newLines++;
+      }
+    }
+    final ByteBuffer decoded = ByteBuffer.allocate((limit - position) / 2);
+    int high = -1;
+    for (; position < limit && decoded.hasRemaining(); position++) {
+      final int digit = Character.digit(buffer.get(position), 16);
+      if (digit < 0) {
+        continue;
+      }
+      if (high < 0) {
+        high = digit;
+      } else {
+        decoded.put((byte) (high << 4 | digit));
+        high = -1;
+      }
+    }
+    decoded.flip();
+    return parseTiff(decoded.position(hasExifPrefix(decoded) ? 6 : 0).slice());
+  }
+
+  /**
+   * @return true if the text chunk starts with the keyword of a raw exif profile.
+   */
+  private static boolean isRawExifProfile(ByteBuffer chunk) {
+    if (chunk.limit() <= RAW_EXIF_PROFILE.length() || chunk.get(RAW_EXIF_PROFILE.length()) != 0) {
+      return false;
+    }
+    for (int i = 0; i < RAW_EXIF_PROFILE.length(); i++) {
+      if (chunk.get(i) != RAW_EXIF_PROFILE.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean hasExifPrefix(ByteBuffer buffer) {
+    return buffer.remaining() > 6 && buffer.getInt(0) == 0x45786966 && buffer.getShort(4) == 0; // "Exif\0\0"
+  }
+
+  private static boolean setByteOrder(ByteBuffer tiff) {
+    final short byteOrder = tiff.getShort(0);
+    if (byteOrder == 0x4949) {
+      tiff.order(ByteOrder.LITTLE_ENDIAN);
+    } else if (byteOrder == 0x4D4D) {
+      tiff.order(ByteOrder.BIG_ENDIAN);
+    } else {
+      return false;
+    }
+    return true;
+  }
+
+  private static ExifHeader parseTiff(ByteBuffer tiff) {
+    if (!setByteOrder(tiff)) {
+      return null;
+    }
+    final int ifd0 = tiff.getInt(4);
+    final int exifIfd = findEntry(tiff, ifd0, TAG_EXIF_IFD);
+    final int gpsIfd = findEntry(tiff, ifd0, TAG_GPS_IFD);
+
+    Date captureDate = null;
+    if (exifIfd >= 0) {
+      final String dateTime = readAscii(tiff, findEntry(tiff, tiff.getInt(exifIfd + 8), TAG_DATETIME_ORIGINAL));
+      captureDate = parseDate(dateTime);
+      if (captureDate == null && dateTime != null && dateTime.chars().anyMatch(Character::isDigit)) {
+        // A date in a format only the full metadata reader understands
+        return null;
+      }
+    }
+
+    double[] coordinates = null;
+    if (gpsIfd >= 0) {
+      final int gps = tiff.getInt(gpsIfd + 8);
+      final String latitudeRef = readAscii(tiff, findEntry(tiff, gps, TAG_GPS_LATITUDE_REF));
+      final String longitudeRef = readAscii(tiff, findEntry(tiff, gps, TAG_GPS_LONGITUDE_REF));
+      final double latitude = readDegrees(tiff, findEntry(tiff, gps, TAG_GPS_LATITUDE), latitudeRef);
+      final double longitude = readDegrees(tiff, findEntry(tiff, gps, TAG_GPS_LONGITUDE), longitudeRef);
+      if (latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180) {
+        coordinates = new double[]{latitude, longitude};
+      }
+    }
+    return new ExifHeader(captureDate, coordinates,
+                          cameraName(readAscii(tiff, findEntry(tiff, ifd0, TAG_MAKE)), readAscii(tiff, findEntry(tiff, ifd0, TAG_MODEL))));
+  }
+
+  /**
+   * Joins the make and model tags, leaving out the make when the model already starts with its first word, as in
+   * "Canon" and "Canon EOS R5" or "NIKON CORPORATION" and "NIKON D750".
+   *
+   * @return The camera name, or null if both are missing.
+   */
+  static String cameraName(String make, String model) {
+    final boolean hasMake = make != null && !make.isBlank();
+    final boolean hasModel = model != null && !model.isBlank();
+    if (!hasModel) {
+      return hasMake ? make.trim() : null;
+    }
+    final String brand = make != null ? make.trim().split("\\s+", 2)[0] : "";
+    if (!hasMake || model.trim().regionMatches(true, 0, brand, 0, brand.length())) {
+      return model.trim();
+    }
+    return make.trim() + " " + model.trim();
+  }
+
+  /**
+   * @return The offset of the 12 byte IFD entry with the given tag, or -1 if the IFD doesn't have it.
+   */
+  private static int findEntry(ByteBuffer tiff, int ifdOffset, int tag) {
+    if (ifdOffset < 8 || ifdOffset + 2 > tiff.limit()) {
+      return -1;
+    }
+    final int count = tiff.getShort(ifdOffset) & 0xFFFF;
+    for (int i = 0; i < count; i++) {
+      final int entry = ifdOffset + 2 + i * 12;
+      if (entry + 12 > tiff.limit()) {
+        return -1;
+      }
+      if ((tiff.getShort(entry) & 0xFFFF) == tag) {
+        return entry;
+      }
+    }
+    return -1;
+  }
+
+  private static String readAscii(ByteBuffer tiff, int entry) {
+    if (entry < 0 || (tiff.getShort(entry + 2) & 0xFFFF) != TYPE_ASCII) {
+      return null;
+    }
+    final int count = tiff.getInt(entry + 4);
+    final int offset = count <= 4 ? entry + 8 : tiff.getInt(entry + 8);
+    if (count <= 0 || offset < 0 || offset + count > tiff.limit()) {
+      return null;
+    }
+    int length = 0;
+    while (length < count && tiff.get(offset + length) != 0) {
+      length++;
+    }
+    final byte[] bytes = new byte[length];
+    tiff.get(offset, bytes);
+    return new String(bytes, StandardCharsets.US_ASCII).trim();
+  }
+
+  private static int readLong(ByteBuffer tiff, int entry) {
+    if (entry < 0 || (tiff.getShort(entry + 2) & 0xFFFF) != TYPE_LONG) {
+      return -1;
+    }
+    return tiff.getInt(entry + 8);
+  }
+
+  private static double readDegrees(ByteBuffer tiff, int entry, String ref) {
+    if (entry < 0 || ref == null || (tiff.getShort(entry + 2) & 0xFFFF) != TYPE_RATIONAL || tiff.getInt(entry + 4) < 3) {
+      return Double.NaN;
+    }
+    final int offset = tiff.getInt(entry + 8);
+    if (offset < 0 || offset + 24 > tiff.limit()) {
+      return Double.NaN;
+    }
+    return GpsUtils.convertToDecimalDegrees(readRational(tiff, offset), readRational(tiff, offset + 8), readRational(tiff, offset + 16), ref);
+  }
+
+  private static double readRational(ByteBuffer tiff, int offset) {
+    final long numerator = tiff.getInt(offset) & 0xFFFFFFFFL;
+    final long denominator = tiff.getInt(offset + 4) & 0xFFFFFFFFL;
+    return denominator == 0 ? Double.NaN : (double) numerator / denominator;
+  }
+
+  /**
+   * Parses "yyyy:MM:dd HH:mm:ss" by hand, it runs once per image and a formatter would allocate far more.
+   *
+   * @return The date, or null if it is blank ("    :  :     :  :  ") or in another format.
+   */
+  private static Date parseDate(String dateTime) {
+    if (dateTime == null || dateTime.length() < 19) {
+      return null;
+    }
+    try {
+      final LocalDateTime localDateTime = LocalDateTime.of(
+        Integer.parseInt(dateTime, 0, 4, 10), Integer.parseInt(dateTime, 5, 7, 10), Integer.parseInt(dateTime, 8, 10, 10),
+        Integer.parseInt(dateTime, 11, 13, 10), Integer.parseInt(dateTime, 14, 16, 10), Integer.parseInt(dateTime, 17, 19, 10));
+      return Date.from(localDateTime.toInstant(ZoneOffset.UTC));
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      final int read = channel.read(buffer, position);
+      if (read == -1) {
+        break;
+      }
+      position += read;
+    }
+  }
+}
@@ -6,14 +6,15 @@ import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
-import java.security.MessageDigest;
 
 public class FileComparator {
 
-  private static final int LARGE_BUFFER_SIZE = 1024 * 1024; // 1 MB for partial hash
+  private static final int COMPARE_BLOCK_SIZE = 256 * 1024; // 256 KB per file per comparison step
 
   /**
-   * Compares two files by size and hash. Uses partial hash for fast checks before full hash comparison.
+   * Compares two files byte by byte. Both files are read in lockstep into reused per-thread buffers, blocks are
+   * compared with the vectorized {@link ByteBuffer#mismatch(ByteBuffer)} and reading stops at the first difference.
+   * Links to the same file are identical without reading them.
    *
    * @param path1 Path to the first file.
    * @param path2 Path to the second file.
@@ -21,70 +22,47 @@ public class FileComparator {
    * @throws IOException if an I/O error occurs while reading the files.
    */
   public static boolean areFilesIdentical(Path path1, Path path2) throws IOException {
-    // Check file sizes
-    long size1 = Files.size(path1);
-    long size2 = Files.size(path2);
-    if (size1 != size2) {
-      return false; // Different sizes mean files are not identical
+    if (Files.isSameFile(path1, path2)) {
+      return true;
     }
-
-    // Compare partial hashes (1 MB)
-    String partialHash1 = calculateFileHash(path1, LARGE_BUFFER_SIZE);
-    String partialHash2 = calculateFileHash(path2, LARGE_BUFFER_SIZE);
-    if (!partialHash1.equals(partialHash2)) {
-      return false; // Partial hashes differ
+    try (FileChannel channel1 = FileChannel.open(path1, StandardOpenOption.READ);
+         FileChannel channel2 = FileChannel.open(path2, StandardOpenOption.READ)) {
+      final long size = channel1.size();
+      if (size != channel2.size()) {
+        return false; // Different sizes mean files are not identical
+      }
+      final ByteBuffer[] buffers = COMPARE_BUFFERS.get();
+      final ByteBuffer buffer1 = buffers[0];
+      final ByteBuffer buffer2 = buffers[1];
+      long position = 0;
+      while (position < size) {
+        final int length = (int) Math.min(COMPARE_BLOCK_SIZE, size - position);
+        buffer1.clear().limit(length);
+        buffer2.clear().limit(length);
+        readFully(channel1, buffer1, position);
+        readFully(channel2, buffer2, position);
+        buffer1.flip();
+        buffer2.flip();
+        if (buffer1.remaining() != length || buffer1.mismatch(buffer2) != -1) {
+          return false;
+        }
+        position += length;
+      }
+      return true;
     }
-
-    // If partial hashes match, verify using a full hash comparison
-    return calculateFileHash(path1, -1).equals(calculateFileHash(path2, -1));
   }
 
-  private static final ByteBuffer BUFFER = ByteBuffer.allocateDirect(LARGE_BUFFER_SIZE); // Direct buffer
-
-  /**
-   * Calculates the hash of a file using SHA-256.
-   *
-   * @param filePath Path to the file.
-   * @param maxBytes Maximum bytes to read for the hash (-1 for full file).
-   * @return The SHA-256 hash as a hexadecimal string.
-   * @throws IOException if an I/O error occurs while reading the file.
-   */
-  private static String calculateFileHash(Path filePath, long maxBytes) throws IOException {
-    try {
-      MessageDigest digest = MessageDigest.getInstance("SHA-256");
-      try (FileChannel fileChannel = FileChannel.open(filePath, StandardOpenOption.READ)) {
-        ByteBuffer buffer = ByteBuffer.allocateDirect(LARGE_BUFFER_SIZE); // Direct buffer
-        long bytesProcessed = 0;
-        int bytesRead;
-
-        while ((bytesRead = fileChannel.read(buffer)) != -1) {
-          buffer.flip(); // Prepare buffer for reading
-
-          if (maxBytes > 0 && bytesProcessed + bytesRead > maxBytes) {
-            // Adjust the buffer's limit to only process the remaining bytes
-            int remainingBytes = (int) (maxBytes - bytesProcessed);
-            buffer.limit(buffer.position() + remainingBytes);
-          }
-
-          digest.update(buffer); // Efficiently update digest with the buffer content
-          bytesProcessed += bytesRead;
-
-          if (maxBytes > 0 && bytesProcessed >= maxBytes) {
-            break; // Stop reading after reaching the limit
-          }
-
-          buffer.clear(); // Prepare buffer for the next read
-        }
-      }
+  private static final ThreadLocal<ByteBuffer[]> COMPARE_BUFFERS = ThreadLocal.withInitial(() -> new ByteBuffer[]{
+    ByteBuffer.allocateDirect(COMPARE_BLOCK_SIZE), ByteBuffer.allocateDirect(COMPARE_BLOCK_SIZE)
+  });
 
-      // Convert the digest to a hexadecimal string
-      StringBuilder sb = new StringBuilder();
-      for (byte b : digest.digest()) {
-        sb.append(String.format("%02x", b));
+  private static void readFully(FileChannel fileChannel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      final int read = fileChannel.read(buffer, position);
+      if (read == -1) {
+        break;
       }
-      return sb.toString();
-    } catch (Exception e) {
-      throw new IOException("Error calculating file hash", e);
+      position += read;
     }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,207 @@
+package com.omprakashyadav.arrange.photos;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Copy engine used to place files in the output directory.
+ * <p>
+ * Copies go through {@link FileChannel#transferTo}, which lets the kernel move the bytes (sendfile/copy_file_range on
+ * Linux) instead of looping them through a Java buffer, and the times of the copy are set with a single
+ * {@link BasicFileAttributeView#setTimes} call rather than one round-trip per attribute, which adds up on SMB/NFS.
+ * A copy is written to a partial file next to the target and renamed over it when complete, so an interrupted copy
+ * never leaves a truncated file under the target's name.
+ * In {@link TransferMode#MOVE} files are renamed, falling back to copy and delete only across filesystems.
+ * <p>
+ * The link modes don't copy any data. Hard links need the input and output on the same {@link FileStore}, files on
+ * another one, or on one which refuses the link, are copied instead. Links share the times of the input file, so
+ * they are left alone.
+ */
+public class FileTransfer {
+
+  private final TransferMode mode;
+  private final StatsCollector statsCollector;
+  // Looking up a FileStore scans the mount table, so it is done once per directory
+  private final Map<Path, FileStore> fileStores = new ConcurrentHashMap<>();
+
+  public FileTransfer(TransferMode mode, StatsCollector statsCollector) {
+    this.mode = mode;
+    this.statsCollector = statsCollector;
+  }
+
+  public TransferMode mode() {
+    return mode;
+  }
+
+  /**
+   * Copies or moves the source to the target, replacing the target if it exists.
+   *
+   * @param size     Size of the source, for the throughput stats.
+   * @param fileTime Creation, modified and access time to set on the target, or null to leave them as they are.
+   */
+  public void transfer(Path source, Path target, long size, FileTime fileTime) throws IOException {
+    final TransferMode done = switch (mode) {
+      case MOVE -> {
+        move(source, target, fileTime);
+        yield TransferMode.MOVE;
+      }
+      case HARD_LINK -> hardLink(source, target, fileTime);
+      case SYMBOLIC_LINK -> {
+        createLink(target, source.toAbsolutePath(), true);
+        yield TransferMode.SYMBOLIC_LINK;
+      }
+      default -> {
+        copy(source, target, fileTime, false);
+        yield TransferMode.COPY;
+      }
+    };
+    statsCollector.addTransferred(done, size);
+  }
+
+  private TransferMode hardLink(Path source, Path target, FileTime fileTime) throws IOException {
+    if (fileStore(source.toAbsolutePath().getParent()).equals(fileStore(target.toAbsolutePath().getParent()))) {
+      try {
+        createLink(target, source, false);
+        return TransferMode.HARD_LINK;
+      } catch (FileAlreadyExistsException e) {
+        throw e;
+      } catch (UnsupportedOperationException | FileSystemException e) {
+        // No hard links on this filesystem (FAT and exFAT fail with EPERM) or the source is at its link limit
+      }
+    }
+    copy(source, target, fileTime, false);
+    return TransferMode.COPY;
+  }
+
+  /**
+   * Replaces the duplicate with a hard link to the kept file. The link is created under a temporary name and renamed
+   * over the duplicate, so the duplicate's path never goes missing.
+   *
+   * @return false if the files are on different filesystems, so the duplicate was left alone.
+   */
+  public boolean replaceWithHardLink(Path duplicate, Path kept) throws IOException {
+    final Path directory = duplicate.toAbsolutePath().getParent();
+    if (!fileStore(directory).equals(fileStore(kept.toAbsolutePath().getParent()))) {
+      return false;
+    }
+    if (Files.isSameFile(duplicate, kept)) {
+      return true;
+    }
+    final long size = Files.size(duplicate);
+    final Path link = directory.resolve("." + duplicate.getFileName() + ".link");
+    createLink(link, kept, false);
+    try {
+      Files.move(link, duplicate, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      Files.deleteIfExists(link);
+      throw e;
+    }
+    statsCollector.addTransferred(TransferMode.HARD_LINK, size);
+    return true;
+  }
+
+  private FileStore fileStore(Path directory) throws IOException {
+    final FileStore cached = fileStores.get(directory);
+    if (cached != null) {
+      return cached;
+    }
+    final FileStore store = Files.getFileStore(directory);
+    fileStores.put(directory, store);
+    return store;
+  }
+
+  /**
+   * Links the target to the source, replacing the target if it exists.
+   */
+  private static void createLink(Path target, Path source, boolean symbolic) throws IOException {
+    for (int attempt = 0; ; attempt++) {
+      try {
+        if (symbolic) {
+          Files.createSymbolicLink(target, source);
+        } else {
+          Files.createLink(target, source);
+        }
+        return;
+      } catch (FileAlreadyExistsException e) {
+        if (attempt > 0) {
+          throw e;
+        }
+        Files.delete(target);
+      }
+    }
+  }
+
+  private static void move(Path source, Path target, FileTime fileTime) throws IOException {
+    try {
+      Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+      setTimes(target, fileTime);
+    } catch (AtomicMoveNotSupportedException e) {
+      // Different filesystem, the source is only deleted once the copy is complete and on disk
+      copy(source, target, fileTime, true);
+      Files.delete(source);
+    }
+  }
+
+  /**
+   * @return The partial file a copy to the target is written to before being renamed over it.
+   */
+  static Path partialFile(Path target) {
+    return target.resolveSibling("." + target.getFileName() + ".part");
+  }
+
+  /**
+   * @param sync Whether to sync the copy to disk before it replaces the target.
+   */
+  static void copy(Path source, Path target, FileTime fileTime, boolean sync) throws IOException {
+    final Path partial = partialFile(target);
+    try {
+      try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+           FileChannel out = FileChannel.open(partial, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                                              StandardOpenOption.TRUNCATE_EXISTING)) {
+        final long size = in.size();
+        long position = 0;
+        while (position < size) {
+          final long transferred = in.transferTo(position, size - position, out);
+          if (transferred <= 0) {
+            break;
+          }
+          position += transferred;
+        }
+        if (position != size || in.size() != size) {
+          // Don't put a truncated copy in place of the file, nor delete the source of a move
+          throw new IOException("File changed size while copying, expected " + size + " bytes and copied " + position + ": " + source);
+        }
+        if (sync) {
+          out.force(true);
+        }
+      }
+      setTimes(partial, fileTime);
+      try {
+        Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(partial);
+      throw e;
+    }
+  }
+
+  static void setTimes(Path target, FileTime fileTime) throws IOException {
+    if (fileTime != null) {
+      Files.getFileAttributeView(target, BasicFileAttributeView.class).setTimes(fileTime, fileTime, fileTime);
+    }
+  }
+}
@@ -1,28 +1,47 @@
 package com.omprakashyadav.arrange.photos;
 
 import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 public class FileUtil {
 
+  // Listing directories is I/O bound, on network shares mostly waiting for round-trips
+  private static final int WALK_PARALLELISM = Math.max(8, Runtime.getRuntime().availableProcessors());
+
   /**
    * Walks through the files in the given directory and its subdirectories.
    *
    * @param inputDir           The root directory to start walking from.
    * @param acceptedExtensions A list of accepted file extensions (case-insensitive).
-   * @param onEachFile         A consumer callback function to execute on each matching file.
-   * @return
-   * @throws IOException If an I/O error occurs.
+   * @param onEachFile         A callback executed concurrently on each matching file with its number.
+   * @return The number of matching files.
+   * @throws IOException If the root directory can't be read.
    */
   public static int walkFiles(Path inputDir, List<String> acceptedExtensions, BiConsumer<Integer, Path> onEachFile) throws IOException {
-    final int[] i = {0};
-    walkFiles(inputDir, acceptedExtensions, path -> onEachFile.accept(++i[0], path));
-    return i[0];
+    final AtomicInteger i = new AtomicInteger();
+    walkFiles(inputDir, acceptedExtensions, path -> onEachFile.accept(i.incrementAndGet(), path));
+    return i.get();
   }
 
   /**
@@ -30,48 +49,146 @@ public class FileUtil {
    *
    * @param inputDir           The root directory to start walking from.
    * @param acceptedExtensions A list of accepted file extensions (case-insensitive).
-   * @param onEachFile         A consumer callback function to execute on each matching file.
-   * @throws IOException If an I/O error occurs.
+   * @param onEachFile         A callback executed concurrently on each matching file.
+   * @throws IOException If the root directory can't be read.
    */
   public static void walkFiles(Path inputDir, List<String> acceptedExtensions, Consumer<Path> onEachFile) throws IOException {
-    try (Stream<Path> paths = Files.walk(inputDir)) {
-      paths.filter(Files::isRegularFile) // Only regular files
-           .filter(FileUtil::isNotHidden)
-           .filter(FileUtil::isNotEmpty)
-           .filter(path -> hasAcceptedExtension(path, acceptedExtensions)) // Filter by extensions
-           .forEach(onEachFile); // Apply the callback function
-    }
+    walkFilesWithAttributes(inputDir, acceptedExtensions, (path, attributes) -> onEachFile.accept(path));
   }
 
-  private static boolean isNotEmpty(Path path) {
+  /**
+   * Walks through the files in the given directory and its subdirectories, resolving each matching file against the
+   * scan catalog.
+   *
+   * @param inputDir           The root directory to start walking from.
+   * @param acceptedExtensions A list of accepted file extensions (case-insensitive).
+   * @param catalog            The scan catalog to consult.
+   * @param onEachFile         A callback executed concurrently on each matching file's catalog entry.
+   * @throws IOException If the root directory can't be read.
+   */
+  public static void walkFiles(Path inputDir, List<String> acceptedExtensions, ScanCatalog catalog, Consumer<ScanCatalog.Entry> onEachFile) throws IOException {
+    walkFilesWithAttributes(inputDir, acceptedExtensions, (path, attributes) -> onEachFile.accept(catalog.lookup(path, attributes)));
+  }
+
+  /**
+   * Walks through the non-empty, non-hidden files in the given directory and its subdirectories.
+   * <p>
+   * The attributes of every entry are read once and handed to the callback, on Windows they even come with the
+   * directory listing. Subdirectories are listed in parallel on a fork/join pool, so the callback is called
+   * concurrently and in no particular order. Directories or files which can't be read are reported and skipped.
+   * Symbolic links to files are followed, links to directories aren't. If the callback throws, the walk stops and the
+   * exception is rethrown, a consumer can throw {@link java.util.concurrent.CancellationException} to stop it.
+   *
+   * @param inputDir           The root directory to start walking from.
+   * @param acceptedExtensions A list of accepted file extensions (case-insensitive).
+   * @param onEachFile         A callback executed concurrently on each matching file and its attributes.
+   * @throws IOException If the root directory can't be read.
+   */
+  public static void walkFilesWithAttributes(Path inputDir, List<String> acceptedExtensions, BiConsumer<Path, BasicFileAttributes> onEachFile) throws IOException {
+    if (!Files.readAttributes(inputDir, BasicFileAttributes.class).isDirectory()) {
+      throw new NotDirectoryException(inputDir.toString());
+    }
+    final ForkJoinPool pool = new ForkJoinPool(WALK_PARALLELISM);
     try {
-      return Files.size(path) > 0;
-    } catch (IOException e) {
-      // Handle the exception as needed
-      throw new RuntimeException(e);
+      pool.invoke(new DirectoryWalk(inputDir, toExtensionSet(acceptedExtensions), onEachFile, new AtomicBoolean()));
+    } finally {
+      pool.shutdown();
     }
   }
 
-  private static boolean isNotHidden(Path path) {
-    try {
-      return !Files.isHidden(path) && !path.getFileName().startsWith(".");
-    } catch (IOException e) {
-      // Handle the exception as needed
-      throw new RuntimeException(e);
+  private static class DirectoryWalk extends RecursiveAction {
+
+    private final Path directory;
+    private final Set<String> extensions;
+    private final BiConsumer<Path, BasicFileAttributes> onEachFile;
+    private final AtomicBoolean stopped;
+
+    DirectoryWalk(Path directory, Set<String> extensions, BiConsumer<Path, BasicFileAttributes> onEachFile,
+                  AtomicBoolean stopped) {
+      this.directory = directory;
+      this.extensions = extensions;
+      this.onEachFile = onEachFile;
+      this.stopped = stopped;
+    }
+
+    @Override
+    protected void compute() {
+      final List<DirectoryWalk> subdirectories = new ArrayList<>();
+      try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+        for (Path entry : entries) {
+          if (stopped.get()) {
+            break;
+          }
+          final BasicFileAttributes attributes = readAttributes(entry);
+          if (attributes == null) {
+            continue;
+          }
+          if (attributes.isDirectory()) {
+            final DirectoryWalk walk = new DirectoryWalk(entry, extensions, onEachFile, stopped);
+            walk.fork();
+            subdirectories.add(walk);
+          } else if (attributes.isRegularFile() && attributes.size() > 0 && !isHidden(entry, attributes)
+                     && hasAcceptedExtension(entry, extensions)) {
+            try {
+              onEachFile.accept(entry, attributes);
+            } catch (RuntimeException e) {
+              stopped.set(true);
+              throw e;
+            }
+          }
+        }
+      } catch (IOException | DirectoryIteratorException e) {
+        System.err.println("Error reading directory: " + directory + " -> " + e.getMessage());
+      }
+      for (DirectoryWalk walk : subdirectories) {
+        walk.join();
+      }
+    }
+
+    private BasicFileAttributes readAttributes(Path entry) {
+      try {
+        final BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (!attributes.isSymbolicLink()) {
+          return attributes;
+        }
+        if (!hasAcceptedExtension(entry, extensions)) {
+          return null;
+        }
+        final BasicFileAttributes target = Files.readAttributes(entry, BasicFileAttributes.class);
+        return target.isRegularFile() ? target : null;
+      } catch (NoSuchFileException e) {
+        // Deleted since the listing, or a broken link
+        return null;
+      } catch (IOException e) {
+        System.err.println("Error reading file: " + entry + " -> " + e.getMessage());
+        return null;
+      }
     }
   }
 
+  private static boolean isHidden(Path path, BasicFileAttributes attributes) {
+    return path.getFileName().toString().startsWith(".") || attributes instanceof DosFileAttributes dos && dos.isHidden();
+  }
+
+  private static Set<String> toExtensionSet(List<String> acceptedExtensions) {
+    final Set<String> extensions = new HashSet<>();
+    for (String extension : acceptedExtensions) {
+      extensions.add((extension.startsWith(".") ? extension : "." + extension).toLowerCase(Locale.ROOT));
+    }
+    return extensions;
+  }
+
   /**
    * Checks if a file has an accepted extension.
    *
-   * @param path               The file path.
-   * @param acceptedExtensions A list of accepted file extensions (case-insensitive).
+   * @param path       The file path.
+   * @param extensions Accepted file extensions, lowercase and starting with a dot.
    * @return True if the file has one of the accepted extensions, otherwise false.
    */
-  private static boolean hasAcceptedExtension(Path path, List<String> acceptedExtensions) {
-    String fileName = path.getFileName().toString().toLowerCase();
-    return acceptedExtensions.stream()
-                             .anyMatch(ext -> fileName.endsWith(ext.toLowerCase()));
+  private static boolean hasAcceptedExtension(Path path, Set<String> extensions) {
+    final String fileName = path.getFileName().toString();
+    final int i = fileName.lastIndexOf('.');
+    return i >= 0 && extensions.contains(fileName.substring(i).toLowerCase(Locale.ROOT));
   }
 
   public static String appendBeforeExtension(String path, String suffixBeforeExtension) {
@@ -84,6 +201,48 @@ public class FileUtil {
     }
   }
 
+  /**
+   * Turns free text, like a place name, into a single path segment that is valid on Windows, macOS and Linux.
+   *
+   * @param name      The text.
+   * @param maxLength Maximum length of the result.
+   * @return The file name, or an empty string if nothing usable is left.
+   */
+  public static String toSafeFileName(String name, int maxLength) {
+    final StringBuilder builder = new StringBuilder(Math.min(name.length(), maxLength));
+    for (int i = 0; i < name.length() && builder.length() < maxLength; i++) {
+      final char c = name.charAt(i);
+      builder.append(c < 32 || "\\/:*?\"<>|".indexOf(c) >= 0 ? '_' : c);
+    }
+    // Windows drops trailing dots and spaces, and leading dots would hide the folder
+    int start = 0;
+    int end = builder.length();
+    while (start < end && (builder.charAt(start) == '.' || builder.charAt(start) == ' ')) {
+      start++;
+    }
+    while (end > start && (builder.charAt(end - 1) == '.' || builder.charAt(end - 1) == ' ')) {
+      end--;
+    }
+    return builder.substring(start, end);
+  }
+
+  /**
+   * Deletes a directory and everything below it, symbolic links are deleted rather than followed.
+   *
+   * @param directory The directory, nothing happens if it doesn't exist.
+   * @throws IOException If a file can't be deleted.
+   */
+  public static void deleteRecursively(Path directory) throws IOException {
+    if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+
   public static String getExtension(Path path) {
     return getExtension(path.getFileName().toString());
   }
@@ -0,0 +1,97 @@
+package com.omprakashyadav.arrange.photos;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Multi-index hash over 64 bit fingerprints for Hamming radius searches.
+ * <p>
+ * Fingerprints are split into four 16 bit chunks, each with its own table from chunk value to fingerprints. If two
+ * fingerprints differ in at most r bits, at least one chunk differs in at most r / 4 bits, so a search only has to
+ * probe the chunk values within r / 4 bits of the query's, and verify the few fingerprints found there. Metric trees
+ * such as a BK-tree prune badly in Hamming space, where most distances are close to 32, and end up visiting almost
+ * every node.
+ * <p>
+ * Each table is a counting sort of the fingerprint indexes by chunk value, in two int arrays.
+ */
+public class FingerprintIndex {
+
+  private static final int CHUNKS = 4;
+  private static final int CHUNK_BITS = 16;
+  private static final int CHUNK_VALUES = 1 << CHUNK_BITS;
+
+  private final long[] fingerprints;
+  private final int[][] bucketStarts = new int[CHUNKS][];
+  private final int[][] buckets = new int[CHUNKS][];
+
+  /**
+   * @param fingerprints The fingerprints, searches report their indexes. The array must not change afterwards.
+   */
+  public FingerprintIndex(long[] fingerprints) {
+    this.fingerprints = fingerprints;
+    for (int chunk = 0; chunk < CHUNKS; chunk++) {
+      final int[] starts = new int[CHUNK_VALUES + 1];
+      for (long fingerprint : fingerprints) {
+        starts[chunk(fingerprint, chunk) + 1]++;
+      }
+      for (int value = 0; value < CHUNK_VALUES; value++) {
+        starts[value + 1] += starts[value];
+      }
+      final int[] next = starts.clone();
+      final int[] indexes = new int[fingerprints.length];
+      for (int i = 0; i < fingerprints.length; i++) {
+        indexes[next[chunk(fingerprints[i], chunk)]++] = i;
+      }
+      bucketStarts[chunk] = starts;
+      buckets[chunk] = indexes;
+    }
+  }
+
+  /**
+   * Calls back once with the index of every fingerprint within the given distance, including the query itself if
+   * indexed.
+   */
+  public void search(long fingerprint, int maxDistance, IntConsumer onMatch) {
+    final int chunkDistance = maxDistance / CHUNKS;
+    for (int chunk = 0; chunk < CHUNKS; chunk++) {
+      probe(fingerprint, maxDistance, chunk, chunk(fingerprint, chunk), 0, chunkDistance, onMatch);
+    }
+  }
+
+  /**
+   * Visits every chunk value within {@code flipsLeft} more bit flips, flipping only bits from {@code fromBit} up so
+   * each value is visited once.
+   */
+  private void probe(long fingerprint, int maxDistance, int chunk, int value, int fromBit, int flipsLeft,
+                     IntConsumer onMatch) {
+    final int[] starts = bucketStarts[chunk];
+    final int[] indexes = buckets[chunk];
+    for (int i = starts[value]; i < starts[value + 1]; i++) {
+      final long candidate = fingerprints[indexes[i]];
+      if (PerceptualHash.distance(fingerprint, candidate) <= maxDistance && !foundInEarlierChunk(fingerprint, candidate, chunk, maxDistance / CHUNKS)) {
+        onMatch.accept(indexes[i]);
+      }
+    }
+    if (flipsLeft == 0) {
+      return;
+    }
+    for (int bit = fromBit; bit < CHUNK_BITS; bit++) {
+      probe(fingerprint, maxDistance, chunk, value ^ (1 << bit), bit + 1, flipsLeft - 1, onMatch);
+    }
+  }
+
+  /**
+   * A candidate is reported from the first chunk which is close enough to find it, so it is reported once.
+   */
+  private static boolean foundInEarlierChunk(long fingerprint, long candidate, int chunk, int chunkDistance) {
+    for (int earlier = 0; earlier < chunk; earlier++) {
+      if (Integer.bitCount(chunk(fingerprint, earlier) ^ chunk(candidate, earlier)) <= chunkDistance) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int chunk(long fingerprint, int chunk) {
+    return (int) (fingerprint >>> (chunk * CHUNK_BITS)) & (CHUNK_VALUES - 1);
+  }
+}
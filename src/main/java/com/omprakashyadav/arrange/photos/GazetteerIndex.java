@@ -0,0 +1,335 @@
+package com.omprakashyadav.arrange.photos;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Nearest place lookup over a GeoNames style gazetteer, fully in memory.
+ * <p>
+ * Places are stored as unit vectors in parallel float arrays, ordered as an implicit k-d tree: the median of every
+ * range is its root and the split axis cycles through x, y and z. Euclidean distance between unit vectors grows with
+ * the great-circle distance, so the nearest vector is the nearest place, without special cases at the poles or the
+ * antimeridian. Place labels are deduplicated and referenced by index.
+ * <p>
+ * Parsing the TSV is slow for large gazetteers, so the tree is saved to a binary index next to it and memory mapped on
+ * later runs. The index records the size and modified time of the files it was built from and is rebuilt when they
+ * change.
+ */
+public class GazetteerIndex {
+
+  private static final int MAGIC = 0x47415A49; // "GAZI"
+  private static final int VERSION = 1;
+  private static final int BUFFER_SIZE = 1024 * 1024;
+
+  // Columns of the GeoNames geoname table
+  private static final int COLUMN_NAME = 1;
+  private static final int COLUMN_LATITUDE = 4;
+  private static final int COLUMN_LONGITUDE = 5;
+  private static final int COLUMN_COUNTRY_CODE = 8;
+  private static final int COLUMN_ADMIN1_CODE = 10;
+
+  private final float[] xs;
+  private final float[] ys;
+  private final float[] zs;
+  private final int[] labelIds;
+  private final String[] labels;
+
+  private GazetteerIndex(float[] xs, float[] ys, float[] zs, int[] labelIds, String[] labels) {
+    this.xs = xs;
+    this.ys = ys;
+    this.zs = zs;
+    this.labelIds = labelIds;
+    this.labels = labels;
+  }
+
+  /**
+   * Loads the binary index if it is up to date, otherwise builds it from the gazetteer and saves it.
+   *
+   * @param gazetteerFile   GeoNames geoname table, for example {@code cities1000.txt}.
+   * @param admin1CodesFile GeoNames {@code admin1CodesASCII.txt} used to name regions, or null.
+   * @param indexFile       The binary index file, it doesn't need to exist.
+   * @return The index.
+   * @throws IOException If the gazetteer can't be read.
+   */
+  public static GazetteerIndex open(Path gazetteerFile, Path admin1CodesFile, Path indexFile) throws IOException {
+    final long[] sources = sourceVersion(gazetteerFile, admin1CodesFile);
+    final GazetteerIndex loaded = load(indexFile, sources);
+    if (loaded != null) {
+      return loaded;
+    }
+    System.out.println("Building gazetteer index: " + indexFile + " ...");
+    final GazetteerIndex index = build(gazetteerFile, admin1CodesFile);
+    index.save(indexFile, sources);
+    return index;
+  }
+
+  public int size() {
+    return xs.length;
+  }
+
+  /**
+   * @return The label of the place nearest to the point, or null if the gazetteer is empty.
+   */
+  public String nearest(double latitude, double longitude) {
+    if (xs.length == 0) {
+      return null;
+    }
+    final double lat = Math.toRadians(latitude);
+    final double lon = Math.toRadians(longitude);
+    final Nearest nearest = new Nearest();
+    search(0, xs.length, 0, (float) (Math.cos(lat) * Math.cos(lon)), (float) (Math.cos(lat) * Math.sin(lon)),
+           (float) Math.sin(lat), nearest);
+    return labels[labelIds[nearest.index]];
+  }
+
+  private void search(int from, int to, int axis, float x, float y, float z, Nearest nearest) {
+    if (from >= to) {
+      return;
+    }
+    final int median = (from + to) >>> 1;
+    final float dx = x - xs[median];
+    final float dy = y - ys[median];
+    final float dz = z - zs[median];
+    final float distance = dx * dx + dy * dy + dz * dz;
+    if (distance < nearest.distance) {
+      nearest.distance = distance;
+      nearest.index = median;
+    }
+    final float delta = axis == 0 ? dx : axis == 1 ? dy : dz;
+    final int nextAxis = (axis + 1) % 3;
+    if (delta < 0) {
+      search(from, median, nextAxis, x, y, z, nearest);
+      if (delta * delta < nearest.distance) {
+        search(median + 1, to, nextAxis, x, y, z, nearest);
+      }
+    } else {
+      search(median + 1, to, nextAxis, x, y, z, nearest);
+      if (delta * delta < nearest.distance) {
+        search(from, median, nextAxis, x, y, z, nearest);
+      }
+    }
+  }
+
+  private static final class Nearest {
+    private int index = -1;
+    private float distance = Float.POSITIVE_INFINITY;
+  }
+
+  static GazetteerIndex build(Path gazetteerFile, Path admin1CodesFile) throws IOException {
+    final Map<String, String> admin1Names = admin1CodesFile != null && Files.exists(admin1CodesFile)
+                                            ? readAdmin1Names(admin1CodesFile)
+                                            : Map.of();
+    final Map<String, Integer> labelIndex = new HashMap<>();
+    final List<String> labels = new ArrayList<>();
+    float[] xs = new float[1024];
+    float[] ys = new float[1024];
+    float[] zs = new float[1024];
+    int[] labelIds = new int[1024];
+    int size = 0;
+    try (BufferedReader reader = Files.newBufferedReader(gazetteerFile, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        final String[] columns = line.split("\t", COLUMN_ADMIN1_CODE + 2);
+        if (columns.length <= COLUMN_ADMIN1_CODE || line.startsWith("#")) {
+          continue;
+        }
+        final double lat;
+        final double lon;
+        try {
+          lat = Math.toRadians(Double.parseDouble(columns[COLUMN_LATITUDE]));
+          lon = Math.toRadians(Double.parseDouble(columns[COLUMN_LONGITUDE]));
+        } catch (NumberFormatException e) {
+          continue;
+        }
+        if (size == xs.length) {
+          xs = Arrays.copyOf(xs, size * 2);
+          ys = Arrays.copyOf(ys, size * 2);
+          zs = Arrays.copyOf(zs, size * 2);
+          labelIds = Arrays.copyOf(labelIds, size * 2);
+        }
+        xs[size] = (float) (Math.cos(lat) * Math.cos(lon));
+        ys[size] = (float) (Math.cos(lat) * Math.sin(lon));
+        zs[size] = (float) Math.sin(lat);
+        final String countryCode = columns[COLUMN_COUNTRY_CODE];
+        final String region = admin1Names.get(countryCode + "." + columns[COLUMN_ADMIN1_CODE]);
+        final String label = String.join(", ", region != null && !region.equals(columns[COLUMN_NAME])
+                                               ? List.of(columns[COLUMN_NAME], region, countryCode)
+                                               : List.of(columns[COLUMN_NAME], countryCode));
+        labelIds[size] = labelIndex.computeIfAbsent(label, key -> {
+          labels.add(key);
+          return labels.size() - 1;
+        });
+        size++;
+      }
+    }
+    final GazetteerIndex index = new GazetteerIndex(Arrays.copyOf(xs, size), Arrays.copyOf(ys, size),
+                                                    Arrays.copyOf(zs, size), Arrays.copyOf(labelIds, size),
+                                                    labels.toArray(String[]::new));
+    index.buildTree(0, size, 0);
+    return index;
+  }
+
+  private static Map<String, String> readAdmin1Names(Path admin1CodesFile) throws IOException {
+    final Map<String, String> names = new HashMap<>();
+    try (BufferedReader reader = Files.newBufferedReader(admin1CodesFile, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        final String[] columns = line.split("\t", 3);
+        if (columns.length >= 2) {
+          names.put(columns[0], columns[1]);
+        }
+      }
+    }
+    return names;
+  }
+
+  /**
+   * Orders the range as an implicit k-d tree by placing the median on the axis at the middle, smaller values before.
+   */
+  private void buildTree(int from, int to, int axis) {
+    if (to - from <= 1) {
+      return;
+    }
+    final int median = (from + to) >>> 1;
+    select(from, to - 1, median, axis == 0 ? xs : axis == 1 ? ys : zs);
+    buildTree(from, median, (axis + 1) % 3);
+    buildTree(median + 1, to, (axis + 1) % 3);
+  }
+
+  /**
+   * Quickselect: moves the k-th smallest value of {@code values[left..right]} to index k.
+   */
+  private void select(int left, int right, int k, float[] values) {
+    while (left < right) {
+      final float pivot = values[(left + right) >>> 1];
+      int i = left;
+      int j = right;
+      while (i <= j) {
+        while (values[i] < pivot) {
+          i++;
+        }
+        while (values[j] > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          swap(i++, j--);
+        }
+      }
+      if (k <= j) {
+        right = j;
+      } else if (k >= i) {
+        left = i;
+      } else {
+        return;
+      }
+    }
+  }
+
+  private void swap(int i, int j) {
+    final float x = xs[i];
+    xs[i] = xs[j];
+    xs[j] = x;
+    final float y = ys[i];
+    ys[i] = ys[j];
+    ys[j] = y;
+    final float z = zs[i];
+    zs[i] = zs[j];
+    zs[j] = z;
+    final int labelId = labelIds[i];
+    labelIds[i] = labelIds[j];
+    labelIds[j] = labelId;
+  }
+
+  private static long[] sourceVersion(Path gazetteerFile, Path admin1CodesFile) throws IOException {
+    final boolean hasAdmin1 = admin1CodesFile != null && Files.exists(admin1CodesFile);
+    return new long[]{
+      Files.size(gazetteerFile),
+      Files.getLastModifiedTime(gazetteerFile).toMillis(),
+      hasAdmin1 ? Files.size(admin1CodesFile) : -1,
+      hasAdmin1 ? Files.getLastModifiedTime(admin1CodesFile).toMillis() : -1
+    };
+  }
+
+  private void save(Path indexFile, long[] sources) throws IOException {
+    final Path tempFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), BUFFER_SIZE))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      for (long source : sources) {
+        out.writeLong(source);
+      }
+      out.writeInt(xs.length);
+      for (float[] axis : new float[][]{xs, ys, zs}) {
+        for (float value : axis) {
+          out.writeFloat(value);
+        }
+      }
+      for (int labelId : labelIds) {
+        out.writeInt(labelId);
+      }
+      out.writeInt(labels.length);
+      for (String label : labels) {
+        final byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+    }
+    Files.move(tempFile, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private static GazetteerIndex load(Path indexFile, long[] sources) {
+    if (!Files.exists(indexFile)) {
+      return null;
+    }
+    try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+      final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        return null;
+      }
+      for (long source : sources) {
+        if (buffer.getLong() != source) {
+          return null;
+        }
+      }
+      final int size = buffer.getInt();
+      final float[] xs = readFloats(buffer, size);
+      final float[] ys = readFloats(buffer, size);
+      final float[] zs = readFloats(buffer, size);
+      final int[] labelIds = new int[size];
+      buffer.asIntBuffer().get(labelIds);
+      buffer.position(buffer.position() + size * Integer.BYTES);
+      final String[] labels = new String[buffer.getInt()];
+      for (int i = 0; i < labels.length; i++) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        labels[i] = new String(bytes, StandardCharsets.UTF_8);
+      }
+      return new GazetteerIndex(xs, ys, zs, labelIds, labels);
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Ignoring unreadable gazetteer index: " + indexFile + " -> " + e.getMessage());
+      return null;
+    }
+  }
+
+  private static float[] readFloats(ByteBuffer buffer, int size) {
+    final float[] values = new float[size];
+    buffer.asFloatBuffer().get(values);
+    buffer.position(buffer.position() + size * Float.BYTES);
+    return values;
+  }
+}
@@ -1,74 +1,311 @@
 package com.omprakashyadav.arrange.photos;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 
+/**
+ * Caches reverse geocoding results on disk.
+ * <p>
+ * The cache is a JSON snapshot plus an append-only journal holding one {@code ["key","location"]} record per line.
+ * A miss appends a single record instead of rewriting the whole cache. Once the journal grows past
+ * {@code COMPACT_THRESHOLD} records it is rotated and merged into a new snapshot on a background thread.
+ * <p>
+ * Lookups go through a {@link SpatialLocationCache}, so photos taken within {@code geo.cache.radius-meters} of an
+ * already resolved point reuse its location instead of calling the API again. Pending lookups are cached too, so a
+ * burst of photos taken at the same place waits on a single request. The in-memory cache is capped at
+ * {@code geo.cache.max-entries}; evicted points stay on disk, compaction merges files without loading them whole.
+ * <p>
+ * With {@code geo.backend=offline} locations come from {@link OfflineGeoLocationFetcher} and the cache isn't used.
+ */
 @Singleton
 public class GeoLocationFetcher {
 
   private static final String CACHE_FILE = "location_cache.json";
-  private static final String CACHE_FILE_BAK = "location_cache.json.bak";
+  private static final String JOURNAL_FILE = "location_cache.json.log";
+  //Journal rotated out by a compaction, deleted once the new snapshot is in place
+  private static final String COMPACTING_JOURNAL_FILE = "location_cache.json.log.compacting";
+  private static final int COMPACT_THRESHOLD = 1024;
+  private static final String UNKNOWN_LOCATION = "Unknown_Location";
+  private static final double DEFAULT_RADIUS_METERS = 100;
+  private static final int DEFAULT_MAX_ENTRIES = 100_000;
 
   @Inject
   GoogleGeoLocationFetcher googleGeoLocationFetcher;
-  private final Map<String, String> locationCache;
+  @Inject
+  OfflineGeoLocationFetcher offlineGeoLocationFetcher;
+  private final GeocoderBackend backend;
+  private final SpatialLocationCache<CompletableFuture<String>> locationCache;
   private final Gson gson;
+  private final Path cacheFile;
+  private final Path journalFile;
+  private final Path compactingJournalFile;
+
+  private final Object journalLock = new Object();
+  private FileChannel journal;
+  private int journalRecords;
+  private final AtomicBoolean compacting = new AtomicBoolean();
+  private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+    final Thread thread = new Thread(runnable, "location-cache-compactor");
+    thread.setDaemon(true);
+    return thread;
+  });
 
-  public GeoLocationFetcher() {
-    this.gson = new Gson();
-    locationCache = loadCache();
+  @Inject
+  public GeoLocationFetcher(@ConfigProperty(name = "geo.cache.radius-meters", defaultValue = "100") double radiusMeters,
+                            @ConfigProperty(name = "geo.cache.max-entries", defaultValue = "100000") int maxEntries,
+                            @ConfigProperty(name = "geo.backend", defaultValue = "google") String backend) {
+    this(Path.of(CACHE_FILE), radiusMeters, maxEntries, GeocoderBackend.fromString(backend));
+  }
+
+  GeoLocationFetcher(Path cacheFile) {
+    this(cacheFile, DEFAULT_RADIUS_METERS, DEFAULT_MAX_ENTRIES, GeocoderBackend.GOOGLE);
+  }
+
+  GeoLocationFetcher(Path cacheFile, double radiusMeters, int maxEntries, GeocoderBackend backend) {
+    this.backend = backend;
+    this.gson = new GsonBuilder().disableHtmlEscaping().create();
+    this.locationCache = new SpatialLocationCache<>(radiusMeters, maxEntries);
+    this.cacheFile = cacheFile;
+    this.journalFile = cacheFile.resolveSibling(JOURNAL_FILE);
+    this.compactingJournalFile = cacheFile.resolveSibling(COMPACTING_JOURNAL_FILE);
+    if (backend == GeocoderBackend.GOOGLE) {
+      loadCache();
+    }
   }
 
   public String getLocation(double latitude, double longitude) {
-    String coordinatesKey = String.format("%.6f_%.6f", latitude, longitude);
-    if (locationCache.containsKey(coordinatesKey)) {
-      return locationCache.get(coordinatesKey);
+    return getLocationAsync(latitude, longitude).join();
+  }
+
+  /**
+   * Resolves the location without blocking on the API. Failed requests resolve to "Unknown_Location" and aren't saved,
+   * so they are retried on the next run.
+   *
+   * @param latitude  The latitude coordinate.
+   * @param longitude The longitude coordinate.
+   * @return The location.
+   */
+  public CompletableFuture<String> getLocationAsync(double latitude, double longitude) {
+    if (backend == GeocoderBackend.OFFLINE) {
+      //A gazetteer lookup is cheaper than the cache, and its results shouldn't mix with the API's in the cache file
+      return CompletableFuture.completedFuture(offlineGeoLocationFetcher.fetchLocation(latitude, longitude));
+    }
+    final CompletableFuture<String> lookup = new CompletableFuture<>();
+    final CompletableFuture<String> cached = locationCache.putIfAbsent(latitude, longitude, lookup);
+    if (cached != null) {
+      return cached;
+    }
+    googleGeoLocationFetcher.fetchLocationAsync(latitude, longitude).whenComplete((location, error) -> {
+      if (error != null) {
+        //Not journaled, so nearby points get Unknown_Location for the rest of this run and are retried on the next
+        System.err.println("Error fetching location: " + (error.getCause() != null ? error.getCause() : error));
+        lookup.complete(UNKNOWN_LOCATION);
+        return;
+      }
+      try {
+        appendToJournal(String.format(Locale.ROOT, "%.6f_%.6f", latitude, longitude), location);
+      } catch (RuntimeException e) {
+        System.err.println("Error saving location: " + e.getMessage());
+      }
+      lookup.complete(location);
+    });
+    return lookup;
+  }
+
+  private void loadCache() {
+    try {
+      readSnapshot(this::cacheRecord);
+      final boolean interruptedCompaction = Files.exists(compactingJournalFile);
+      if (interruptedCompaction) {
+        replayJournal(compactingJournalFile, this::cacheRecord);
+      }
+      final int records = replayJournal(journalFile, this::cacheRecord);
+      if (interruptedCompaction || records >= COMPACT_THRESHOLD) {
+        final Map<String, String> pending = new LinkedHashMap<>();
+        replayJournal(compactingJournalFile, pending::put);
+        replayJournal(journalFile, pending::put);
+        writeSnapshot(pending);
+        Files.deleteIfExists(compactingJournalFile);
+        Files.deleteIfExists(journalFile);
+      } else {
+        journalRecords = records;
+      }
+      journal = openJournal();
+    } catch (IOException | IllegalStateException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Adds a persisted record to the in-memory cache. Keys are {@code latitude_longitude}; files written under a locale
+   * with a decimal comma are accepted too.
+   */
+  private void cacheRecord(String key, String location) {
+    final int separator = key.indexOf('_');
+    try {
+      locationCache.put(Double.parseDouble(key.substring(0, separator).replace(',', '.')),
+                        Double.parseDouble(key.substring(separator + 1).replace(',', '.')),
+                        CompletableFuture.completedFuture(location));
+    } catch (NumberFormatException | IndexOutOfBoundsException e) {
+      System.err.println("Ignoring location cache entry with invalid coordinates: " + key);
+    }
+  }
+
+  private void readSnapshot(BiConsumer<String, String> sink) throws IOException {
+    if (Files.exists(cacheFile) && Files.size(cacheFile) > 0) {
+      try (JsonReader reader = new JsonReader(Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8))) {
+        reader.beginObject();
+        while (reader.hasNext()) {
+          sink.accept(reader.nextName(), reader.nextString());
+        }
+        reader.endObject();
+      }
     }
-    String location = fetchLocationFromApi(latitude, longitude);
-    locationCache.put(coordinatesKey, location);
-    saveCache();
-    return location;
   }
 
-  private String fetchLocationFromApi(double latitude, double longitude) {
-    return this.googleGeoLocationFetcher.fetchLocationFromApi(latitude, longitude);
+  /**
+   * Replays the journal into {@code sink}. Replay stops at the first incomplete or unreadable record, which is what a
+   * crash in the middle of an append leaves behind, and the journal is truncated there so new records follow the last
+   * good one.
+   *
+   * @return The number of records replayed.
+   */
+  private int replayJournal(Path path, BiConsumer<String, String> sink) throws IOException {
+    if (!Files.exists(path)) {
+      return 0;
+    }
+    final byte[] bytes = Files.readAllBytes(path);
+    int records = 0;
+    int start = 0;
+    while (start < bytes.length) {
+      int end = start;
+      while (end < bytes.length && bytes[end] != '\n') {
+        end++;
+      }
+      if (end == bytes.length || !replayRecord(new String(bytes, start, end - start, StandardCharsets.UTF_8), sink)) {
+        break;
+      }
+      records++;
+      start = end + 1;
+    }
+    if (start < bytes.length) {
+      System.err.println("Discarding incomplete location cache record at offset " + start + " of " + path);
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+        channel.truncate(start);
+      }
+    }
+    return records;
   }
 
-  private Map<String, String> loadCache() {
-    Path path = Path.of(CACHE_FILE);
+  private boolean replayRecord(String line, BiConsumer<String, String> sink) {
     try {
-      if (Files.exists(path) && Files.size(path) > 0) {
-        try (FileReader fileReader = new FileReader(CACHE_FILE)) {
-          return this.gson.fromJson(fileReader, Map.class);
-        } catch (IOException e) {
-          throw new RuntimeException(e);
+      final JsonArray record = JsonParser.parseString(line).getAsJsonArray();
+      if (record.size() != 2) {
+        return false;
+      }
+      sink.accept(record.get(0).getAsString(), record.get(1).getAsString());
+      return true;
+    } catch (JsonParseException | IllegalStateException | UnsupportedOperationException e) {
+      return false;
+    }
+  }
+
+  private FileChannel openJournal() throws IOException {
+    return FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+  }
+
+  private void appendToJournal(String key, String location) {
+    // Gson escapes line breaks inside strings, so each record is exactly one line
+    final ByteBuffer record = ByteBuffer.wrap((gson.toJson(new String[]{key, location}) + "\n").getBytes(StandardCharsets.UTF_8));
+    synchronized (journalLock) {
+      try {
+        while (record.hasRemaining()) {
+          journal.write(record);
         }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
       }
+      if (++journalRecords >= COMPACT_THRESHOLD && compacting.compareAndSet(false, true)) {
+        compactor.execute(this::compact);
+      }
+    }
+  }
+
+  /**
+   * Rotates the journal, then merges the rotated journal with the current snapshot into a new snapshot. Records
+   * appended after the rotation go to the new journal.
+   */
+  private void compact() {
+    try {
+      synchronized (journalLock) {
+        journal.close();
+        Files.move(journalFile, compactingJournalFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        journal = openJournal();
+        journalRecords = 0;
+      }
+      final Map<String, String> pending = new LinkedHashMap<>();
+      replayJournal(compactingJournalFile, pending::put);
+      writeSnapshot(pending);
+      Files.delete(compactingJournalFile);
     } catch (IOException e) {
-      throw new RuntimeException(e);
+      System.err.println("Error compacting location cache: " + e.getMessage());
+    } finally {
+      compacting.set(false);
     }
+  }
 
-    return new ConcurrentHashMap<>();
+  /**
+   * Streams the current snapshot into a new one, with the {@code pending} journal records taking precedence over the
+   * snapshot's entries for the same key.
+   */
+  private void writeSnapshot(Map<String, String> pending) throws IOException {
+    final Path temp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+    try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8);
+         JsonWriter jsonWriter = new JsonWriter(writer)) {
+      jsonWriter.beginObject();
+      readSnapshot((key, location) -> {
+        if (!pending.containsKey(key)) {
+          writeEntry(jsonWriter, key, location);
+        }
+      });
+      pending.forEach((key, location) -> writeEntry(jsonWriter, key, location));
+      jsonWriter.endObject();
+    }
+    Files.move(temp, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
   }
 
-  private void saveCache() {
-    String json = gson.toJson(locationCache);
+  private static void writeEntry(JsonWriter jsonWriter, String key, String location) {
     try {
-      Path cacheFile = Path.of(CACHE_FILE);
-      if (Files.exists(cacheFile))
-        Files.move(cacheFile, Path.of(CACHE_FILE_BAK), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
-      Files.writeString(cacheFile, json);
+      jsonWriter.name(key).value(location);
     } catch (IOException e) {
-      throw new RuntimeException(e);
+      throw new UncheckedIOException(e);
     }
   }
-}
\ No newline at end of file
+}
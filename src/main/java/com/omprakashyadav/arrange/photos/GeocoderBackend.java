@@ -0,0 +1,30 @@
+package com.omprakashyadav.arrange.photos;
+
+public enum GeocoderBackend {
+  //Google Geocoding API, needs network access and an API key
+  GOOGLE("google"),
+  //Local GeoNames gazetteer, see OfflineGeoLocationFetcher
+  OFFLINE("offline");
+
+  private final String id;
+
+  GeocoderBackend(String id) {
+    this.id = id;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public static GeocoderBackend fromString(String v) {
+    if (v != null) {
+      v = v.trim();
+      for (GeocoderBackend backend : GeocoderBackend.values()) {
+        if (backend.id.equalsIgnoreCase(v) || backend.name().equalsIgnoreCase(v)) {
+          return backend;
+        }
+      }
+    }
+    return GOOGLE;
+  }
+}
@@ -9,22 +9,70 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.util.Optional;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Client for the Google Geocoding API.
+ * <p>
+ * Requests are sent with {@link HttpClient#sendAsync}, so no thread waits on the network. Requests are paced by a
+ * {@link TokenBucket} to stay under the provider's QPS limit, at most {@code google.geocoding_max_concurrent_requests}
+ * are in flight, and concurrent lookups of the same coordinates share one request. Rate limited (429, or
+ * OVER_QUERY_LIMIT in the body) and server error responses are retried with exponential backoff and jitter, honouring
+ * Retry-After.
+ */
 @Singleton
 public class GoogleGeoLocationFetcher {
 
   private static final String GOOGLE_GEOCODE_API_URL = "https://maps.googleapis.com/maps/api/geocode/json";
+  private static final String UNKNOWN_LOCATION = "Unknown_Location";
+  private static final long INITIAL_BACKOFF_MILLIS = 500;
+  private static final long MAX_BACKOFF_MILLIS = 30_000;
+
   @ConfigProperty(name = "google.geocoding_api_key", defaultValue = "APIKEY")
-  private String geocodingApiKey;
+  String geocodingApiKey;
+  @ConfigProperty(name = "google.geocoding_base_url", defaultValue = GOOGLE_GEOCODE_API_URL)
+  String baseUrl;
+  @ConfigProperty(name = "google.geocoding_requests_per_second", defaultValue = "40")
+  double requestsPerSecond;
+  @ConfigProperty(name = "google.geocoding_max_concurrent_requests", defaultValue = "8")
+  int maxConcurrentRequests;
+  @ConfigProperty(name = "google.geocoding_max_retries", defaultValue = "4")
+  int maxRetries;
 
   private final HttpClient httpClient = HttpClient.newBuilder()
                                                   .version(HttpClient.Version.HTTP_2)
+                                                  .connectTimeout(Duration.ofSeconds(10))
                                                   .build();
 
+  private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+  private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger active = new AtomicInteger();
+  private volatile TokenBucket rateLimiter;
+
+  public GoogleGeoLocationFetcher() {
+  }
+
+  GoogleGeoLocationFetcher(String geocodingApiKey, String baseUrl, double requestsPerSecond, int maxConcurrentRequests,
+                           int maxRetries) {
+    this.geocodingApiKey = geocodingApiKey;
+    this.baseUrl = baseUrl;
+    this.requestsPerSecond = requestsPerSecond;
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    this.maxRetries = maxRetries;
+  }
 
   /**
-   * Fetches the human-readable location for the given latitude and longitude.
+   * Fetches the human-readable location for the given latitude and longitude, waiting for the result.
    *
    * @param latitude  The latitude coordinate.
    * @param longitude The longitude coordinate.
@@ -32,58 +80,176 @@ public class GoogleGeoLocationFetcher {
    */
   public String fetchLocationFromApi(double latitude, double longitude) {
     try {
-      URI apiUri = buildApiUri(latitude, longitude);
-      Optional<String> response = sendRequest(apiUri);
-      return parseLocationFromResponse(response.orElseThrow(() -> new RuntimeException("No response received")));
-    } catch (Exception e) {
-      System.err.println("Error fetching location: " + e.getMessage());
-      return "Unknown_Location";
+      return fetchLocationAsync(latitude, longitude).join();
+    } catch (CompletionException e) {
+      System.err.println("Error fetching location: " + e.getCause());
+      return UNKNOWN_LOCATION;
     }
   }
 
   /**
-   * Builds the URI for the Google Geocoding API request.
+   * Fetches the human-readable location for the given latitude and longitude without blocking.
    *
    * @param latitude  The latitude coordinate.
    * @param longitude The longitude coordinate.
-   * @return The URI for the API request.
+   * @return The location, "Unknown_Location" if the API found none. Completes exceptionally if the request failed, so
+   * callers can tell a transient failure from a place without an address.
    */
-  private URI buildApiUri(double latitude, double longitude) {
-    String query = String.format("?latlng=%.6f,%.6f&key=%s", latitude, longitude, geocodingApiKey);
-    return URI.create(GOOGLE_GEOCODE_API_URL + query);
+  public CompletableFuture<String> fetchLocationAsync(double latitude, double longitude) {
+    final String key = String.format(Locale.ROOT, "%.6f,%.6f", latitude, longitude);
+    final CompletableFuture<String> existing = inFlight.get(key);
+    if (existing != null) {
+      return existing;
+    }
+    final CompletableFuture<String> result = new CompletableFuture<>();
+    final CompletableFuture<String> raced = inFlight.putIfAbsent(key, result);
+    if (raced != null) {
+      return raced;
+    }
+    result.whenComplete((location, error) -> inFlight.remove(key, result));
+    try {
+      final URI uri = buildApiUri(key);
+      enqueue(() -> attempt(uri, 0, result));
+    } catch (IllegalArgumentException e) {
+      result.completeExceptionally(e);
+    }
+    return result;
   }
 
   /**
-   * Sends an HTTP GET request to the given URI.
+   * Builds the URI for the Google Geocoding API request.
    *
-   * @param uri The URI to send the request to.
-   * @return The response body as an Optional string.
-   * @throws Exception If an error occurs while sending the request.
+   * @param coordinates The coordinates as "latitude,longitude".
+   * @return The URI for the API request.
+   */
+  private URI buildApiUri(String coordinates) {
+    return URI.create(baseUrl + "?latlng=" + coordinates + "&key=" + geocodingApiKey);
+  }
+
+  /**
+   * Runs the task once fewer than {@code maxConcurrentRequests} requests are in flight. The task must call
+   * {@link #release()} when its request is done.
    */
-  private Optional<String> sendRequest(URI uri) throws Exception {
-    HttpRequest request = HttpRequest.newBuilder()
-                                     .uri(uri)
-                                     .GET()
-                                     .build();
+  private void enqueue(Runnable task) {
+    waiting.add(task);
+    drain();
+  }
 
-    HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+  private void release() {
+    active.decrementAndGet();
+    drain();
+  }
 
-    if (response.statusCode() == 200) {
-      return Optional.of(response.body());
-    } else {
-      System.err.println("API Request failed with status code: " + response.statusCode() + " body: " + response.body());
-      return Optional.empty();
+  private void drain() {
+    while (!waiting.isEmpty()) {
+      final int running = active.get();
+      if (running >= Math.max(1, maxConcurrentRequests)) {
+        return;
+      }
+      if (!active.compareAndSet(running, running + 1)) {
+        continue;
+      }
+      final Runnable task = waiting.poll();
+      if (task == null) {
+        active.decrementAndGet();
+        continue;
+      }
+      task.run();
+    }
+  }
+
+  private void attempt(URI uri, int retry, CompletableFuture<String> result) {
+    final HttpRequest request;
+    try {
+      request = HttpRequest.newBuilder()
+                           .uri(uri)
+                           .timeout(Duration.ofSeconds(30))
+                           .GET()
+                           .build();
+    } catch (IllegalArgumentException e) {
+      release();
+      result.completeExceptionally(e);
+      return;
+    }
+    final long delay = rateLimiter().reserve();
+    final CompletableFuture<Void> permit = delay == 0
+                                           ? CompletableFuture.completedFuture(null)
+                                           : CompletableFuture.runAsync(() -> {
+                                           }, CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS));
+    permit.thenCompose(ignored -> httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()))
+          .whenComplete((response, error) -> {
+            release();
+            try {
+              handleResponse(uri, retry, response, error, result);
+            } catch (RuntimeException e) {
+              result.completeExceptionally(e);
+            }
+          });
+  }
+
+  private void handleResponse(URI uri, int retry, HttpResponse<String> response, Throwable error,
+                              CompletableFuture<String> result) {
+    if (error != null) {
+      retryOrFail(uri, retry, -1, error.getCause() != null ? error.getCause() : error, result);
+      return;
+    }
+    final int status = response.statusCode();
+    if (status == 429 || status >= 500) {
+      final long retryAfter = response.headers().firstValue("Retry-After").map(GoogleGeoLocationFetcher::parseRetryAfter).orElse(-1L);
+      retryOrFail(uri, retry, retryAfter, new RuntimeException("API Request failed with status code: " + status), result);
+      return;
+    }
+    if (status != 200) {
+      result.completeExceptionally(new RuntimeException("API Request failed with status code: " + status + " body: " + response.body()));
+      return;
+    }
+    final JsonObject jsonObject = JsonParser.parseString(response.body()).getAsJsonObject();
+    final String apiStatus = jsonObject.has("status") ? jsonObject.get("status").getAsString() : "OK";
+    switch (apiStatus) {
+      case "OK", "ZERO_RESULTS" -> result.complete(parseLocationFromResponse(jsonObject));
+      case "OVER_QUERY_LIMIT", "UNKNOWN_ERROR" -> retryOrFail(uri, retry, -1, new RuntimeException("API status: " + apiStatus), result);
+      default -> result.completeExceptionally(new RuntimeException("API status: " + apiStatus + " body: " + response.body()));
+    }
+  }
+
+  private void retryOrFail(URI uri, int retry, long retryAfterMillis, Throwable error, CompletableFuture<String> result) {
+    if (retry >= maxRetries) {
+      result.completeExceptionally(error);
+      return;
+    }
+    // Full jitter, so requests throttled together don't retry together
+    final long backoff = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << retry);
+    final long delay = Math.max(retryAfterMillis, ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1));
+    CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)
+                     .execute(() -> enqueue(() -> attempt(uri, retry + 1, result)));
+  }
+
+  private static long parseRetryAfter(String value) {
+    try {
+      return Long.parseLong(value.trim()) * 1000;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private TokenBucket rateLimiter() {
+    if (rateLimiter == null) {
+      synchronized (this) {
+        if (rateLimiter == null) {
+          rateLimiter = new TokenBucket(requestsPerSecond);
+        }
+      }
     }
+    return rateLimiter;
   }
 
   /**
    * Parses the formatted address from the API response.
    *
-   * @param jsonResponse The JSON response as a string.
+   * @param jsonObject The JSON response.
    * @return The formatted address or "Unknown_Location" if not found.
    */
-  private String parseLocationFromResponse(String jsonResponse) {
-    JsonObject jsonObject = JsonParser.parseString(jsonResponse).getAsJsonObject();
+  private String parseLocationFromResponse(JsonObject jsonObject) {
     if (jsonObject.has("results") && !jsonObject.getAsJsonArray("results").isEmpty()) {
       return jsonObject.getAsJsonArray("results")
                        .get(0)
@@ -92,7 +258,7 @@ public class GoogleGeoLocationFetcher {
                        .getAsString();
     } else {
       System.err.println("No location found in API response.");
-      return "Unknown_Location";
+      return UNKNOWN_LOCATION;
     }
   }
-}
\ No newline at end of file
+}
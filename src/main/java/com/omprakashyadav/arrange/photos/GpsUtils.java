@@ -83,10 +83,19 @@ public class GpsUtils {
       throw new IllegalArgumentException("Invalid GPS data format.");
     }
 
-    double degrees = gpsData[0].doubleValue();
-    double minutes = gpsData[1].doubleValue();
-    double seconds = gpsData[2].doubleValue();
+    return convertToDecimalDegrees(gpsData[0].doubleValue(), gpsData[1].doubleValue(), gpsData[2].doubleValue(), ref);
+  }
 
+  /**
+   * Converts GPS degrees, minutes, and seconds (DMS) to decimal degrees (DD).
+   *
+   * @param degrees The degrees.
+   * @param minutes The minutes.
+   * @param seconds The seconds.
+   * @param ref     The reference direction (N, S, E, W).
+   * @return The decimal degrees value.
+   */
+  public static double convertToDecimalDegrees(double degrees, double minutes, double seconds, String ref) {
     // Decimal degrees formula
     double decimalDegrees = degrees + (minutes / 60.0) + (seconds / 3600.0);
 
@@ -0,0 +1,41 @@
+package com.omprakashyadav.arrange.photos;
+
+public enum HashAlgorithm {
+  //Fast non-cryptographic hash, for grouping candidates only
+  MURMUR3_128("murmur3-128", false),
+  SHA_256("sha256", true),
+  //SHA-256 over fixed size chunks hashed in parallel, then over the chunk digests
+  SHA_256_TREE("sha256-tree", true);
+
+  private final String id;
+  private final boolean cryptographic;
+
+  HashAlgorithm(String id, boolean cryptographic) {
+    this.id = id;
+    this.cryptographic = cryptographic;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * @return Whether equal digests can be taken as equal content. Only these confirm duplicates, which may then be
+   * deleted or linked.
+   */
+  public boolean isCryptographic() {
+    return cryptographic;
+  }
+
+  public static HashAlgorithm fromString(String v) {
+    if (v != null) {
+      v = v.trim();
+      for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+        if (algorithm.id.equalsIgnoreCase(v) || algorithm.name().equalsIgnoreCase(v)) {
+          return algorithm;
+        }
+      }
+    }
+    return SHA_256;
+  }
+}
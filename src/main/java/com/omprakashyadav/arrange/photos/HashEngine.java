@@ -0,0 +1,327 @@
+package com.omprakashyadav.arrange.photos;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Hashes files with a selectable {@link HashAlgorithm}. Engines are thread-safe: the read buffer and the digest state
+ * are pooled per thread, so hashing a file allocates nothing but the resulting {@link Digest}.
+ */
+public abstract class HashEngine {
+
+  static final int SAMPLE_BLOCK_SIZE = 64 * 1024; // 64 KB per sampled block
+  private static final int BUFFER_SIZE = 1024 * 1024; // 1 MB
+
+  private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+  private static final Map<HashAlgorithm, HashEngine> ENGINES = new EnumMap<>(HashAlgorithm.class);
+
+  static {
+    ENGINES.put(HashAlgorithm.MURMUR3_128, new StreamingEngine(HashAlgorithm.MURMUR3_128));
+    ENGINES.put(HashAlgorithm.SHA_256, new StreamingEngine(HashAlgorithm.SHA_256));
+    ENGINES.put(HashAlgorithm.SHA_256_TREE, new TreeEngine());
+  }
+
+  private final HashAlgorithm algorithm;
+  private final ThreadLocal<Hasher> hashers = ThreadLocal.withInitial(this::newHasher);
+
+  HashEngine(HashAlgorithm algorithm) {
+    this.algorithm = algorithm;
+  }
+
+  public static HashEngine of(HashAlgorithm algorithm) {
+    return ENGINES.get(algorithm);
+  }
+
+  public HashAlgorithm getAlgorithm() {
+    return algorithm;
+  }
+
+  /**
+   * Hashes the whole file.
+   *
+   * @param path Path to the file.
+   * @return The digest.
+   * @throws IOException if an I/O error occurs while reading the file.
+   */
+  public Digest hashFile(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return new Digest(algorithm, hashRange(channel, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Hashes {@code SAMPLE_BLOCK_SIZE} bytes from the head, middle and tail of the file, so files with identical container
+   * headers but different content still get different digests. Files no larger than the three blocks are hashed whole.
+   *
+   * @param path Path to the file.
+   * @param size Size of the file in bytes.
+   * @return The digest of the sampled blocks.
+   * @throws IOException if an I/O error occurs while reading the file.
+   */
+  public Digest hashSampled(Path path, long size) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (size <= 3L * SAMPLE_BLOCK_SIZE) {
+        return new Digest(algorithm, hashRange(channel, 0, size));
+      }
+      final Hasher hasher = pooledHasher();
+      for (long position : new long[]{0, size / 2 - SAMPLE_BLOCK_SIZE / 2, size - SAMPLE_BLOCK_SIZE}) {
+        update(hasher, channel, position, position + SAMPLE_BLOCK_SIZE);
+      }
+      return new Digest(algorithm, hasher.digest());
+    }
+  }
+
+  abstract Hasher newHasher();
+
+  /**
+   * @return The reset digest state of the calling thread.
+   */
+  Hasher pooledHasher() {
+    final Hasher hasher = hashers.get();
+    hasher.reset();
+    return hasher;
+  }
+
+  byte[] hashRange(FileChannel channel, long start, long end) throws IOException {
+    final Hasher hasher = pooledHasher();
+    update(hasher, channel, start, end);
+    return hasher.digest();
+  }
+
+  private static void update(Hasher hasher, FileChannel channel, long start, long end) throws IOException {
+    final ByteBuffer buffer = BUFFER.get();
+    long position = start;
+    while (position < end) {
+      buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+      final int read = channel.read(buffer, position);
+      if (read == -1) {
+        break;
+      }
+      buffer.flip();
+      hasher.update(buffer);
+      position += read;
+    }
+  }
+
+  /**
+   * Incremental digest state, reused across files by one thread.
+   */
+  interface Hasher {
+    void reset();
+
+    void update(ByteBuffer data);
+
+    byte[] digest();
+  }
+
+  private static final class StreamingEngine extends HashEngine {
+
+    StreamingEngine(HashAlgorithm algorithm) {
+      super(algorithm);
+    }
+
+    @Override
+    Hasher newHasher() {
+      return getAlgorithm() == HashAlgorithm.MURMUR3_128 ? new Murmur3Hasher() : new MessageDigestHasher("SHA-256");
+    }
+  }
+
+  /**
+   * SHA-256 over {@code CHUNK_SIZE} chunks hashed in parallel, then SHA-256 over the concatenated chunk digests. The
+   * digest differs from a plain SHA-256 of the file, which is why it is a separate algorithm.
+   * <p>
+   * Chunks are read on a dedicated pool rather than the common fork-join pool, whose few threads shouldn't block on
+   * file reads. Each pool thread reuses its buffer and digest across chunks.
+   */
+  private static final class TreeEngine extends HashEngine {
+
+    private static final int CHUNK_SIZE = 8 * 1024 * 1024; // 8 MB
+    private static final HashEngine CHUNK_ENGINE = new StreamingEngine(HashAlgorithm.SHA_256);
+    private static final ExecutorService CHUNK_EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+      final Thread thread = new Thread(runnable, "hash-tree-chunk");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    TreeEngine() {
+      super(HashAlgorithm.SHA_256_TREE);
+    }
+
+    @Override
+    Hasher newHasher() {
+      return new MessageDigestHasher("SHA-256");
+    }
+
+    @Override
+    byte[] hashRange(FileChannel channel, long start, long end) throws IOException {
+      final int chunks = (int) Math.max(1, (end - start + CHUNK_SIZE - 1) / CHUNK_SIZE);
+      final List<Future<byte[]>> chunkDigests = new ArrayList<>(chunks);
+      for (int i = 0; i < chunks; i++) {
+        final long chunkStart = start + (long) i * CHUNK_SIZE;
+        final long chunkEnd = Math.min(end, chunkStart + CHUNK_SIZE);
+        chunkDigests.add(CHUNK_EXECUTOR.submit(() -> CHUNK_ENGINE.hashRange(channel, chunkStart, chunkEnd)));
+      }
+      final Hasher hasher = pooledHasher();
+      try {
+        for (Future<byte[]> chunkDigest : chunkDigests) {
+          hasher.update(ByteBuffer.wrap(chunkDigest.get()));
+        }
+      } catch (ExecutionException e) {
+        chunkDigests.forEach(chunkDigest -> chunkDigest.cancel(false));
+        if (e.getCause() instanceof IOException cause) {
+          throw cause;
+        }
+        throw new RuntimeException(e.getCause());
+      } catch (InterruptedException e) {
+        chunkDigests.forEach(chunkDigest -> chunkDigest.cancel(false));
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while hashing", e);
+      }
+      return hasher.digest();
+    }
+  }
+
+  private static final class MessageDigestHasher implements Hasher {
+
+    private final MessageDigest digest;
+
+    MessageDigestHasher(String algorithm) {
+      try {
+        this.digest = MessageDigest.getInstance(algorithm);
+      } catch (NoSuchAlgorithmException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public void reset() {
+      digest.reset();
+    }
+
+    @Override
+    public void update(ByteBuffer data) {
+      digest.update(data);
+    }
+
+    @Override
+    public byte[] digest() {
+      return digest.digest();
+    }
+  }
+
+  /**
+   * MurmurHash3 x64 128 bit, seed 0. Produces the same bytes as Guava's {@code Hashing.murmur3_128()}.
+   */
+  private static final class Murmur3Hasher implements Hasher {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final ByteBuffer tail = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+    private long h1;
+    private long h2;
+    private long length;
+
+    @Override
+    public void reset() {
+      h1 = 0;
+      h2 = 0;
+      length = 0;
+      tail.clear();
+    }
+
+    @Override
+    public void update(ByteBuffer data) {
+      final ByteOrder order = data.order();
+      data.order(ByteOrder.LITTLE_ENDIAN);
+      length += data.remaining();
+      if (tail.position() > 0) {
+        while (tail.hasRemaining() && data.hasRemaining()) {
+          tail.put(data.get());
+        }
+        if (tail.hasRemaining()) {
+          data.order(order);
+          return;
+        }
+        tail.flip();
+        mixBlock(tail.getLong(), tail.getLong());
+        tail.clear();
+      }
+      while (data.remaining() >= 16) {
+        mixBlock(data.getLong(), data.getLong());
+      }
+      tail.put(data);
+      data.order(order);
+    }
+
+    @Override
+    public byte[] digest() {
+      final int remaining = tail.position();
+      long k1 = 0;
+      long k2 = 0;
+      for (int i = remaining - 1; i >= 8; i--) {
+        k2 = (k2 << 8) | (tail.get(i) & 0xFF);
+      }
+      for (int i = Math.min(remaining, 8) - 1; i >= 0; i--) {
+        k1 = (k1 << 8) | (tail.get(i) & 0xFF);
+      }
+      if (remaining > 8) {
+        h2 ^= mixK2(k2);
+      }
+      if (remaining > 0) {
+        h1 ^= mixK1(k1);
+      }
+      h1 ^= length;
+      h2 ^= length;
+      h1 += h2;
+      h2 += h1;
+      h1 = fmix(h1);
+      h2 = fmix(h2);
+      h1 += h2;
+      h2 += h1;
+      return ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN).putLong(h1).putLong(h2).array();
+    }
+
+    private void mixBlock(long k1, long k2) {
+      h1 ^= mixK1(k1);
+      h1 = Long.rotateLeft(h1, 27);
+      h1 += h2;
+      h1 = h1 * 5 + 0x52dce729;
+      h2 ^= mixK2(k2);
+      h2 = Long.rotateLeft(h2, 31);
+      h2 += h1;
+      h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    private static long mixK1(long k1) {
+      return Long.rotateLeft(k1 * C1, 31) * C2;
+    }
+
+    private static long mixK2(long k2) {
+      return Long.rotateLeft(k2 * C2, 33) * C1;
+    }
+
+    private static long fmix(long k) {
+      k ^= k >>> 33;
+      k *= 0xff51afd7ed558ccdL;
+      k ^= k >>> 33;
+      k *= 0xc4ceb9fe1a85ec53L;
+      k ^= k >>> 33;
+      return k;
+    }
+  }
+}
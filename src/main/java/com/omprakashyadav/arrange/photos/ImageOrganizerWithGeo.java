@@ -2,100 +2,447 @@ package com.omprakashyadav.arrange.photos;
 
 import com.drew.imaging.ImageMetadataReader;
 import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifIFD0Directory;
 import com.drew.metadata.exif.ExifSubIFDDirectory;
+import com.drew.metadata.exif.GpsDirectory;
 
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
-import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Organizes media as a staged pipeline: scan -> metadata extraction -> destination planning -> copy.
+ * Stages are connected by bounded queues so a fast stage can't run ahead of a slow one unbounded.
+ * <p>
+ * With a place layout the destination of a file with GPS coordinates isn't known until its place is geocoded. Such
+ * files are copied right away into a staging directory inside the output directory while the lookup runs in the
+ * background, then renamed into their place folder once it is resolved, so copying never waits on the geocoder.
+ * <p>
+ * Every copy is recorded in an {@link OperationJournal}, so an interrupted run can be resumed without reading the
+ * metadata of, or comparing, the files it already organized.
+ */
 public class ImageOrganizerWithGeo {
 
   private static final String UNKNOWN_DATE = "Unknown_Date";
-  private final DirectoryStructureLayout directoryStructureLayout;
+  private static final String UNKNOWN_LOCATION = "Unknown_Location";
+  private static final String STAGING_DIR = ".staging";
+  private static final int MAX_PLACE_LENGTH = 100;
+  private static final int QUEUE_CAPACITY = 256;
+  private static final ScanCatalog.Entry END_OF_SCAN = new ScanCatalog.Entry("", 0, 0, "", (byte) 0, MediaType.OTHER, 0, 0, 0, null, null, null, 0);
+  private static final MediaItem END_OF_METADATA = new MediaItem(null, null);
+  private static final CopyTask END_OF_PLAN = new CopyTask(null, null, null, null, null, null);
+  private static final StagedFile END_OF_STAGING = new StagedFile(null, 0, null);
+
+  private final LayoutTemplate layoutTemplate;
   private final StatsCollector statsCollector;
+  private final int metadataThreads;
+  private final int copyThreads;
+  private final boolean ffprobeFallback;
+  private final boolean verbose;
+  private final ScanCatalog catalog;
+  private final GeoLocationFetcher geoLocationFetcher;
+  private final FileTransfer fileTransfer;
+  private final boolean resume;
+  private OperationJournal journal;
+
+  private final AtomicInteger count = new AtomicInteger();
+  private final AtomicInteger stagingSequence = new AtomicInteger();
+  private final AtomicInteger similarSequence = new AtomicInteger();
+  private final Map<Path, Boolean> dirExists = new ConcurrentHashMap<>();
+  // Completes once it is known whether the file that claimed a target name was placed there
+  private final Map<Path, CompletableFuture<Boolean>> claimedTargets = new ConcurrentHashMap<>();
+  private final Queue<CompletableFuture<Void>> pendingPlacements = new ConcurrentLinkedQueue<>();
 
   public ImageOrganizerWithGeo(DirectoryStructureLayout directoryStructureLayout, StatsCollector statsCollector) {
-    this.directoryStructureLayout = directoryStructureLayout;
+    this(directoryStructureLayout, statsCollector, ScanCatalog.inMemory(), OrganizeOptions.defaults(), null);
+  }
+
+  /**
+   * Organizes in one of the predefined layouts, with dates in the system time zone.
+   */
+  public ImageOrganizerWithGeo(DirectoryStructureLayout directoryStructureLayout, StatsCollector statsCollector,
+                               ScanCatalog catalog, OrganizeOptions options, GeoLocationFetcher geoLocationFetcher) {
+    this(directoryStructureLayout.toTemplate(ZoneId.systemDefault()), statsCollector, catalog, options, geoLocationFetcher);
+  }
+
+  /**
+   * @param geoLocationFetcher Resolves place folders for place layouts, may be null to skip them.
+   */
+  public ImageOrganizerWithGeo(LayoutTemplate layoutTemplate, StatsCollector statsCollector,
+                               ScanCatalog catalog, OrganizeOptions options, GeoLocationFetcher geoLocationFetcher) {
+    this.layoutTemplate = layoutTemplate;
     this.statsCollector = statsCollector;
+    this.metadataThreads = options.metadataThreads();
+    this.copyThreads = options.copyThreads();
+    this.ffprobeFallback = options.ffprobeFallback();
+    this.verbose = options.verbose();
+    this.catalog = catalog;
+    this.geoLocationFetcher = geoLocationFetcher;
+    this.fileTransfer = new FileTransfer(options.transferMode(), statsCollector);
+    this.resume = options.resume();
   }
 
   public void organizeImages(Path inputDirectory, Path outputDirectory) throws IOException {
-    final int[] count = {0};
-    FileUtil.walkFiles(inputDirectory, List.of(".jpg", ".jpeg", ".png", ".mp4"), path -> {
-      try {
-        System.out.printf("[%d] Processing: %s\n", ++count[0], path.toAbsolutePath());
-        Metadata imageMetadata;
-        MediaMetadata mediaMetadata = new MediaMetadata(null, UNKNOWN_DATE);
-
-        if (isImageFile(path)) {
-          statsCollector.incrementTotalImages();
-          long fileSize = Files.size(path);
-          statsCollector.addImageSize(fileSize);
-          imageMetadata = ImageMetadataReader.readMetadata(path.toFile());
-          mediaMetadata = getMediaMetadataFromImageMetadata(imageMetadata);
-
-          if (mediaMetadata.date() == null) {
-            statsCollector.incrementUnknownDateImages();
-          }
-        } else if (isVideoFile(path)) {
-          statsCollector.incrementTotalVideos();
-          long fileSize = Files.size(path);
-          statsCollector.addVideoSize(fileSize);
-          Date creationDateFromFFmpeg = VideoMetadataReader.getCreationDateFromFFmpeg(path);
-          if (creationDateFromFFmpeg == null) {
-            statsCollector.incrementUnknownDateVideos();
+    journal = OperationJournal.open(outputDirectory, resume, fileTransfer.mode());
+    final BlockingQueue<ScanCatalog.Entry> scanned = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    final BlockingQueue<MediaItem> extracted = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    final BlockingQueue<CopyTask> planned = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    // Unbounded: a file is only added once it is staged on disk and its place is resolved
+    final BlockingQueue<StagedFile> staged = new LinkedBlockingQueue<>();
+
+    final List<Thread> workers = new ArrayList<>();
+    final AtomicInteger metadataWorkersLeft = new AtomicInteger(metadataThreads);
+    for (int i = 0; i < metadataThreads; i++) {
+      workers.add(startWorker("metadata-" + i, () -> {
+        try {
+          extractMetadata(scanned, extracted);
+        } finally {
+          if (metadataWorkersLeft.decrementAndGet() == 0) {
+            putUninterruptibly(extracted, END_OF_METADATA);
           }
-          mediaMetadata = getMediaMetadataFromVideoMetadata(creationDateFromFFmpeg);
         }
+      }));
+    }
+    workers.add(startWorker("planner", () -> {
+      try {
+        planDestinations(outputDirectory, extracted, planned);
+      } finally {
+        for (int i = 0; i < copyThreads; i++) {
+          putUninterruptibly(planned, END_OF_PLAN);
+        }
+      }
+    }));
+    for (int i = 0; i < copyThreads; i++) {
+      workers.add(startWorker("copy-" + i, () -> copyFiles(planned, staged)));
+    }
+    final Thread placer = startWorker("placer", () -> placeStagedFiles(outputDirectory, staged));
 
-        copyFile(outputDirectory, mediaMetadata, path);
+    try {
+      new MediaScanner(inputDirectory, FileFormats.COMMON_MEDIA, MediaScanner.DEFAULT_BUFFER_SIZE, statsCollector)
+        .consume(file -> {
+          statsCollector.addScanned(file.attributes().size());
+          putUninterruptibly(scanned, catalog.lookup(file.path(), file.attributes()));
+        })
+        .join();
+      catalog.scanned(inputDirectory);
+      statsCollector.scanComplete();
+      journal.finish();
+    } finally {
+      for (int i = 0; i < metadataThreads; i++) {
+        putUninterruptibly(scanned, END_OF_SCAN);
+      }
+      for (Thread worker : workers) {
+        joinUninterruptibly(worker);
+      }
+      if (pendingPlacements.stream().anyMatch(placement -> !placement.isDone())) {
+        System.out.println("Waiting for place names...");
+      }
+      CompletableFuture.allOf(pendingPlacements.toArray(CompletableFuture[]::new)).join();
+      putUninterruptibly(staged, END_OF_STAGING);
+      joinUninterruptibly(placer);
+      deleteIfEmpty(outputDirectory.resolve(STAGING_DIR));
+      journal.close();
+    }
+  }
+
+  private void extractMetadata(BlockingQueue<ScanCatalog.Entry> in, BlockingQueue<MediaItem> out) {
+    ScanCatalog.Entry entry;
+    while ((entry = takeUninterruptibly(in)) != END_OF_SCAN) {
+      final Path path = entry.toPath();
+      try {
+        if (journal.isCompleted(path, entry.size(), entry.modified())) {
+          statsCollector.incrementAlreadyOrganizedFiles();
+          statsCollector.addCompleted(entry.size());
+          continue;
+        }
+        if (verbose) {
+          System.out.printf("[%d] Processing: %s\n", count.incrementAndGet(), path);
+        }
+        final long start = System.nanoTime();
+        final MediaMetadata metadata = readMediaMetadata(entry);
+        statsCollector.recordLatency(Stage.METADATA, System.nanoTime() - start);
+        putUninterruptibly(out, new MediaItem(path, metadata));
       } catch (Exception e) {
         System.err.println("Error processing file: " + path.getFileName() + " -> " + e.getMessage());
         statsCollector.incrementErrors();
+        statsCollector.addCompleted(entry.size());
       }
-    });
+    }
+  }
 
-    // Print final stats
-    statsCollector.printStats();
+  private MediaMetadata readMediaMetadata(ScanCatalog.Entry entry) throws Exception {
+    MediaMetadata mediaMetadata = getMediaMetadata(entry, null, null, null);
+    if (entry.mediaType() == MediaType.IMAGE) {
+      statsCollector.incrementTotalImages();
+      statsCollector.addImageSize(entry.size());
+      final Date date;
+      final double[] coordinates;
+      final String camera;
+      if (entry.hasMetadata()) {
+        date = entry.captureDate();
+        coordinates = entry.coordinates();
+        camera = entry.camera();
+      } else {
+        final ExifHeaderReader.ExifHeader exifHeader = readExifHeader(entry.toPath());
+        date = exifHeader.captureDate();
+        coordinates = exifHeader.coordinates();
+        camera = exifHeader.camera();
+        catalog.update(entry, e -> e.withMetadata(date, coordinates, camera));
+      }
+      mediaMetadata = getMediaMetadata(entry, date, coordinates, camera);
+
+      if (mediaMetadata.date() == null) {
+        statsCollector.incrementUnknownDateImages();
+      }
+    } else if (entry.mediaType() == MediaType.VIDEO) {
+      statsCollector.incrementTotalVideos();
+      statsCollector.addVideoSize(entry.size());
+      final Date creationDate;
+      final double[] coordinates;
+      if (entry.hasMetadata()) {
+        creationDate = entry.captureDate();
+        coordinates = entry.coordinates();
+      } else {
+        final VideoContainerReader.VideoHeader videoHeader = readVideoHeader(entry.toPath());
+        creationDate = videoHeader.creationDate();
+        coordinates = videoHeader.coordinates();
+        catalog.update(entry, e -> e.withMetadata(creationDate, coordinates, null));
+      }
+      if (creationDate == null) {
+        statsCollector.incrementUnknownDateVideos();
+      }
+      mediaMetadata = getMediaMetadata(entry, creationDate, coordinates, null);
+    }
+    return mediaMetadata;
+  }
+
+  /**
+   * Runs on a single thread so that target names are claimed in a deterministic order. When a target name is
+   * already taken (by an earlier file of this run or by a file on disk) an alternative name is reserved up front,
+   * the copy stage then waits for the earlier file to be placed and decides between skipping the file and using the
+   * alternative.
+   * <p>
+   * Files waiting for a place folder are planned into the staging directory under a unique name and their target is
+   * claimed by {@link #placeStagedFile(Path, StagedFile)} instead.
+   */
+  private void planDestinations(Path outputDirectory, BlockingQueue<MediaItem> in, BlockingQueue<CopyTask> out) {
+    MediaItem item;
+    while ((item = takeUninterruptibly(in)) != END_OF_METADATA) {
+      try {
+        final String fileName = item.source().getFileName().toString();
+        final double[] coordinates = item.metadata().coordinates();
+        if (layoutTemplate.hasPlace() && geoLocationFetcher != null && coordinates != null) {
+          final long start = System.nanoTime();
+          final CompletableFuture<String> place = geoLocationFetcher.getLocationAsync(coordinates[0], coordinates[1]);
+          place.whenComplete((location, error) -> statsCollector.recordLatency(Stage.GEOCODE, System.nanoTime() - start));
+          final Path stagingPath = outputDirectory.resolve(STAGING_DIR);
+          createDir(stagingPath);
+          final Path stagedFile = stagingPath.resolve(stagingSequence.incrementAndGet() + "_" + fileName);
+          putUninterruptibly(out, new CopyTask(item.source(), item.metadata(), stagedFile, null, null, place));
+          continue;
+        }
+        final Path outputPath = outputDirectory.resolve(item.metadata().layout());
+        createDir(outputPath);
+        final Path target = outputPath.resolve(fileName);
+        final CompletableFuture<Boolean> claim = new CompletableFuture<>();
+        final CompletableFuture<Boolean> earlierClaim = claimedTargets.putIfAbsent(target, claim);
+        if (earlierClaim == null && !Files.exists(target)) {
+          putUninterruptibly(out, new CopyTask(item.source(), item.metadata(), target, null, null, null));
+        } else {
+          // A file on disk holds the name from the start
+          claim.complete(true);
+          final CompletableFuture<Boolean> holder = earlierClaim != null ? earlierClaim : claim;
+          putUninterruptibly(out, new CopyTask(item.source(), item.metadata(), target, holder, claimSimilarTarget(outputPath, fileName), null));
+        }
+      } catch (Exception e) {
+        System.err.println("Error processing file: " + item.source().getFileName() + " -> " + e.getMessage());
+        statsCollector.incrementErrors();
+        statsCollector.addCompleted(item.metadata().size());
+      }
+    }
   }
 
-  private Map<String, Boolean> dirExists = new HashMap<>();
+  private Path claimSimilarTarget(Path outputPath, String fileName) {
+    while (true) {
+      final String other = FileUtil.appendBeforeExtension(fileName, "_similar_" + System.currentTimeMillis() + "_" + similarSequence.incrementAndGet());
+      final Path candidate = outputPath.resolve(other);
+      if (claimedTargets.putIfAbsent(candidate, new CompletableFuture<>()) == null && !Files.exists(candidate)) {
+        return candidate;
+      }
+    }
+  }
 
-  private void copyFile(Path outputDirectory, MediaMetadata mediaMetadata, Path file) throws IOException {
-    final Path outputPath = outputDirectory.resolve(mediaMetadata.layout());
-    createDir(outputPath);
-    Path outputFilePath = outputPath.resolve(file.getFileName().toString());
-    if (Files.exists(outputFilePath)) {
-      final boolean identical = FileComparator.areFilesIdentical(file, outputFilePath);
-      if (!identical) {
+  /**
+   * Settles the claim on the name a task writes to, so files waiting for that name can go on.
+   */
+  private void releaseClaim(Path claimed, boolean placed) {
+    final CompletableFuture<Boolean> claim = claimedTargets.get(claimed);
+    if (claim != null) {
+      claim.complete(placed);
+    }
+  }
+
+  private void copyFiles(BlockingQueue<CopyTask> in, BlockingQueue<StagedFile> staged) {
+    CopyTask task;
+    while ((task = takeUninterruptibly(in)) != END_OF_PLAN) {
+      long operation = 0;
+      try {
+        operation = journal.planned(task.source(), task.target(), task.similarTarget(), task.place() != null,
+                                               task.metadata().size(), task.metadata().modified());
+        final long start = System.nanoTime();
+        final Path copied = copyFile(task);
+        statsCollector.recordLatency(Stage.COPY, System.nanoTime() - start);
+        if (task.place() != null) {
+          final CopyTask stagedTask = task;
+          final long stagedOperation = operation;
+          pendingPlacements.add(task.place().thenAccept(place -> staged.add(new StagedFile(stagedTask, stagedOperation, place))));
+        } else {
+          journal.completed(operation, copied);
+          statsCollector.addCompleted(task.metadata().size());
+        }
+      } catch (Exception e) {
+        System.err.println("Error processing file: " + task.source().getFileName() + " -> " + e.getMessage());
+        if (operation != 0) {
+          journal.failed(operation);
+        }
+        releaseClaim(task.holder() == null ? task.target() : task.similarTarget(), false);
+        statsCollector.incrementErrors();
+        statsCollector.addCompleted(task.metadata().size());
+      }
+    }
+  }
+
+  /**
+   * A file whose target name is taken waits until the file holding it is placed, then is compared with the target.
+   * Identical files are skipped. In move mode they are deleted from the input when the output directory holds a
+   * separate regular file with their content, never when the existing file is a link or the source itself. When the
+   * earlier file couldn't be placed, the file is transferred under its alternative name.
+   *
+   * @return Where the content of the source is in the output directory.
+   */
+  private Path copyFile(CopyTask task) throws IOException {
+    final Path outputFilePath = task.holder() == null ? task.target() : task.similarTarget();
+    boolean placed = false;
+    try {
+      if (task.holder() != null && task.holder().join()) {
+        if (FileComparator.areFilesIdentical(task.source(), task.target())) {
+          if (fileTransfer.mode() == TransferMode.MOVE
+              && Files.isRegularFile(task.target(), LinkOption.NOFOLLOW_LINKS)
+              && !Files.isSameFile(task.source(), task.target())) {
+            Files.delete(task.source());
+          }
+          return task.target();
+        }
         statsCollector.incrementDuplicateFiles();
-        final String other = FileUtil.appendBeforeExtension(file.getFileName().toString(), "_similar_" + System.currentTimeMillis());
-        outputFilePath = outputPath.resolve(other);
-      } else {
-        return;
       }
+      fileTransfer.transfer(task.source(), outputFilePath, task.metadata().size(), task.metadata().fileTime());
+      placed = true;
+      return outputFilePath;
+    } finally {
+      releaseClaim(outputFilePath, placed);
     }
-    Files.copy(file, outputFilePath, StandardCopyOption.REPLACE_EXISTING);
-    Instant instant;
-    if (mediaMetadata.date() == null) {
-      BasicFileAttributes attr = Files.readAttributes(file, BasicFileAttributes.class);
-      instant = attr.creationTime().toInstant();
-    } else {
-      instant = mediaMetadata.date().toInstant();
+  }
+
+  private void placeStagedFiles(Path outputDirectory, BlockingQueue<StagedFile> in) {
+    StagedFile file;
+    while ((file = takeUninterruptibly(in)) != END_OF_STAGING) {
+      try {
+        journal.completed(file.operation(), placeStagedFile(outputDirectory, file));
+      } catch (Exception e) {
+        System.err.println("Error processing file: " + file.task().source().getFileName() + " -> " + e.getMessage());
+        journal.failed(file.operation());
+        statsCollector.incrementErrors();
+      }
+      statsCollector.addCompleted(file.task().metadata().size());
+    }
+  }
+
+  /**
+   * Moves a staged copy into its place folder, or into the date folder when no place was found. Name clashes are
+   * resolved like in {@link #copyFile}, comparing the staged copy instead of the source.
+   *
+   * @return Where the staged file was placed, or the identical file it was dropped for.
+   */
+  private Path placeStagedFile(Path outputDirectory, StagedFile file) throws IOException {
+    final CopyTask task = file.task();
+    final String place = file.place() == null || UNKNOWN_LOCATION.equals(file.place())
+                         ? ""
+                         : FileUtil.toSafeFileName(file.place(), MAX_PLACE_LENGTH);
+    final Path datePath = outputDirectory.resolve(task.metadata().layout());
+    final Path outputPath = place.isEmpty() ? datePath : datePath.resolve(place);
+    createDir(outputPath);
+    final String fileName = task.source().getFileName().toString();
+    final Path target = outputPath.resolve(fileName);
+    final CompletableFuture<Boolean> claim = new CompletableFuture<>();
+    final CompletableFuture<Boolean> earlierClaim = claimedTargets.putIfAbsent(target, claim);
+    if (earlierClaim == null && !Files.exists(target)) {
+      boolean placed = false;
+      try {
+        moveStagedFile(task.target(), target);
+        placed = true;
+        return target;
+      } finally {
+        claim.complete(placed);
+      }
+    }
+    claim.complete(true);
+    final CompletableFuture<Boolean> holder = earlierClaim != null ? earlierClaim : claim;
+    if (holder.join()) {
+      if (FileComparator.areFilesIdentical(task.target(), target)) {
+        Files.delete(task.target());
+        return target;
+      }
+      statsCollector.incrementDuplicateFiles();
+    }
+    final Path similarTarget = claimSimilarTarget(outputPath, fileName);
+    boolean placed = false;
+    try {
+      moveStagedFile(task.target(), similarTarget);
+      placed = true;
+      return similarTarget;
+    } finally {
+      releaseClaim(similarTarget, placed);
+    }
+  }
+
+  /**
+   * The staging directory is inside the output directory, so this is normally a rename.
+   */
+  private static void moveStagedFile(Path stagedFile, Path target) throws IOException {
+    try {
+      Files.move(stagedFile, target, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(stagedFile, target);
+    }
+  }
+
+  private static void deleteIfEmpty(Path directory) {
+    try {
+      Files.deleteIfExists(directory);
+    } catch (IOException e) {
+      System.err.println("Staging directory not empty: " + directory);
     }
-    setFileTime(instant, outputFilePath);
   }
 
   private void createDir(Path outputPath) {
-    dirExists.computeIfAbsent(outputPath.toAbsolutePath().toString(), a -> {
+    dirExists.computeIfAbsent(outputPath.toAbsolutePath(), a -> {
       try {
         Files.createDirectories(outputPath);
         return true;
@@ -105,43 +452,128 @@ public class ImageOrganizerWithGeo {
     });
   }
 
-  private MediaMetadata getMediaMetadataFromImageMetadata(Metadata metadata) {
+  /**
+   * Reads the EXIF header through the bounded-read fast path, falling back to the full metadata reader when the
+   * fast path can't resolve the file.
+   */
+  static ExifHeaderReader.ExifHeader readExifHeader(Path path) throws Exception {
+    final ExifHeaderReader.ExifHeader exifHeader = ExifHeaderReader.read(path);
+    if (exifHeader != null) {
+      return exifHeader;
+    }
+    Metadata imageMetadata = ImageMetadataReader.readMetadata(path.toFile());
+    final GpsDirectory gpsDirectory = imageMetadata.getFirstDirectoryOfType(GpsDirectory.class);
+    final double[] coordinates = GpsUtils.isValidGpsData(gpsDirectory) ? GpsUtils.extractCoordinates(gpsDirectory) : null;
+    final ExifIFD0Directory ifd0Directory = imageMetadata.getFirstDirectoryOfType(ExifIFD0Directory.class);
+    final String camera = ifd0Directory != null
+                          ? ExifHeaderReader.cameraName(ifd0Directory.getString(ExifIFD0Directory.TAG_MAKE), ifd0Directory.getString(ExifIFD0Directory.TAG_MODEL))
+                          : null;
+    return new ExifHeaderReader.ExifHeader(getDateFromImageMetadata(imageMetadata), coordinates, camera);
+  }
+
+  /**
+   * Reads the video container in-process. ffprobe is only run when enabled and the container reader found no date.
+   */
+  private VideoContainerReader.VideoHeader readVideoHeader(Path path) throws Exception {
+    final VideoContainerReader.VideoHeader videoHeader = VideoContainerReader.read(path);
+    if (ffprobeFallback && (videoHeader == null || videoHeader.creationDate() == null)) {
+      return new VideoContainerReader.VideoHeader(VideoMetadataReader.getCreationDateFromFFmpeg(path, verbose),
+                                                  videoHeader != null ? videoHeader.coordinates() : null);
+    }
+    return videoHeader != null ? videoHeader : VideoContainerReader.VideoHeader.EMPTY;
+  }
+
+  private static Date getDateFromImageMetadata(Metadata metadata) {
     ExifSubIFDDirectory exifDirectory = metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
-    final Date date = exifDirectory != null ? exifDirectory.getDate(ExifSubIFDDirectory.TAG_DATETIME_ORIGINAL) : null;
-    final String layout = date != null ? this.directoryStructureLayout.getFormat(date) : UNKNOWN_DATE;
-    return new MediaMetadata(date, layout);
+    return exifDirectory != null ? exifDirectory.getDate(ExifSubIFDDirectory.TAG_DATETIME_ORIGINAL) : null;
+  }
+
+  private MediaMetadata getMediaMetadata(ScanCatalog.Entry entry, Date date, double[] coordinates, String camera) {
+    final String layout = date != null ? layoutTemplate.format(date, camera, entry.mediaType()) : UNKNOWN_DATE;
+    // Without a capture date the copy keeps the modified time seen by the scan, saving a stat of the source
+    final FileTime fileTime = FileTime.fromMillis(date != null ? date.getTime() : entry.modified());
+    return new MediaMetadata(date, layout, coordinates, entry.size(), entry.modified(), fileTime);
+  }
+
+  private static Thread startWorker(String name, Runnable runnable) {
+    final Thread thread = new Thread(runnable, "organizer-" + name);
+    thread.start();
+    return thread;
   }
 
-  private MediaMetadata getMediaMetadataFromVideoMetadata(Date date) {
-    final String layout = date != null ? this.directoryStructureLayout.getFormat(date) : UNKNOWN_DATE;
-    return new MediaMetadata(date, layout);
+  /**
+   * Stages only stop on their end marker, so an interrupt is deferred rather than dropping queued work.
+   */
+  private static <T> void putUninterruptibly(BlockingQueue<T> queue, T item) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        queue.put(item);
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
   }
 
-  private static void setFileTime(Instant creationDate, Path outputFilePath) throws IOException {
-    if (creationDate != null) {
-      final FileTime fileTime = FileTime.from(creationDate);
-      Files.setAttribute(outputFilePath, "creationTime", fileTime);
-      Files.setAttribute(outputFilePath, "lastModifiedTime", fileTime);
-      Files.setAttribute(outputFilePath, "lastAccessTime", fileTime);
+  private static <T> T takeUninterruptibly(BlockingQueue<T> queue) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return queue.take();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static void joinUninterruptibly(Thread thread) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        thread.join();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
     }
   }
 
-  private boolean isImageFile(Path path) {
-    String extension = getFileExtension(path);
-    return List.of(".jpg", ".jpeg", ".png").contains(extension.toLowerCase());
+  /**
+   * @param layout      The date folders, relative to the output directory.
+   * @param coordinates GPS latitude and longitude, or null.
+   * @param size        Size of the file when scanned.
+   * @param modified    Last modified time of the file when scanned, in epoch millis.
+   * @param fileTime    Creation, modified and access time of the copy.
+   */
+  private record MediaMetadata(Date date, String layout, double[] coordinates, long size, long modified, FileTime fileTime) {
   }
 
-  private boolean isVideoFile(Path path) {
-    String extension = getFileExtension(path);
-    return List.of(".mp4").contains(extension.toLowerCase());
+  private record MediaItem(Path source, MediaMetadata metadata) {
   }
 
-  private String getFileExtension(Path path) {
-    String fileName = path.getFileName().toString();
-    int lastDot = fileName.lastIndexOf('.');
-    return (lastDot == -1) ? "" : fileName.substring(lastDot);
+  /**
+   * @param holder        claim of the file already holding {@code target}'s name, completing with whether that file
+   *                      is in place, or null when the target is free.
+   * @param similarTarget reserved fallback name used when the file holding the target turns out to differ.
+   * @param place         pending place lookup when {@code target} is in the staging directory, otherwise null.
+   */
+  private record CopyTask(Path source, MediaMetadata metadata, Path target, CompletableFuture<Boolean> holder,
+                          Path similarTarget, CompletableFuture<String> place) {
   }
 
-  private record MediaMetadata(Date date, String layout) {
+  private record StagedFile(CopyTask task, long operation, String place) {
   }
-}
\ No newline at end of file
+}
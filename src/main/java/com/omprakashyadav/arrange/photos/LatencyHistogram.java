@@ -0,0 +1,107 @@
+package com.omprakashyadav.arrange.photos;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds.
+ * <p>
+ * Buckets are log-linear: each power of two is split in {@value #SUB_BUCKETS} equal buckets, so a percentile is off by
+ * at most 25% from 1 ns to hours while recording is a few bit operations and one {@link LongAdder} increment. Adders
+ * are striped per thread under contention, so workers recording concurrently don't fight over a cache line.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 2;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final LongAdder[] buckets = new LongAdder[BUCKETS];
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  public LatencyHistogram() {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  public void record(long nanos) {
+    final long value = Math.max(0, nanos);
+    buckets[bucket(value)].increment();
+    count.increment();
+    sum.add(value);
+    max.accumulate(value);
+  }
+
+  public long count() {
+    return count.sum();
+  }
+
+  public long sumNanos() {
+    return sum.sum();
+  }
+
+  public long maxNanos() {
+    return max.get();
+  }
+
+  /**
+   * @param quantile Between 0 and 1, for example 0.99.
+   * @return The upper bound of the bucket holding the quantile, 0 if nothing was recorded.
+   */
+  public long percentileNanos(double quantile) {
+    final long total = count();
+    if (total == 0) {
+      return 0;
+    }
+    final long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += buckets[i].sum();
+      if (seen >= rank) {
+        return Math.min(upperBound(i), maxNanos());
+      }
+    }
+    return maxNanos();
+  }
+
+  /**
+   * @return The number of latencies below the given bound, exact when the bound is a power of two.
+   */
+  public long countBelow(long nanos) {
+    long seen = 0;
+    for (int i = 0; i < BUCKETS && upperBound(i) < nanos; i++) {
+      seen += buckets[i].sum();
+    }
+    return seen;
+  }
+
+  /**
+   * Values below {@value #SUB_BUCKETS} get a bucket each, above that the bucket is the position of the highest bit
+   * followed by the next {@value #SUB_BUCKET_BITS} bits.
+   */
+  private static int bucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    final int highestBit = 63 - Long.numberOfLeadingZeros(value);
+    final int subBucket = (int) (value >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (highestBit - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * @return The largest value falling in the bucket.
+   */
+  private static long upperBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    final int highestBit = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    final long subBucket = bucket % SUB_BUCKETS;
+    final long lowerBound = (1L << highestBit) + (subBucket << (highestBit - SUB_BUCKET_BITS));
+    final long width = 1L << (highestBit - SUB_BUCKET_BITS);
+    return lowerBound + (width - 1);
+  }
+}
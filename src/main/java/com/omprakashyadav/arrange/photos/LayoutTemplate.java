@@ -0,0 +1,245 @@
+package com.omprakashyadav.arrange.photos;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A directory layout compiled from a template such as {@code {yyyy}/{MM}-{MMM}/{dd}} or {@code {type}/{yyyy}/{camera}}.
+ * <p>
+ * The template is parsed once into literals and fields. Dates are split into year, month and day in the configured
+ * time zone without going through {@code java.time} objects, and the path is written into a per-thread
+ * {@link StringBuilder}. Templates made of date fields only, the usual case, cache the rendered path per epoch day, so
+ * most files cost an array lookup and no allocation.
+ * <p>
+ * Fields: {@code {yyyy}} year, {@code {yy}} two-digit year, {@code {MM}} and {@code {M}} month number with and without
+ * padding, {@code {MMM}} and {@code {MMMM}} month name (JAN, JANUARY), {@code {dd}} and {@code {d}} day of month,
+ * {@code {camera}} camera make and model, {@code {type}} Images or Videos, and {@code {place}}, the place the file was
+ * taken at, which can only be the last folder as it is resolved after the rest of the path.
+ */
+public final class LayoutTemplate {
+
+  private static final String PLACE = "/{place}";
+  private static final String UNKNOWN_CAMERA = "Unknown_Camera";
+  private static final int MAX_CAMERA_LENGTH = 64;
+  private static final long MILLIS_PER_DAY = 86_400_000L;
+  // Direct-mapped, about eleven years of consecutive days fit without collisions
+  private static final int DAY_CACHE_SIZE = 4096;
+  private static final String[] MONTH_NAMES = {"JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"};
+  private static final String[] FULL_MONTH_NAMES = {"JANUARY", "FEBRUARY", "MARCH", "APRIL", "MAY", "JUNE", "JULY",
+                                                    "AUGUST", "SEPTEMBER", "OCTOBER", "NOVEMBER", "DECEMBER"};
+  private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(64));
+
+  private enum Field {
+    LITERAL(null),
+    YEAR("yyyy"),
+    SHORT_YEAR("yy"),
+    PADDED_MONTH("MM"),
+    MONTH("M"),
+    MONTH_NAME("MMM"),
+    FULL_MONTH_NAME("MMMM"),
+    PADDED_DAY("dd"),
+    DAY("d"),
+    CAMERA("camera"),
+    TYPE("type");
+
+    private final String token;
+
+    Field(String token) {
+      this.token = token;
+    }
+
+    static Field fromToken(String token) {
+      for (Field field : values()) {
+        if (token.equals(field.token)) {
+          return field;
+        }
+      }
+      return null;
+    }
+  }
+
+  private record CachedDay(long epochDay, String path) {
+  }
+
+  private final String template;
+  private final ZoneId zone;
+  private final ZoneRules rules;
+  private final int fixedOffsetMillis;
+  private final boolean fixedOffset;
+  private final boolean hasPlace;
+  private final boolean dateOnly;
+  private final Field[] fields;
+  private final String[] literals;
+  private final CachedDay[] days = new CachedDay[DAY_CACHE_SIZE];
+
+  private LayoutTemplate(String template, ZoneId zone, boolean hasPlace, Field[] fields, String[] literals) {
+    this.template = template;
+    this.zone = zone;
+    this.rules = zone.getRules();
+    this.fixedOffset = rules.isFixedOffset();
+    this.fixedOffsetMillis = fixedOffset ? rules.getOffset(Instant.EPOCH).getTotalSeconds() * 1000 : 0;
+    this.hasPlace = hasPlace;
+    this.fields = fields;
+    this.literals = literals;
+    boolean dateOnly = true;
+    for (Field field : fields) {
+      dateOnly &= field != Field.CAMERA && field != Field.TYPE;
+    }
+    this.dateOnly = dateOnly;
+  }
+
+  /**
+   * Compiles a template.
+   *
+   * @param template The template, folders separated by '/'.
+   * @param zone     Time zone the dates are rendered in.
+   * @return The compiled template.
+   * @throws IllegalArgumentException If the template has an unknown field, an unclosed brace or a misplaced place.
+   */
+  public static LayoutTemplate compile(String template, ZoneId zone) {
+    String path = template.trim();
+    while (path.endsWith("/")) {
+      path = path.substring(0, path.length() - 1);
+    }
+    final boolean hasPlace = path.endsWith(PLACE) || path.equals(PLACE.substring(1));
+    if (hasPlace) {
+      path = path.substring(0, Math.max(0, path.length() - PLACE.length()));
+    }
+    final List<Field> fields = new ArrayList<>();
+    final List<String> literals = new ArrayList<>();
+    int position = 0;
+    while (position < path.length()) {
+      final int open = path.indexOf('{', position);
+      if (open < 0) {
+        addLiteral(fields, literals, path.substring(position), template);
+        break;
+      }
+      if (open > position) {
+        addLiteral(fields, literals, path.substring(position, open), template);
+      }
+      final int close = path.indexOf('}', open);
+      if (close < 0) {
+        throw new IllegalArgumentException("Unclosed field in layout template: " + template);
+      }
+      final String token = path.substring(open + 1, close);
+      final Field field = Field.fromToken(token);
+      if (field == null) {
+        throw new IllegalArgumentException(token.equals("place")
+                                           ? "The place can only be the last folder of a layout template: " + template
+                                           : "Unknown field {" + token + "} in layout template: " + template);
+      }
+      fields.add(field);
+      literals.add(null);
+      position = close + 1;
+    }
+    return new LayoutTemplate(template, zone, hasPlace, fields.toArray(new Field[0]), literals.toArray(new String[0]));
+  }
+
+  /**
+   * Compiles a template, or the template of a {@link DirectoryStructureLayout} if the value has no fields.
+   */
+  public static LayoutTemplate parse(String layout, ZoneId zone) {
+    return layout != null && layout.contains("{") ? compile(layout, zone) : DirectoryStructureLayout.fromString(layout).toTemplate(zone);
+  }
+
+  public String getTemplate() {
+    return template;
+  }
+
+  public ZoneId getZone() {
+    return zone;
+  }
+
+  /**
+   * @return true if the layout ends with a place folder, which {@link #format} leaves out.
+   */
+  public boolean hasPlace() {
+    return hasPlace;
+  }
+
+  public String format(Date date) {
+    return format(date, null, MediaType.OTHER);
+  }
+
+  /**
+   * Renders the path of a file, without the place folder.
+   *
+   * @param date      Capture date of the file.
+   * @param camera    Camera make and model, or null if unknown.
+   * @param mediaType Media type of the file.
+   * @return The relative directory path.
+   */
+  public String format(Date date, String camera, MediaType mediaType) {
+    final long millis = date.getTime();
+    final long localMillis = millis + (fixedOffset ? fixedOffsetMillis : rules.getOffset(Instant.ofEpochMilli(millis)).getTotalSeconds() * 1000L);
+    final long epochDay = Math.floorDiv(localMillis, MILLIS_PER_DAY);
+    if (!dateOnly) {
+      return render(epochDay, camera, mediaType);
+    }
+    final int slot = (int) (epochDay & (DAY_CACHE_SIZE - 1));
+    // Entries are immutable and replaced whole, so racing threads at worst render the same day twice
+    final CachedDay cached = days[slot];
+    if (cached != null && cached.epochDay() == epochDay) {
+      return cached.path();
+    }
+    final String path = render(epochDay, null, mediaType);
+    days[slot] = new CachedDay(epochDay, path);
+    return path;
+  }
+
+  private String render(long epochDay, String camera, MediaType mediaType) {
+    // Civil date from the day count, see Howard Hinnant's days_from_civil inverse
+    final long shifted = epochDay + 719_468;
+    final long era = Math.floorDiv(shifted, 146_097);
+    final long dayOfEra = shifted - era * 146_097;
+    final long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+    final long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    final long monthIndex = (5 * dayOfYear + 2) / 153;
+    final int day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+    final int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+    final long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+    final StringBuilder builder = BUILDER.get();
+    builder.setLength(0);
+    for (int i = 0; i < fields.length; i++) {
+      switch (fields[i]) {
+        case LITERAL -> builder.append(literals[i]);
+        case YEAR -> builder.append(year);
+        case SHORT_YEAR -> appendPadded(builder, Math.floorMod(year, 100));
+        case PADDED_MONTH -> appendPadded(builder, month);
+        case MONTH -> builder.append(month);
+        case MONTH_NAME -> builder.append(MONTH_NAMES[month - 1]);
+        case FULL_MONTH_NAME -> builder.append(FULL_MONTH_NAMES[month - 1]);
+        case PADDED_DAY -> appendPadded(builder, day);
+        case DAY -> builder.append(day);
+        case CAMERA -> builder.append(cameraFolder(camera));
+        case TYPE -> builder.append(mediaType == MediaType.VIDEO ? "Videos" : mediaType == MediaType.IMAGE ? "Images" : "Other");
+      }
+    }
+    return builder.toString();
+  }
+
+  private static void addLiteral(List<Field> fields, List<String> literals, String literal, String template) {
+    if (literal.indexOf('}') >= 0) {
+      throw new IllegalArgumentException("Unopened field in layout template: " + template);
+    }
+    fields.add(Field.LITERAL);
+    literals.add(literal);
+  }
+
+  private static void appendPadded(StringBuilder builder, int value) {
+    if (value < 10) {
+      builder.append('0');
+    }
+    builder.append(value);
+  }
+
+  private static String cameraFolder(String camera) {
+    final String folder = camera != null ? FileUtil.toSafeFileName(camera, MAX_CAMERA_LENGTH) : "";
+    return folder.isEmpty() ? UNKNOWN_CAMERA : folder;
+  }
+}
@@ -0,0 +1,14 @@
+package com.omprakashyadav.arrange.photos;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * A file found by {@link MediaScanner}.
+ *
+ * @param path       The file path.
+ * @param attributes The attributes read while scanning.
+ * @param mediaType  The media type detected from the extension.
+ */
+public record MediaFile(Path path, BasicFileAttributes attributes, MediaType mediaType) {
+}
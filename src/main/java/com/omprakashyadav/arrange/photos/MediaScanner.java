@@ -0,0 +1,232 @@
+package com.omprakashyadav.arrange.photos;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Publishes the media files under a directory, see {@link FileUtil#walkFilesWithAttributes}.
+ * <p>
+ * Every subscriber gets its own walk. Found files wait in a bounded buffer until the subscriber requests them, and the
+ * walk blocks while the buffer is full, so a slow subscriber throttles the scan and memory use stays fixed however
+ * large the tree is. Items are delivered one at a time on a dedicated thread. Cancelling stops the walk.
+ */
+public class MediaScanner implements Flow.Publisher<MediaFile> {
+
+  public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+  private static final MediaFile END_OF_SCAN = new MediaFile(null, null, null);
+  private static final long POLL_MILLIS = 100;
+
+  private final Path directory;
+  private final List<String> acceptedExtensions;
+  private final int bufferSize;
+  private final StatsCollector statsCollector;
+
+  public MediaScanner(Path directory, List<String> acceptedExtensions) {
+    this(directory, acceptedExtensions, DEFAULT_BUFFER_SIZE, null);
+  }
+
+  /**
+   * @param statsCollector Records the {@link Stage#WALK} latency of every file found, may be null.
+   */
+  public MediaScanner(Path directory, List<String> acceptedExtensions, int bufferSize, StatsCollector statsCollector) {
+    this.directory = directory;
+    this.acceptedExtensions = acceptedExtensions;
+    this.bufferSize = Math.max(1, bufferSize);
+    this.statsCollector = statsCollector;
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super MediaFile> subscriber) {
+    final Scan scan = new Scan(subscriber);
+    subscriber.onSubscribe(scan);
+    scan.start();
+  }
+
+  /**
+   * Subscribes with unbounded demand, the buffer still bounds the scan if the consumer is slow.
+   *
+   * @param consumer Called for each file, one at a time. If it throws, errors included, the scan is cancelled.
+   * @return Completes when all files were consumed, or exceptionally if the scan or the consumer failed.
+   */
+  public CompletableFuture<Void> consume(Consumer<? super MediaFile> consumer) {
+    final CompletableFuture<Void> done = new CompletableFuture<>();
+    subscribe(new Flow.Subscriber<>() {
+      private Flow.Subscription subscription;
+
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(Long.MAX_VALUE);
+      }
+
+      @Override
+      public void onNext(MediaFile file) {
+        try {
+          consumer.accept(file);
+        } catch (Throwable e) {
+          subscription.cancel();
+          done.completeExceptionally(e);
+        }
+      }
+
+      @Override
+      public void onError(Throwable error) {
+        done.completeExceptionally(error);
+      }
+
+      @Override
+      public void onComplete() {
+        done.complete(null);
+      }
+    });
+    return done;
+  }
+
+  private class Scan implements Flow.Subscription {
+
+    private final Flow.Subscriber<? super MediaFile> subscriber;
+    private final BlockingQueue<MediaFile> buffer = new ArrayBlockingQueue<>(bufferSize);
+    private final Object demandLock = new Object();
+    private long demand;
+    private volatile boolean cancelled;
+    private volatile Throwable failure;
+    private volatile Throwable invalidRequest;
+
+    Scan(Flow.Subscriber<? super MediaFile> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    void start() {
+      final Thread walker = new Thread(this::walk, "media-scanner-walk");
+      final Thread delivery = new Thread(this::deliver, "media-scanner-delivery");
+      walker.setDaemon(true);
+      delivery.setDaemon(true);
+      walker.start();
+      delivery.start();
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        invalidRequest = new IllegalArgumentException("Requested " + n + " items, must be positive");
+        cancel();
+        return;
+      }
+      synchronized (demandLock) {
+        demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+        demandLock.notifyAll();
+      }
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      synchronized (demandLock) {
+        demandLock.notifyAll();
+      }
+    }
+
+    private void walk() {
+      // Time each walker thread took to find its next file, leaving out the time it waited for buffer space
+      final ThreadLocal<long[]> lastFound = ThreadLocal.withInitial(() -> new long[]{System.nanoTime()});
+      try {
+        FileUtil.walkFilesWithAttributes(directory, acceptedExtensions, (path, attributes) -> {
+          final long[] last = lastFound.get();
+          if (statsCollector != null) {
+            statsCollector.recordLatency(Stage.WALK, System.nanoTime() - last[0]);
+          }
+          if (!offer(new MediaFile(path, attributes, MediaType.fromPath(path)))) {
+            throw new CancellationException();
+          }
+          last[0] = System.nanoTime();
+        });
+      } catch (Throwable e) {
+        if (!cancelled) {
+          failure = e;
+        }
+      } finally {
+        offer(END_OF_SCAN);
+      }
+    }
+
+    /**
+     * Waits for space in the buffer.
+     *
+     * @return false if cancelled.
+     */
+    private boolean offer(MediaFile file) {
+      try {
+        while (!cancelled) {
+          if (buffer.offer(file, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            return true;
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        cancel();
+      }
+      return false;
+    }
+
+    /**
+     * Takes the next file before waiting for demand, so the end of the scan is signalled even when the subscriber
+     * requested exactly as many files as there were.
+     */
+    private void deliver() {
+      try {
+        while (!cancelled) {
+          final MediaFile file = buffer.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+          if (file == null) {
+            continue;
+          }
+          if (file == END_OF_SCAN) {
+            if (failure != null) {
+              subscriber.onError(failure);
+            } else {
+              subscriber.onComplete();
+            }
+            return;
+          }
+          if (!awaitDemand()) {
+            break;
+          }
+          synchronized (demandLock) {
+            if (demand != Long.MAX_VALUE) {
+              demand--;
+            }
+          }
+          subscriber.onNext(file);
+        }
+        if (invalidRequest != null) {
+          subscriber.onError(invalidRequest);
+        }
+      } catch (InterruptedException e) {
+        cancel();
+      } catch (Throwable e) {
+        // A broken subscriber, don't leave the walk blocked on a full buffer
+        cancel();
+        throw e;
+      }
+    }
+
+    /**
+     * @return false if cancelled.
+     */
+    private boolean awaitDemand() throws InterruptedException {
+      synchronized (demandLock) {
+        while (demand == 0 && !cancelled) {
+          demandLock.wait();
+        }
+      }
+      return !cancelled;
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package com.omprakashyadav.arrange.photos;
+
+import java.nio.file.Path;
+import java.util.List;
+
+public enum MediaType {
+  IMAGE(List.of(".jpg", ".jpeg", ".png")),
+  VIDEO(List.of(".mp4", ".mov", ".avi")),
+  OTHER(List.of());
+
+  private final List<String> extensions;
+
+  MediaType(List<String> extensions) {
+    this.extensions = extensions;
+  }
+
+  public List<String> getExtensions() {
+    return extensions;
+  }
+
+  /**
+   * Detects the media type from the file extension (case-insensitive).
+   *
+   * @param path The file path.
+   * @return The media type, or {@link #OTHER} if the extension is not a known media extension.
+   */
+  public static MediaType fromPath(Path path) {
+    final String extension = "." + FileUtil.getExtension(path).toLowerCase();
+    for (MediaType mediaType : values()) {
+      if (mediaType.extensions.contains(extension)) {
+        return mediaType;
+      }
+    }
+    return OTHER;
+  }
+}
@@ -0,0 +1,54 @@
+package com.omprakashyadav.arrange.photos;
+
+import jakarta.inject.Singleton;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.nio.file.Path;
+
+/**
+ * Resolves coordinates to the nearest place of a local GeoNames gazetteer, without network access. Download for
+ * example {@code cities1000.zip} and {@code admin1CodesASCII.txt} from https://download.geonames.org/export/dump/ and
+ * set {@code geo.backend=offline}.
+ */
+@Singleton
+public class OfflineGeoLocationFetcher {
+
+  @ConfigProperty(name = "geo.offline.gazetteer", defaultValue = "cities1000.txt")
+  String gazetteerFile;
+  @ConfigProperty(name = "geo.offline.admin1-codes", defaultValue = "admin1CodesASCII.txt")
+  String admin1CodesFile;
+  @ConfigProperty(name = "geo.offline.index", defaultValue = "gazetteer.idx")
+  String indexFile;
+
+  private volatile GazetteerIndex index;
+  private volatile boolean unavailable;
+
+  /**
+   * Finds the place nearest to the given coordinates. The gazetteer is loaded on first use.
+   *
+   * @param latitude  The latitude coordinate.
+   * @param longitude The longitude coordinate.
+   * @return The place as "name, region, country code", or "Unknown_Location" if the gazetteer can't be loaded.
+   */
+  public String fetchLocation(double latitude, double longitude) {
+    final GazetteerIndex gazetteer = index();
+    final String location = gazetteer != null ? gazetteer.nearest(latitude, longitude) : null;
+    return location != null ? location : "Unknown_Location";
+  }
+
+  private GazetteerIndex index() {
+    if (index == null && !unavailable) {
+      synchronized (this) {
+        if (index == null && !unavailable) {
+          try {
+            index = GazetteerIndex.open(Path.of(gazetteerFile), Path.of(admin1CodesFile), Path.of(indexFile));
+          } catch (Exception e) {
+            System.err.println("Error loading gazetteer: " + gazetteerFile + " -> " + e.getMessage());
+            unavailable = true;
+          }
+        }
+      }
+    }
+    return index;
+  }
+}
@@ -0,0 +1,452 @@
+package com.omprakashyadav.arrange.photos;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of the copy operations of an organize run, kept in the output directory so an interrupted run
+ * can be resumed.
+ * <p>
+ * Each operation is journaled as planned before it touches any file and as done once its file is in place. Records are
+ * appended to an in-memory buffer and written by a committer thread, which syncs the journal once for every batch of
+ * records appended while the previous sync was running (group commit), so copy threads don't pay an fsync each. Only
+ * in move mode, where a file leaves the input, does an operation wait for its planned record to be durable.
+ * <p>
+ * An operation which fails is cleaned up like an interrupted one right away and journaled as failed, so an ordinary
+ * error doesn't hold the journal back; the next run tries the file again.
+ * <p>
+ * A resumed run skips the sources journaled as done, and only redoes the operations which were in flight: their
+ * partial copies are deleted, and staged files are moved back to the input or deleted. A torn record at the end of the
+ * journal, from a crash mid-write, is detected by its checksum and dropped. On resume the journal is rewritten with
+ * only the completed operations. The journal is deleted once a run finishes
+ * with every planned operation done.
+ */
+public class OperationJournal implements Closeable {
+
+  public static final String JOURNAL_FILE = ".photo-organizer.journal";
+
+  private static final int MAGIC = 0x504A524E; // "PJRN"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 8;
+  private static final int MAX_RECORD_SIZE = 512 * 1024;
+  private static final byte PLANNED = 1;
+  private static final byte DONE = 2;
+  private static final byte FAILED = 3;
+
+  private final Path journalFile;
+  private final FileChannel channel;
+  private final boolean waitForPlanned;
+  private final Map<String, Completed> completed;
+  private final Map<Long, Planned> inFlight = new ConcurrentHashMap<>();
+  private final AtomicLong nextOperation;
+  private final Thread committer;
+  private volatile boolean finished;
+
+  // Guarded by this
+  private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+  private long appendedRecords;
+  private long durableRecords;
+  private boolean closed;
+  private IOException failure;
+
+  private OperationJournal(Path journalFile, FileChannel channel, boolean waitForPlanned, Map<String, Completed> completed,
+                           long nextOperation) {
+    this.journalFile = journalFile;
+    this.channel = channel;
+    this.waitForPlanned = waitForPlanned;
+    this.completed = completed;
+    this.nextOperation = new AtomicLong(nextOperation);
+    this.committer = new Thread(this::commitLoop, "journal-committer");
+    this.committer.setDaemon(true);
+    this.committer.start();
+  }
+
+  /**
+   * @return true if the output directory holds the journal of a run which didn't finish.
+   */
+  public static boolean exists(Path outputDirectory) {
+    return Files.exists(outputDirectory.resolve(JOURNAL_FILE));
+  }
+
+  /**
+   * Opens the journal of the output directory.
+   *
+   * @param outputDirectory The output directory, created if missing.
+   * @param resume          If true the existing journal is replayed and continued, otherwise a new one is started.
+   * @param mode            The transfer mode of the run.
+   * @return The journal.
+   * @throws IOException If the journal can't be read or written.
+   */
+  public static OperationJournal open(Path outputDirectory, boolean resume, TransferMode mode) throws IOException {
+    Files.createDirectories(outputDirectory);
+    final Path journalFile = outputDirectory.resolve(JOURNAL_FILE);
+    final Map<String, Completed> completed = new HashMap<>();
+    long nextOperation = 1;
+    if (resume && Files.exists(journalFile)) {
+      final Replay replay = replay(journalFile);
+      completed.putAll(replay.completed());
+      nextOperation = replay.nextOperation();
+      for (Planned planned : replay.inFlight().values()) {
+        if (!planned.similarTarget().isEmpty() && isComplete(Path.of(planned.similarTarget()), planned.size())) {
+          // Alternative names are unique, so the file there can only be this operation's finished copy
+          completed.put(planned.source(), new Completed(planned.similarTarget(), planned.size(), planned.modified()));
+          continue;
+        }
+        recover(planned);
+      }
+      System.out.println("Resuming: " + completed.size() + " files already organized, " + replay.inFlight().size() + " interrupted");
+    }
+    // Starts over with only the completed operations, so recovered ones aren't recovered again by a later resume
+    final Path tempFile = journalFile.resolveSibling(JOURNAL_FILE + ".tmp");
+    try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+      final ByteArrayOutputStream records = new ByteArrayOutputStream();
+      records.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).array());
+      long operation = 0;
+      for (Map.Entry<String, Completed> entry : completed.entrySet()) {
+        final long compacted = ++operation;
+        final Completed done = entry.getValue();
+        records.write(encode(plannedRecord(compacted, entry.getKey(), done.target(), "", false, done.size(), done.modified())));
+        records.write(encode(doneRecord(compacted, done.target())));
+      }
+      final ByteBuffer bytes = ByteBuffer.wrap(records.toByteArray());
+      while (bytes.hasRemaining()) {
+        channel.write(bytes);
+      }
+      channel.force(true);
+      nextOperation = Math.max(nextOperation, operation + 1);
+    }
+    Files.move(tempFile, journalFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    final FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    return new OperationJournal(journalFile, channel, mode == TransferMode.MOVE, completed, nextOperation);
+  }
+
+  /**
+   * @return true if an earlier run placed this version of the source and its copy is still there.
+   */
+  public boolean isCompleted(Path source, long size, long modified) {
+    final Completed done = completed.get(source.toAbsolutePath().toString());
+    if (done == null || done.size() != size || done.modified() != modified) {
+      return false;
+    }
+    // A copy cut short by a power loss may be left truncated even though it was renamed into place
+    return isComplete(Path.of(done.target()), size);
+  }
+
+  private static boolean isComplete(Path target, long size) {
+    try {
+      return Files.size(target) == size;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Journals an operation before it starts. In move mode this waits until the record is durable.
+   *
+   * @param source        The input file.
+   * @param target        The file written, in the staging directory if {@code staged}.
+   * @param similarTarget The alternative file written if the target holds a different file, or null.
+   * @param staged        Whether the target is a staged file waiting for its place folder.
+   * @param size          Size of the source when scanned.
+   * @param modified      Last modified time of the source when scanned, in epoch millis.
+   * @return The operation, to pass to {@link #completed(long, Path)}.
+   */
+  public long planned(Path source, Path target, Path similarTarget, boolean staged, long size, long modified) {
+    final long operation = nextOperation.getAndIncrement();
+    final Planned planned = new Planned(source.toAbsolutePath().toString(), target.toAbsolutePath().toString(),
+                                        similarTarget != null ? similarTarget.toAbsolutePath().toString() : "", staged,
+                                        size, modified);
+    inFlight.put(operation, planned);
+    final long record = append(plannedRecord(operation, planned.source(), planned.target(), planned.similarTarget(), staged,
+                                             size, modified));
+    if (waitForPlanned) {
+      awaitDurable(record);
+    }
+    return operation;
+  }
+
+  /**
+   * Journals an operation as done. Doesn't wait for the record to be durable: if it is lost the operation is redone,
+   * finding its file already in place.
+   *
+   * @param target Where the source's content ended up.
+   */
+  public void completed(long operation, Path target) {
+    append(doneRecord(operation, target.toAbsolutePath().toString()));
+    inFlight.remove(operation);
+  }
+
+  /**
+   * Journals an operation as failed, after removing its partial copy and putting its staged file back as a resumed run
+   * would. If that cleanup fails the operation stays in flight, for a resumed run to recover.
+   */
+  public void failed(long operation) {
+    final Planned planned = inFlight.get(operation);
+    if (planned == null) {
+      return;
+    }
+    try {
+      recover(planned);
+    } catch (IOException e) {
+      System.err.println("Could not clean up after: " + planned.source() + " -> " + e.getMessage());
+      return;
+    }
+    append(failedRecord(operation));
+    inFlight.remove(operation);
+  }
+
+  /**
+   * Marks the run as having gone through all its files, so the journal can be deleted on close.
+   */
+  public void finish() {
+    finished = true;
+  }
+
+  /**
+   * Syncs and closes the journal, deleting it if the run finished and no operation is left in flight.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+    }
+    try {
+      committer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    channel.close();
+    synchronized (this) {
+      if (failure != null) {
+        throw failure;
+      }
+    }
+    if (finished && inFlight.isEmpty()) {
+      Files.deleteIfExists(journalFile);
+    }
+  }
+
+  @FunctionalInterface
+  private interface RecordWriter {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  private static RecordWriter plannedRecord(long operation, String source, String target, String similarTarget,
+                                            boolean staged, long size, long modified) {
+    return out -> {
+      out.writeByte(PLANNED);
+      out.writeLong(operation);
+      out.writeUTF(source);
+      out.writeUTF(target);
+      out.writeUTF(similarTarget);
+      out.writeBoolean(staged);
+      out.writeLong(size);
+      out.writeLong(modified);
+    };
+  }
+
+  private static RecordWriter failedRecord(long operation) {
+    return out -> {
+      out.writeByte(FAILED);
+      out.writeLong(operation);
+    };
+  }
+
+  private static RecordWriter doneRecord(long operation, String target) {
+    return out -> {
+      out.writeByte(DONE);
+      out.writeLong(operation);
+      out.writeUTF(target);
+    };
+  }
+
+  /**
+   * @return The record framed by its length and CRC-32.
+   */
+  private static byte[] encode(RecordWriter writer) {
+    final ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+    final ByteArrayOutputStream framed = new ByteArrayOutputStream(256);
+    try {
+      writer.write(new DataOutputStream(payload));
+      final byte[] bytes = payload.toByteArray();
+      final CRC32 crc = new CRC32();
+      crc.update(bytes);
+      final DataOutputStream out = new DataOutputStream(framed);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+      out.writeInt((int) crc.getValue());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return framed.toByteArray();
+  }
+
+  /**
+   * @return The sequence number of the record, see {@link #awaitDurable(long)}.
+   */
+  private long append(RecordWriter writer) {
+    final byte[] record = encode(writer);
+    synchronized (this) {
+      if (failure != null) {
+        throw new UncheckedIOException(failure);
+      }
+      buffer.write(record, 0, record.length);
+      appendedRecords++;
+      notifyAll();
+      return appendedRecords;
+    }
+  }
+
+  private synchronized void awaitDurable(long record) {
+    boolean interrupted = false;
+    while (durableRecords < record && failure == null) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (failure != null) {
+      throw new UncheckedIOException(failure);
+    }
+  }
+
+  private void commitLoop() {
+    while (true) {
+      final ByteArrayOutputStream batch;
+      final long batchRecords;
+      synchronized (this) {
+        while (buffer.size() == 0 && !closed) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            // Only stops once closed, so nothing appended is lost
+          }
+        }
+        if (buffer.size() == 0) {
+          return;
+        }
+        batch = buffer;
+        batchRecords = appendedRecords;
+        buffer = new ByteArrayOutputStream();
+      }
+      try {
+        final ByteBuffer bytes = ByteBuffer.wrap(batch.toByteArray());
+        while (bytes.hasRemaining()) {
+          channel.write(bytes);
+        }
+        channel.force(false);
+        synchronized (this) {
+          durableRecords = batchRecords;
+          notifyAll();
+        }
+      } catch (IOException e) {
+        synchronized (this) {
+          failure = e;
+          notifyAll();
+        }
+        return;
+      }
+    }
+  }
+
+  private static Replay replay(Path journalFile) throws IOException {
+    final byte[] bytes = Files.readAllBytes(journalFile);
+    final ByteBuffer journal = ByteBuffer.wrap(bytes);
+    if (bytes.length < HEADER_SIZE || journal.getInt() != MAGIC || journal.getInt() != VERSION) {
+      throw new IOException("Unsupported journal: " + journalFile);
+    }
+    final Map<Long, Planned> inFlight = new HashMap<>();
+    final Map<String, Completed> completed = new HashMap<>();
+    long lastOperation = 0;
+    final CRC32 crc = new CRC32();
+    while (journal.remaining() >= Integer.BYTES) {
+      final int length = journal.getInt();
+      if (length <= 0 || length > MAX_RECORD_SIZE || journal.remaining() < length + Integer.BYTES) {
+        break;
+      }
+      crc.reset();
+      crc.update(bytes, journal.position(), length);
+      if (journal.getInt(journal.position() + length) != (int) crc.getValue()) {
+        break;
+      }
+      final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, journal.position(), length));
+      final byte type = in.readByte();
+      final long operation = in.readLong();
+      if (type == PLANNED) {
+        final Planned planned = new Planned(in.readUTF(), in.readUTF(), in.readUTF(), in.readBoolean(), in.readLong(), in.readLong());
+        inFlight.put(operation, planned);
+      } else if (type == DONE) {
+        final Planned planned = inFlight.remove(operation);
+        if (planned != null) {
+          completed.put(planned.source(), new Completed(in.readUTF(), planned.size(), planned.modified()));
+        }
+      } else if (type == FAILED) {
+        // Already cleaned up, the file is tried again like one never planned
+        inFlight.remove(operation);
+      }
+      lastOperation = Math.max(lastOperation, operation);
+      journal.position(journal.position() + length + Integer.BYTES);
+    }
+    return new Replay(completed, inFlight, lastOperation + 1);
+  }
+
+  /**
+   * Undoes what an interrupted operation may have left behind. Files renamed into their final place are complete, so
+   * they are kept and found again as identical when the operation is redone.
+   */
+  private static void recover(Planned planned) throws IOException {
+    final Path source = Path.of(planned.source());
+    final Path target = Path.of(planned.target());
+    Files.deleteIfExists(FileTransfer.partialFile(target));
+    if (!planned.similarTarget().isEmpty()) {
+      Files.deleteIfExists(FileTransfer.partialFile(Path.of(planned.similarTarget())));
+    }
+    if (!planned.staged() || !Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+      return;
+    }
+    if (Files.exists(source, LinkOption.NOFOLLOW_LINKS)) {
+      Files.delete(target);
+      return;
+    }
+    // Moved into the staging directory but never placed, put it back so the run picks it up again
+    try {
+      Files.createDirectories(source.getParent());
+      Files.move(target, source);
+    } catch (NoSuchFileException e) {
+      System.err.println("Could not restore staged file: " + target + " -> " + e.getMessage());
+    }
+  }
+
+  private record Planned(String source, String target, String similarTarget, boolean staged, long size, long modified) {
+  }
+
+  private record Completed(String target, long size, long modified) {
+  }
+
+  private record Replay(Map<String, Completed> completed, Map<Long, Planned> inFlight, long nextOperation) {
+  }
+}
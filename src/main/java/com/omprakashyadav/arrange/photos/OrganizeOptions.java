@@ -0,0 +1,25 @@
+package com.omprakashyadav.arrange.photos;
+
+/**
+ * Tuning options of {@link ImageOrganizerWithGeo}.
+ *
+ * @param metadataThreads Number of threads reading image and video metadata.
+ * @param copyThreads     Number of threads copying files to the output directory.
+ * @param ffprobeFallback Whether to run ffprobe for videos the in-process container reader can't date.
+ * @param transferMode    Whether files are copied or moved to the output directory.
+ * @param resume          Whether to resume the interrupted run journaled in the output directory.
+ * @param verbose         Whether to print a line for every file, rather than leaving progress to a {@link ProgressReporter}.
+ */
+public record OrganizeOptions(int metadataThreads, int copyThreads, boolean ffprobeFallback, TransferMode transferMode,
+                              boolean resume, boolean verbose) {
+
+  public OrganizeOptions {
+    metadataThreads = Math.max(1, metadataThreads);
+    copyThreads = Math.max(1, copyThreads);
+    transferMode = transferMode != null ? transferMode : TransferMode.COPY;
+  }
+
+  public static OrganizeOptions defaults() {
+    return new OrganizeOptions(Runtime.getRuntime().availableProcessors(), 4, false, TransferMode.COPY, false, false);
+  }
+}
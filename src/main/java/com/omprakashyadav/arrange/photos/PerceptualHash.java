@@ -0,0 +1,213 @@
+package com.omprakashyadav.arrange.photos;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * 64 bit perceptual fingerprints of images: visually similar images, for example resized, re-encoded or re-exported
+ * copies, get fingerprints within a small Hamming distance of each other.
+ * <p>
+ * Only a small grayscale version of the image is needed, so the EXIF thumbnail of a JPEG is used when there is one.
+ * Otherwise the image is decoded with source subsampling, which keeps the decoded raster small.
+ */
+public class PerceptualHash {
+
+  private static final int DECODE_SIZE = 128; // Shortest side to subsample to, plenty for a 32x32 reduction
+  private static final int DCT_SIZE = 32;
+  private static final int DCT_KEEP = 8;
+  private static final int BORDER_LUMINANCE = 24;
+  private static final double[][] DCT_COSINES = new double[DCT_KEEP][DCT_SIZE];
+
+  static {
+    for (int u = 0; u < DCT_KEEP; u++) {
+      for (int x = 0; x < DCT_SIZE; x++) {
+        DCT_COSINES[u][x] = Math.cos((2 * x + 1) * u * Math.PI / (2 * DCT_SIZE));
+      }
+    }
+  }
+
+  /**
+   * @return The number of differing bits between two fingerprints.
+   */
+  public static int distance(long fingerprint1, long fingerprint2) {
+    return Long.bitCount(fingerprint1 ^ fingerprint2);
+  }
+
+  /**
+   * Fingerprints an image file.
+   *
+   * @param path      The image file.
+   * @param algorithm The fingerprint algorithm.
+   * @return The fingerprint.
+   * @throws IOException If the file can't be read or decoded.
+   */
+  public static long fingerprint(Path path, PerceptualHashAlgorithm algorithm) throws IOException {
+    return fingerprint(readSmallImage(path), algorithm);
+  }
+
+  static long fingerprint(BufferedImage image, PerceptualHashAlgorithm algorithm) {
+    return switch (algorithm) {
+      case DHASH -> dHash(grayscale(image, 9, 8));
+      case PHASH -> pHash(grayscale(image, DCT_SIZE, DCT_SIZE));
+    };
+  }
+
+  private static BufferedImage readSmallImage(Path path) throws IOException {
+    final byte[] thumbnail = ExifHeaderReader.readThumbnail(path);
+    if (thumbnail != null) {
+      try (ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(thumbnail))) {
+        return trimDarkBorders(decode(input));
+      } catch (IOException e) {
+        // Corrupt thumbnail, decode the image itself
+      }
+    }
+    try (ImageInputStream input = new FileImageInputStream(path.toFile())) {
+      return decode(input);
+    }
+  }
+
+  private static BufferedImage decode(ImageInputStream input) throws IOException {
+    final Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+    if (!readers.hasNext()) {
+      throw new IOException("Unsupported image format");
+    }
+    final ImageReader reader = readers.next();
+    try {
+      reader.setInput(input, true, true);
+      final int subsampling = Math.max(1, Math.min(reader.getWidth(0), reader.getHeight(0)) / DECODE_SIZE);
+      final ImageReadParam param = reader.getDefaultReadParam();
+      param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+      return reader.read(0, param);
+    } finally {
+      reader.dispose();
+    }
+  }
+
+  /**
+   * Cameras letterbox thumbnails to a fixed aspect ratio, the black bars would make the thumbnail's fingerprint differ
+   * from the one of a copy without a thumbnail.
+   */
+  private static BufferedImage trimDarkBorders(BufferedImage image) {
+    final int width = image.getWidth();
+    final int height = image.getHeight();
+    final int[] line = new int[Math.max(width, height)];
+    int top = 0;
+    while (top < height / 4 && isDark(image.getRGB(0, top, width, 1, line, 0, width), width)) {
+      top++;
+    }
+    int bottom = height;
+    while (bottom > height - height / 4 && isDark(image.getRGB(0, bottom - 1, width, 1, line, 0, width), width)) {
+      bottom--;
+    }
+    int left = 0;
+    while (left < width / 4 && isDark(image.getRGB(left, 0, 1, height, line, 0, 1), height)) {
+      left++;
+    }
+    int right = width;
+    while (right > width - width / 4 && isDark(image.getRGB(right - 1, 0, 1, height, line, 0, 1), height)) {
+      right--;
+    }
+    return top == 0 && left == 0 && bottom == height && right == width
+           ? image
+           : image.getSubimage(left, top, right - left, bottom - top);
+  }
+
+  private static boolean isDark(int[] pixels, int length) {
+    for (int i = 0; i < length; i++) {
+      if (luminance(pixels[i]) > BORDER_LUMINANCE) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static double luminance(int rgb) {
+    return 0.299 * ((rgb >> 16) & 0xFF) + 0.587 * ((rgb >> 8) & 0xFF) + 0.114 * (rgb & 0xFF);
+  }
+
+  /**
+   * Reduces the image to a grayscale matrix by averaging the pixels falling into each cell.
+   *
+   * @return Luminance by row, then column.
+   */
+  private static double[][] grayscale(BufferedImage image, int columns, int rows) {
+    final int width = image.getWidth();
+    final int height = image.getHeight();
+    final double[][] sums = new double[rows][columns];
+    final int[][] counts = new int[rows][columns];
+    final int[] line = new int[width];
+    for (int y = 0; y < height; y++) {
+      final int row = (int) ((long) y * rows / height);
+      image.getRGB(0, y, width, 1, line, 0, width);
+      for (int x = 0; x < width; x++) {
+        final int column = (int) ((long) x * columns / width);
+        sums[row][column] += luminance(line[x]);
+        counts[row][column]++;
+      }
+    }
+    for (int row = 0; row < rows; row++) {
+      for (int column = 0; column < columns; column++) {
+        // Images smaller than the matrix leave cells empty, fill them from the left or above
+        sums[row][column] = counts[row][column] > 0 ? sums[row][column] / counts[row][column]
+                            : column > 0 ? sums[row][column - 1] : row > 0 ? sums[row - 1][column] : 0;
+      }
+    }
+    return sums;
+  }
+
+  private static long dHash(double[][] pixels) {
+    long hash = 0;
+    for (int row = 0; row < 8; row++) {
+      for (int column = 0; column < 8; column++) {
+        hash = (hash << 1) | (pixels[row][column] < pixels[row][column + 1] ? 1 : 0);
+      }
+    }
+    return hash;
+  }
+
+  /**
+   * Sets a bit for each of the 8x8 lowest frequency DCT coefficients above their median. The DC coefficient only
+   * reflects overall brightness, so it is left out of the median and its bit is always 0.
+   */
+  private static long pHash(double[][] pixels) {
+    // The DCT is separable, and only the first 8 frequencies of each axis are needed
+    final double[][] rows = new double[DCT_SIZE][DCT_KEEP];
+    for (int y = 0; y < DCT_SIZE; y++) {
+      for (int u = 0; u < DCT_KEEP; u++) {
+        double sum = 0;
+        for (int x = 0; x < DCT_SIZE; x++) {
+          sum += pixels[y][x] * DCT_COSINES[u][x];
+        }
+        rows[y][u] = sum;
+      }
+    }
+    final double[] coefficients = new double[DCT_KEEP * DCT_KEEP];
+    for (int v = 0; v < DCT_KEEP; v++) {
+      for (int u = 0; u < DCT_KEEP; u++) {
+        double sum = 0;
+        for (int y = 0; y < DCT_SIZE; y++) {
+          sum += rows[y][u] * DCT_COSINES[v][y];
+        }
+        coefficients[v * DCT_KEEP + u] = sum;
+      }
+    }
+    final double[] ac = Arrays.copyOfRange(coefficients, 1, coefficients.length);
+    Arrays.sort(ac);
+    final double median = ac[ac.length / 2];
+    long hash = 0;
+    for (int i = 1; i < coefficients.length; i++) {
+      hash |= (coefficients[i] > median ? 1L : 0L) << i;
+    }
+    return hash;
+  }
+}
@@ -0,0 +1,30 @@
+package com.omprakashyadav.arrange.photos;
+
+public enum PerceptualHashAlgorithm {
+  //Gradient between neighbouring pixels of a 9x8 thumbnail, fastest
+  DHASH("dhash"),
+  //Low frequencies of a 32x32 DCT, most robust to re-encoding and small edits
+  PHASH("phash");
+
+  private final String id;
+
+  PerceptualHashAlgorithm(String id) {
+    this.id = id;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public static PerceptualHashAlgorithm fromString(String v) {
+    if (v != null) {
+      v = v.trim();
+      for (PerceptualHashAlgorithm algorithm : PerceptualHashAlgorithm.values()) {
+        if (algorithm.id.equalsIgnoreCase(v) || algorithm.name().equalsIgnoreCase(v)) {
+          return algorithm;
+        }
+      }
+    }
+    return PHASH;
+  }
+}
@@ -5,6 +5,9 @@ import picocli.CommandLine;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
 
 @CommandLine.Command(
   name = "photo-organizer",
@@ -29,12 +32,107 @@ public class PhotoOrganizerCli implements Runnable {
 
   @CommandLine.Option(
     names = {"-l", "--layout"},
-    description = "Directory structure layout on the disk. Possible values: YYYY/MMM/DD, YYY/MMM",
+    description = "Directory structure layout on the disk. Possible values: YYYY/MMM/DD, YYY/MMM, YYYY/MMM/PLACE, YYYY/MMM/DD/PLACE (place folders need GPS data and geocoding), "
+                  + "or a template of fields in braces such as {yyyy}/{MM}-{MMM}/{dd}. Fields: yyyy, yy, MM, M, MMM, MMMM, dd, d, camera, type, and place as the last folder.",
     required = false,
     defaultValue = "YYYY/MMM"
   )
   String layout;
 
+  @CommandLine.Option(
+    names = {"--time-zone"},
+    description = "Time zone the capture dates are put in folders by, e.g. Europe/Paris or UTC. Defaults to the system time zone. "
+                  + "EXIF dates carry no zone and are read as UTC, so UTC files photos under the day shown by the camera.",
+    required = false
+  )
+  String timeZone;
+
+  @CommandLine.Option(
+    names = {"--metadata-threads"},
+    description = "Number of threads reading image and video metadata. Defaults to the number of available processors.",
+    required = false,
+    defaultValue = "0"
+  )
+  int metadataThreads;
+
+  @CommandLine.Option(
+    names = {"--copy-threads"},
+    description = "Number of threads copying files to the output directory.",
+    required = false,
+    defaultValue = "4"
+  )
+  int copyThreads;
+
+  @CommandLine.Option(
+    names = {"--ffprobe"},
+    description = "Fall back to ffprobe for videos whose container the built-in reader can't date. Requires ffmpeg to be installed.",
+    required = false,
+    defaultValue = "false"
+  )
+  boolean ffprobeFallback;
+
+  @CommandLine.Option(
+    names = {"--mode"},
+    description = "copy: leave the input untouched, move: rename files into the output directory (copied and deleted only across filesystems).",
+    required = false,
+    defaultValue = "copy"
+  )
+  String mode;
+
+  @CommandLine.Option(
+    names = {"--link"},
+    description = "Organize as links to the input instead of copies. hard: hard links, copied when the input is on another filesystem, sym: symbolic links.",
+    required = false
+  )
+  String link;
+
+  @CommandLine.Option(
+    names = {"--resume"},
+    description = "Resume an interrupted run into the same output directory, skipping the files it already organized.",
+    required = false,
+    defaultValue = "false"
+  )
+  boolean resume;
+
+  @CommandLine.Option(
+    names = {"--verbose"},
+    description = "Print every file as it is processed instead of a progress line.",
+    required = false,
+    defaultValue = "false"
+  )
+  boolean verbose;
+
+  @CommandLine.Option(
+    names = {"--progress-interval"},
+    description = "Seconds between progress reports, 0 disables them. Reports are rewritten in place on a terminal and logged at most every 10 seconds otherwise.",
+    required = false,
+    defaultValue = "1"
+  )
+  int progressInterval;
+
+  @CommandLine.Option(
+    names = {"--metrics-file"},
+    description = "File to write the run metrics to in the Prometheus text format, e.g. for the node_exporter textfile collector. Rewritten with every progress report.",
+    required = false
+  )
+  String metricsFile;
+
+  @CommandLine.Option(
+    names = {"--catalog"},
+    description = "Scan catalog file, used to skip metadata extraction for files unchanged since the last run.",
+    required = false,
+    defaultValue = ScanCatalog.DEFAULT_CATALOG_FILE
+  )
+  String catalogFile;
+
+  @CommandLine.Option(
+    names = {"--rebuild-catalog"},
+    description = "Ignore the existing scan catalog and rebuild it from scratch.",
+    required = false,
+    defaultValue = "false"
+  )
+  boolean rebuildCatalog;
+
   @Inject
   GeoLocationFetcher geoLocationFetcher;
 
@@ -59,10 +157,53 @@ public class PhotoOrganizerCli implements Runnable {
         ErrorBase.exit("Input dir: \"{0}\" and output dir: \"{1}\" can't be same.", this.inputDir, this.outputDir);
         return;
       }
-      DirectoryStructureLayout directoryStructureLayout = DirectoryStructureLayout.fromString(layout);
-      System.out.println("Organizing photos with layout: " + directoryStructureLayout.getLayout() + " ...");
-      ImageOrganizerWithGeo organizer = new ImageOrganizerWithGeo(directoryStructureLayout, new StatsCollector());
-      organizer.organizeImages(input, Path.of(outputDir));
+      // Checked on the raw value, fromString falls back to copy. Links are only made through --link.
+      if (!TransferMode.COPY.getId().equalsIgnoreCase(mode.trim()) && !TransferMode.MOVE.getId().equalsIgnoreCase(mode.trim())) {
+        ErrorBase.exit("Unknown mode: \"{0}\", expected copy or move. Use --link to organize as links.", mode);
+        return;
+      }
+      TransferMode transferMode = TransferMode.fromString(mode);
+      if (link != null) {
+        if (transferMode == TransferMode.MOVE) {
+          ErrorBase.exit("--link cannot be combined with --mode move.");
+          return;
+        }
+        transferMode = TransferMode.fromString(link);
+        if (transferMode != TransferMode.HARD_LINK && transferMode != TransferMode.SYMBOLIC_LINK) {
+          ErrorBase.exit("Unknown link type: \"{0}\", expected hard or sym.", link);
+          return;
+        }
+      }
+      if (!resume && OperationJournal.exists(output)) {
+        ErrorBase.exit("Output dir: \"{0}\" holds an interrupted run. Rerun with --resume to continue it, or delete {1} to start over.",
+                       this.outputDir, OperationJournal.JOURNAL_FILE);
+        return;
+      }
+      final ZoneId zone;
+      final LayoutTemplate layoutTemplate;
+      try {
+        zone = timeZone != null ? ZoneId.of(timeZone) : ZoneId.systemDefault();
+        layoutTemplate = LayoutTemplate.parse(layout, zone);
+      } catch (DateTimeException | IllegalArgumentException e) {
+        ErrorBase.exit("Invalid layout or time zone: {0}", e.getMessage());
+        return;
+      }
+      System.out.println("Organizing photos with layout: " + layoutTemplate.getTemplate() + " in time zone " + zone + " ...");
+      final int metadataWorkers = metadataThreads > 0 ? metadataThreads : Runtime.getRuntime().availableProcessors();
+      final ScanCatalog catalog = ScanCatalog.open(Path.of(catalogFile), rebuildCatalog);
+      final OrganizeOptions options = new OrganizeOptions(metadataWorkers, copyThreads, ffprobeFallback, transferMode, resume, verbose);
+      final StatsCollector statsCollector = new StatsCollector();
+      ImageOrganizerWithGeo organizer = new ImageOrganizerWithGeo(layoutTemplate, statsCollector, catalog, options, geoLocationFetcher);
+      final ProgressReporter progress = new ProgressReporter(statsCollector, TimeUnit.SECONDS.toMillis(progressInterval),
+                                                             System.console() != null && !verbose,
+                                                             metricsFile != null ? Path.of(metricsFile) : null);
+      try {
+        organizer.organizeImages(input, Path.of(outputDir));
+      } finally {
+        progress.close();
+      }
+      statsCollector.printStats();
+      catalog.save();
       System.out.println("Photo organization completed!");
     } catch (Exception e) {
       System.err.println("Error: " + e.getMessage());
@@ -2,10 +2,14 @@ package com.omprakashyadav.arrange.photos;
 
 import picocli.CommandLine;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
 @CommandLine.Command(
   name = "sync-photos",
   mixinStandardHelpOptions = true,
-  description = "Syncs photos between two directories."
+  description = "Syncs photos between two directories. Only new or changed files are copied, renamed and moved files are detected by content."
 )
 public class PhotoSyncCli implements Runnable {
 
@@ -23,9 +27,83 @@ public class PhotoSyncCli implements Runnable {
   )
   String destinationDir;
 
+  @CommandLine.Option(
+    names = {"--delete"},
+    description = "Delete destination files which no longer exist in the source.",
+    defaultValue = "false"
+  )
+  boolean delete;
+
+  @CommandLine.Option(
+    names = {"--dry-run"},
+    description = "Only print what would be synced.",
+    defaultValue = "false"
+  )
+  boolean dryRun;
+
+  @CommandLine.Option(
+    names = {"--threads"},
+    description = "Number of threads copying files.",
+    defaultValue = "4"
+  )
+  int threads;
+
+  @CommandLine.Option(
+    names = {"--hash"},
+    description = "Hash comparing file contents. Possible values: sha256, sha256-tree (hashes large files in parallel chunks).",
+    defaultValue = "sha256"
+  )
+  String hash;
+
+  @CommandLine.Option(
+    names = {"--catalog"},
+    description = "Scan catalog file, used to skip hashing files unchanged since the last run.",
+    defaultValue = ScanCatalog.DEFAULT_CATALOG_FILE
+  )
+  String catalogFile;
+
+  @CommandLine.Option(
+    names = {"--rebuild-catalog"},
+    description = "Ignore the existing scan catalog and rebuild it from scratch.",
+    defaultValue = "false"
+  )
+  boolean rebuildCatalog;
+
   @Override
   public void run() {
-    System.out.println("Coming soon");
-    // Add your sync logic here
+    final HashAlgorithm hashAlgorithm = HashAlgorithm.fromString(hash);
+    if (!hashAlgorithm.isCryptographic()) {
+      ErrorBase.exit("Hash: \"{0}\" can not compare file contents, use sha256 or sha256-tree.", hash);
+      return;
+    }
+    final Path source = Path.of(this.sourceDir);
+    if (!Files.isDirectory(source)) {
+      ErrorBase.exit("Source dir: \"{0}\" is not a directory.", this.sourceDir);
+      return;
+    }
+    final Path destination = Path.of(this.destinationDir);
+    if (source.toAbsolutePath().startsWith(destination.toAbsolutePath()) || destination.toAbsolutePath().startsWith(source.toAbsolutePath())) {
+      ErrorBase.exit("Source dir: \"{0}\" and destination dir: \"{1}\" can't be nested.", this.sourceDir, this.destinationDir);
+      return;
+    }
+    try {
+      System.out.println("Scanning source and destination...");
+      final ScanCatalog catalog = ScanCatalog.open(Path.of(catalogFile), rebuildCatalog);
+      final PhotoSynchronizer synchronizer = new PhotoSynchronizer(catalog, HashEngine.of(hashAlgorithm), delete, threads);
+      final List<PhotoSynchronizer.SyncAction> actions = synchronizer.plan(source, destination);
+      catalog.save();
+      for (PhotoSynchronizer.ActionType type : PhotoSynchronizer.ActionType.values()) {
+        System.out.println(type + ": " + actions.stream().filter(action -> action.type() == type).count());
+      }
+      if (dryRun) {
+        actions.forEach(action -> System.out.println("\t" + action.type() + ": " + action.from() + (action.to() != null ? " -> " + action.to() : "")));
+        return;
+      }
+      synchronizer.execute(actions);
+      System.out.println("Sync completed! Copied: " + synchronizer.getBytesCopied() + " bytes, errors: " + synchronizer.getFailed());
+    } catch (Exception e) {
+      System.err.println("Error: " + e.getMessage());
+      e.printStackTrace();
+    }
   }
-}
\ No newline at end of file
+}
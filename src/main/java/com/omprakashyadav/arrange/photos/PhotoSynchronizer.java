@@ -0,0 +1,233 @@
+package com.omprakashyadav.arrange.photos;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.omprakashyadav.arrange.photos.FileFormats.COMMON_MEDIA;
+
+/**
+ * Differential one-way sync of media files from a source to a destination directory.
+ * <p>
+ * Both trees are scanned into manifests keyed by relative path. Files whose size and modified time match are
+ * skipped without being read, content digests are only computed for files that may have changed or moved. Files
+ * missing from the destination are matched by content against destination files missing from the source, so renames
+ * and moves are replayed locally instead of being transferred again.
+ */
+public class PhotoSynchronizer {
+
+  enum ActionType {
+    COPY, LOCAL_COPY, MOVE, DELETE
+  }
+
+  /**
+   * @param from Source of the copy or move, the file to delete for {@link ActionType#DELETE}.
+   * @param to   Destination of the copy or move, null for {@link ActionType#DELETE}.
+   */
+  record SyncAction(ActionType type, Path from, Path to, long size) {
+  }
+
+  private final ScanCatalog catalog;
+  private final HashEngine sampledEngine = HashEngine.of(HashAlgorithm.MURMUR3_128);
+  private final HashEngine fullEngine;
+  private final boolean propagateDeletes;
+  private final int threads;
+
+  private final AtomicInteger failed = new AtomicInteger();
+  private final AtomicLong bytesCopied = new AtomicLong();
+
+  public PhotoSynchronizer(ScanCatalog catalog, HashEngine fullEngine, boolean propagateDeletes, int threads) {
+    this.catalog = catalog;
+    this.fullEngine = fullEngine;
+    this.propagateDeletes = propagateDeletes;
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * Computes the actions needed to bring the destination in line with the source.
+   *
+   * @param sourceDir      The source directory.
+   * @param destinationDir The destination directory.
+   * @return The actions, in the order they have to be executed.
+   * @throws IOException If an I/O error occurs while scanning or hashing.
+   */
+  public List<SyncAction> plan(Path sourceDir, Path destinationDir) throws IOException {
+    final Path sourceRoot = sourceDir.toAbsolutePath();
+    final Path destinationRoot = destinationDir.toAbsolutePath();
+    final Map<String, ScanCatalog.Entry> source = manifest(sourceRoot);
+    final Map<String, ScanCatalog.Entry> destination = manifest(destinationRoot);
+
+    final List<SyncAction> moves = new ArrayList<>();
+    final List<SyncAction> copies = new ArrayList<>();
+    final List<SyncAction> deletes = new ArrayList<>();
+    final List<String> missing = new ArrayList<>();
+
+    for (Map.Entry<String, ScanCatalog.Entry> entry : source.entrySet()) {
+      final ScanCatalog.Entry sourceFile = entry.getValue();
+      final ScanCatalog.Entry destinationFile = destination.get(entry.getKey());
+      if (destinationFile == null) {
+        missing.add(entry.getKey());
+      } else if (isChanged(sourceFile, destinationFile)) {
+        copies.add(new SyncAction(ActionType.COPY, sourceFile.toPath(), destinationFile.toPath(), sourceFile.size()));
+      }
+    }
+
+    // Destination files no longer in the source, by size: candidates for renames and moves
+    final Map<Long, List<ScanCatalog.Entry>> orphansBySize = new HashMap<>();
+    for (Map.Entry<String, ScanCatalog.Entry> entry : destination.entrySet()) {
+      if (!source.containsKey(entry.getKey())) {
+        orphansBySize.computeIfAbsent(entry.getValue().size(), size -> new ArrayList<>()).add(entry.getValue());
+      }
+    }
+
+    final Set<ScanCatalog.Entry> movedOrphans = new HashSet<>();
+    for (String relativePath : missing) {
+      final ScanCatalog.Entry sourceFile = source.get(relativePath);
+      final Path target = destinationRoot.resolve(relativePath);
+      final ScanCatalog.Entry orphan = findSameContent(sourceFile, orphansBySize.get(sourceFile.size()), movedOrphans);
+      if (orphan == null) {
+        copies.add(new SyncAction(ActionType.COPY, sourceFile.toPath(), target, sourceFile.size()));
+      } else if (propagateDeletes) {
+        movedOrphans.add(orphan);
+        moves.add(new SyncAction(ActionType.MOVE, orphan.toPath(), target, orphan.size()));
+      } else {
+        copies.add(new SyncAction(ActionType.LOCAL_COPY, orphan.toPath(), target, orphan.size()));
+      }
+    }
+
+    if (propagateDeletes) {
+      for (List<ScanCatalog.Entry> orphans : orphansBySize.values()) {
+        for (ScanCatalog.Entry orphan : orphans) {
+          if (!movedOrphans.contains(orphan)) {
+            deletes.add(new SyncAction(ActionType.DELETE, orphan.toPath(), null, orphan.size()));
+          }
+        }
+      }
+    }
+
+    final List<SyncAction> actions = new ArrayList<>(moves);
+    actions.addAll(copies);
+    actions.addAll(deletes);
+    return actions;
+  }
+
+  /**
+   * Executes the planned actions. Moves run first so their sources are still in place, copies run in parallel and
+   * deletions run last.
+   *
+   * @param actions The actions returned by {@link #plan(Path, Path)}.
+   */
+  public void execute(List<SyncAction> actions) {
+    final List<SyncAction> copies = new ArrayList<>();
+    for (SyncAction action : actions) {
+      switch (action.type()) {
+        case MOVE -> runAction(action);
+        case COPY, LOCAL_COPY -> copies.add(action);
+        default -> {
+        }
+      }
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (SyncAction copy : copies) {
+        futures.add(executor.submit(() -> runAction(copy)));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    } finally {
+      executor.shutdown();
+    }
+
+    for (SyncAction action : actions) {
+      if (action.type() == ActionType.DELETE) {
+        runAction(action);
+      }
+    }
+  }
+
+  public int getFailed() {
+    return failed.get();
+  }
+
+  public long getBytesCopied() {
+    return bytesCopied.get();
+  }
+
+  private void runAction(SyncAction action) {
+    try {
+      switch (action.type()) {
+        case COPY, LOCAL_COPY -> {
+          Files.createDirectories(action.to().getParent());
+          // Through a partial file, so an interrupted sync never leaves a truncated file in place of a good one
+          FileTransfer.copy(action.from(), action.to(), Files.getLastModifiedTime(action.from()), false);
+          bytesCopied.addAndGet(action.size());
+        }
+        case MOVE -> {
+          Files.createDirectories(action.to().getParent());
+          Files.move(action.from(), action.to());
+        }
+        case DELETE -> Files.delete(action.from());
+      }
+      System.out.println("\t" + action.type() + ": " + action.from() + (action.to() != null ? " -> " + action.to() : ""));
+    } catch (IOException e) {
+      System.err.println("Error syncing file: " + action.from() + " -> " + e.getMessage());
+      failed.incrementAndGet();
+    }
+  }
+
+  private Map<String, ScanCatalog.Entry> manifest(Path root) throws IOException {
+    final Map<String, ScanCatalog.Entry> manifest = new ConcurrentHashMap<>();
+    if (Files.isDirectory(root)) {
+      FileUtil.walkFiles(root, COMMON_MEDIA, catalog, entry -> manifest.put(root.relativize(entry.toPath()).toString(), entry));
+      catalog.scanned(root);
+    }
+    return manifest;
+  }
+
+  /**
+   * Size and modified time match is taken as unchanged, same as rsync's quick check. Otherwise the content decides.
+   */
+  private boolean isChanged(ScanCatalog.Entry sourceFile, ScanCatalog.Entry destinationFile) throws IOException {
+    if (sourceFile.size() != destinationFile.size()) {
+      return true;
+    }
+    if (sourceFile.modified() == destinationFile.modified()) {
+      return false;
+    }
+    return !isSameContent(sourceFile, destinationFile);
+  }
+
+  private ScanCatalog.Entry findSameContent(ScanCatalog.Entry sourceFile, List<ScanCatalog.Entry> candidates, Set<ScanCatalog.Entry> excluded) throws IOException {
+    if (candidates == null) {
+      return null;
+    }
+    for (ScanCatalog.Entry candidate : candidates) {
+      if (!excluded.contains(candidate) && isSameContent(sourceFile, candidate)) {
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  private boolean isSameContent(ScanCatalog.Entry file1, ScanCatalog.Entry file2) throws IOException {
+    return catalog.sampledDigest(file1, sampledEngine).equals(catalog.sampledDigest(file2, sampledEngine))
+           && catalog.fullDigest(file1, fullEngine).equals(catalog.fullDigest(file2, fullEngine));
+  }
+}
@@ -0,0 +1,148 @@
+package com.omprakashyadav.arrange.photos;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints the progress of a run from a {@link StatsCollector} on a timer, instead of a line per file from the workers.
+ * <p>
+ * On a terminal the progress is a single line redrawn in place. Otherwise, for example when the output goes to a log
+ * file, a line is printed at most every {@value #LOG_INTERVAL_SECONDS} seconds. Rates are measured over the last
+ * interval, the ETA over the whole run. The stats can also be written to a metrics file in the Prometheus text format,
+ * for node_exporter's textfile collector to pick up.
+ */
+public class ProgressReporter implements Closeable {
+
+  private static final long LOG_INTERVAL_SECONDS = 10;
+
+  private final StatsCollector statsCollector;
+  private final boolean inPlace;
+  private final Path metricsFile;
+  private final ScheduledExecutorService scheduler;
+  private long lastNanos;
+  private long lastFiles;
+  private long lastBytes;
+  private int lastLineLength;
+
+  /**
+   * @param intervalMillis How often to report, 0 to only write the metrics file when closed.
+   * @param inPlace        Whether to redraw a single line, for a terminal.
+   * @param metricsFile    File to write Prometheus metrics to, or null.
+   */
+  public ProgressReporter(StatsCollector statsCollector, long intervalMillis, boolean inPlace, Path metricsFile) {
+    this.statsCollector = statsCollector;
+    this.inPlace = inPlace;
+    this.metricsFile = metricsFile;
+    this.lastNanos = statsCollector.elapsedNanos();
+    if (intervalMillis <= 0) {
+      this.scheduler = null;
+      return;
+    }
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "progress");
+      thread.setDaemon(true);
+      return thread;
+    });
+    final long period = inPlace ? intervalMillis : Math.max(intervalMillis, TimeUnit.SECONDS.toMillis(LOG_INTERVAL_SECONDS));
+    scheduler.scheduleAtFixedRate(this::report, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops reporting, finishing the progress line and writing the final metrics.
+   */
+  @Override
+  public void close() {
+    if (scheduler != null) {
+      scheduler.shutdown();
+      try {
+        scheduler.awaitTermination(1, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      report();
+      if (inPlace) {
+        System.out.println();
+      }
+    } else {
+      writeMetrics();
+    }
+  }
+
+  private synchronized void report() {
+    final String line = progressLine();
+    if (inPlace) {
+      // Pad with spaces to wipe the end of a longer previous line
+      System.out.print("\r" + line + " ".repeat(Math.max(0, lastLineLength - line.length())));
+      System.out.flush();
+      lastLineLength = line.length();
+    } else {
+      System.out.println(line);
+    }
+    writeMetrics();
+  }
+
+  String progressLine() {
+    final long nanos = statsCollector.elapsedNanos();
+    final long files = statsCollector.completedFiles();
+    final long bytes = statsCollector.completedBytes();
+    final double seconds = Math.max(1e-3, (nanos - lastNanos) / 1e9);
+    final double filesPerSecond = (files - lastFiles) / seconds;
+    final double megabytesPerSecond = (bytes - lastBytes) / seconds / (1024 * 1024);
+    lastNanos = nanos;
+    lastFiles = files;
+    lastBytes = bytes;
+
+    final StringBuilder line = new StringBuilder(128);
+    final long scanned = statsCollector.scannedFiles();
+    line.append("Done ").append(files);
+    if (scanned > 0) {
+      line.append('/').append(scanned).append(statsCollector.isScanComplete() ? "" : "+");
+      if (statsCollector.isScanComplete()) {
+        line.append(String.format(" (%d%%)", files * 100 / scanned));
+      }
+    }
+    line.append(String.format(" | %.1f files/s | %.1f MB/s", filesPerSecond, megabytesPerSecond));
+    line.append(" | ETA ").append(eta(nanos, files, bytes));
+    line.append(" | errors ").append(statsCollector.errors());
+    return line.toString();
+  }
+
+  /**
+   * Estimates from the bytes done so far, as copy time mostly grows with size, falling back to the file count when no
+   * bytes were counted.
+   */
+  private String eta(long nanos, long files, long bytes) {
+    if (!statsCollector.isScanComplete() || files == 0) {
+      return "--:--:--";
+    }
+    final long totalBytes = statsCollector.scannedBytes();
+    final double remaining = bytes > 0 && totalBytes > 0
+                             ? (double) Math.max(0, totalBytes - bytes) / bytes
+                             : (double) Math.max(0, statsCollector.scannedFiles() - files) / files;
+    final long seconds = (long) (remaining * nanos / 1e9);
+    return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+  }
+
+  /**
+   * Written to a temporary file and renamed, so a scrape never reads a half-written file.
+   */
+  private void writeMetrics() {
+    if (metricsFile == null) {
+      return;
+    }
+    final Path tempFile = metricsFile.resolveSibling(metricsFile.getFileName() + ".tmp");
+    try {
+      Files.writeString(tempFile, statsCollector.toPrometheusText(), StandardCharsets.UTF_8);
+      Files.move(tempFile, metricsFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      System.err.println("Error writing metrics: " + metricsFile + " -> " + e.getMessage());
+    }
+  }
+}
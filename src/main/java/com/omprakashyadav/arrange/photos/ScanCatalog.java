@@ -0,0 +1,381 @@
+package com.omprakashyadav.arrange.photos;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * On-disk catalog of previously scanned files, so unchanged files skip metadata extraction and hashing on re-runs.
+ * An entry is only reused while the file's size, modified time and file key (inode) are unchanged.
+ * <p>
+ * The catalog is a single binary file: a header (magic, version, entry count) followed by fixed-order records.
+ * It is loaded in one sequential read at startup and rewritten through a temp file and an atomic rename on save.
+ * Entries below a directory scanned completely during the run are dropped on save when the scan didn't find their
+ * file, so the catalog doesn't keep every path it has ever seen. Entries of other directories are written back
+ * unchanged, without touching their files, so a library on an unmounted drive keeps its entries.
+ */
+public class ScanCatalog {
+
+  public static final String DEFAULT_CATALOG_FILE = "photo_catalog.bin";
+
+  private static final int MAGIC = 0x50434154; // "PCAT"
+  private static final int VERSION = 4;
+  private static final int BUFFER_SIZE = 1024 * 1024;
+
+  private static final byte FLAG_METADATA = 1;
+  private static final byte FLAG_CAPTURE_TIME = 1 << 1;
+  private static final byte FLAG_GPS = 1 << 2;
+  private static final byte FLAG_DHASH = 1 << 3;
+  private static final byte FLAG_PHASH = 1 << 4;
+
+  private final Path catalogFile;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  // Paths found, looked up or updated during this run
+  private final Set<String> touched = ConcurrentHashMap.newKeySet();
+  private final Set<Path> scannedRoots = ConcurrentHashMap.newKeySet();
+
+  private ScanCatalog(Path catalogFile) {
+    this.catalogFile = catalogFile;
+  }
+
+  /**
+   * Opens the catalog stored in the given file.
+   *
+   * @param catalogFile The catalog file, it doesn't need to exist.
+   * @param rebuild     If true the existing catalog is ignored and rebuilt from scratch.
+   * @return The catalog.
+   */
+  public static ScanCatalog open(Path catalogFile, boolean rebuild) {
+    final ScanCatalog catalog = new ScanCatalog(catalogFile);
+    if (!rebuild) {
+      catalog.load();
+    }
+    return catalog;
+  }
+
+  /**
+   * @return A catalog which is never loaded from or saved to disk.
+   */
+  public static ScanCatalog inMemory() {
+    return new ScanCatalog(null);
+  }
+
+  /**
+   * Returns the catalog entry for the file if it is still valid, otherwise a fresh entry holding only the attributes.
+   *
+   * @param path       The file path.
+   * @param attributes The current attributes of the file.
+   * @return The entry for the file.
+   */
+  public Entry lookup(Path path, BasicFileAttributes attributes) {
+    final String key = path.toAbsolutePath().toString();
+    final long modified = attributes.lastModifiedTime().toMillis();
+    final String fileKey = attributes.fileKey() != null ? attributes.fileKey().toString() : "";
+    final Entry entry = entries.get(key);
+    touched.add(entry != null ? entry.path() : key);
+    final Entry fresh = new Entry(key, attributes.size(), modified, fileKey, (byte) 0, MediaType.fromPath(path), 0, 0, 0, null, null, null, 0);
+    return entry != null && entry.isSameVersion(fresh) ? entry : fresh;
+  }
+
+  /**
+   * Records that a scan found the file, for scans which only look up some of the files they find.
+   *
+   * @param path The file path.
+   */
+  public void found(Path path) {
+    touched.add(path.toAbsolutePath().toString());
+  }
+
+  /**
+   * Records that the directory was scanned completely, every file in it was found or looked up.
+   *
+   * @param root The scanned directory.
+   */
+  public void scanned(Path root) {
+    scannedRoots.add(root.toAbsolutePath());
+  }
+
+  /**
+   * Applies a change to the stored entry of the file, or to the given entry if the stored one is missing or stale.
+   *
+   * @param entry  The entry returned by {@link #lookup(Path, BasicFileAttributes)}.
+   * @param change The change to apply, for example {@code e -> e.withFullDigest(digest)}.
+   * @return The updated entry.
+   */
+  public Entry update(Entry entry, UnaryOperator<Entry> change) {
+    touched.add(entry.path());
+    return entries.compute(entry.path(), (key, current) ->
+      change.apply(current != null && current.isSameVersion(entry) ? current : entry));
+  }
+
+  /**
+   * Returns the sampled digest of the file, computing and cataloging it unless it is known for the engine's algorithm.
+   *
+   * @param entry  The entry returned by {@link #lookup(Path, BasicFileAttributes)}.
+   * @param engine The hash engine.
+   * @return The digest, see {@link HashEngine#hashSampled(Path, long)}.
+   * @throws IOException If an I/O error occurs while reading the file.
+   */
+  public Digest sampledDigest(Entry entry, HashEngine engine) throws IOException {
+    final Entry current = current(entry);
+    if (current.sampledDigest() != null && current.sampledDigest().getAlgorithm() == engine.getAlgorithm()) {
+      return current.sampledDigest();
+    }
+    final Digest digest = engine.hashSampled(entry.toPath(), entry.size());
+    update(entry, e -> e.withSampledDigest(digest));
+    return digest;
+  }
+
+  /**
+   * Returns the full digest of the file, computing and cataloging it unless it is known for the engine's algorithm.
+   *
+   * @param entry  The entry returned by {@link #lookup(Path, BasicFileAttributes)}.
+   * @param engine The hash engine.
+   * @return The digest.
+   * @throws IOException If an I/O error occurs while reading the file.
+   */
+  public Digest fullDigest(Entry entry, HashEngine engine) throws IOException {
+    final Entry current = current(entry);
+    if (current.fullDigest() != null && current.fullDigest().getAlgorithm() == engine.getAlgorithm()) {
+      return current.fullDigest();
+    }
+    final Digest digest = engine.hashFile(entry.toPath());
+    update(entry, e -> e.withFullDigest(digest));
+    return digest;
+  }
+
+  /**
+   * Returns the perceptual fingerprint of the image, computing and cataloging it unless it is known for the algorithm.
+   *
+   * @param entry     The entry returned by {@link #lookup(Path, BasicFileAttributes)}.
+   * @param algorithm The fingerprint algorithm.
+   * @return The fingerprint, see {@link PerceptualHash}.
+   * @throws IOException If the image can't be read or decoded.
+   */
+  public long perceptualHash(Entry entry, PerceptualHashAlgorithm algorithm) throws IOException {
+    final Long known = current(entry).perceptualHash(algorithm);
+    if (known != null) {
+      return known;
+    }
+    final long fingerprint = PerceptualHash.fingerprint(entry.toPath(), algorithm);
+    update(entry, e -> e.withPerceptualHash(algorithm, fingerprint));
+    return fingerprint;
+  }
+
+  /**
+   * Entries are immutable, so one returned by {@link #lookup} doesn't see what was cataloged for its file afterwards.
+   *
+   * @return The stored entry of the same version of the file, or the given entry.
+   */
+  private Entry current(Entry entry) {
+    final Entry stored = entries.get(entry.path());
+    return stored != null && stored.isSameVersion(entry) ? stored : entry;
+  }
+
+  /**
+   * Writes the catalog to disk. No-op for an in-memory catalog.
+   */
+  public void save() {
+    if (catalogFile == null) {
+      return;
+    }
+    if (!scannedRoots.isEmpty()) {
+      entries.values().removeIf(entry -> !touched.contains(entry.path()) && isScanned(entry));
+    }
+    final Path tempFile = catalogFile.resolveSibling(catalogFile.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), BUFFER_SIZE))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(entries.size());
+      for (Entry entry : entries.values()) {
+        out.writeUTF(entry.path());
+        out.writeLong(entry.size());
+        out.writeLong(entry.modified());
+        out.writeUTF(entry.fileKey());
+        out.writeByte(entry.flags());
+        out.writeByte(entry.mediaType().ordinal());
+        out.writeLong(entry.captureTime());
+        out.writeDouble(entry.latitude());
+        out.writeDouble(entry.longitude());
+        out.writeUTF(entry.camera() != null ? entry.camera() : "");
+        writeDigest(out, entry.sampledDigest());
+        writeDigest(out, entry.fullDigest());
+        out.writeLong(entry.perceptualHash());
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    try {
+      Files.move(tempFile, catalogFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @return true if the file of the entry is below a directory scanned during this run.
+   */
+  private boolean isScanned(Entry entry) {
+    final Path path = entry.toPath();
+    for (Path root : scannedRoots) {
+      if (path.startsWith(root)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void load() {
+    if (!Files.exists(catalogFile)) {
+      return;
+    }
+    final MediaType[] mediaTypes = MediaType.values();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(catalogFile), BUFFER_SIZE))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        System.err.println("Ignoring unsupported catalog: " + catalogFile);
+        return;
+      }
+      final int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        final String path = in.readUTF();
+        final long size = in.readLong();
+        final long modified = in.readLong();
+        final String fileKey = in.readUTF();
+        final byte flags = in.readByte();
+        final MediaType mediaType = mediaTypes[in.readByte()];
+        final long captureTime = in.readLong();
+        final double latitude = in.readDouble();
+        final double longitude = in.readDouble();
+        final String camera = in.readUTF();
+        final Digest sampledDigest = readDigest(in);
+        final Digest fullDigest = readDigest(in);
+        final long perceptualHash = in.readLong();
+        entries.put(path, new Entry(path, size, modified, fileKey, flags, mediaType, captureTime, latitude, longitude,
+                                    camera.isEmpty() ? null : camera, sampledDigest, fullDigest, perceptualHash));
+      }
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Ignoring unreadable catalog: " + catalogFile + " -> " + e.getMessage());
+      entries.clear();
+    }
+  }
+
+  /**
+   * A digest is stored as its length followed by the algorithm and the raw bytes, a zero length means no digest.
+   */
+  private static void writeDigest(DataOutputStream out, Digest digest) throws IOException {
+    if (digest == null) {
+      out.writeByte(0);
+      return;
+    }
+    out.writeByte(digest.getBytes().length);
+    out.writeByte(digest.getAlgorithm().ordinal());
+    out.write(digest.getBytes());
+  }
+
+  private static Digest readDigest(DataInputStream in) throws IOException {
+    final int length = in.readUnsignedByte();
+    if (length == 0) {
+      return null;
+    }
+    final HashAlgorithm algorithm = HashAlgorithm.values()[in.readUnsignedByte()];
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new Digest(algorithm, bytes);
+  }
+
+  /**
+   * A cataloged file.
+   *
+   * @param path           Absolute path of the file.
+   * @param size           Size in bytes when cataloged.
+   * @param modified       Last modified time in epoch millis when cataloged.
+   * @param fileKey        File key (device and inode on Unix) when cataloged, empty if not supported.
+   * @param flags          Which of the optional values below are known.
+   * @param mediaType      Media type of the file.
+   * @param captureTime    Capture time in epoch millis.
+   * @param latitude       GPS latitude in decimal degrees.
+   * @param longitude      GPS longitude in decimal degrees.
+   * @param camera         Camera make and model, or null.
+   * @param sampledDigest  Sampled digest, see {@link HashEngine#hashSampled(Path, long)}, or null.
+   * @param fullDigest     Full file digest, or null.
+   * @param perceptualHash Perceptual fingerprint, the flags tell its algorithm.
+   */
+  public record Entry(String path, long size, long modified, String fileKey, byte flags, MediaType mediaType,
+                      long captureTime, double latitude, double longitude, String camera, Digest sampledDigest,
+                      Digest fullDigest, long perceptualHash) {
+
+    boolean isSameVersion(Entry other) {
+      return size == other.size && modified == other.modified && fileKey.equals(other.fileKey);
+    }
+
+    public Path toPath() {
+      return Path.of(path);
+    }
+
+    /**
+     * @return true if metadata was extracted for this version of the file, even if it had no date or location.
+     */
+    public boolean hasMetadata() {
+      return (flags & FLAG_METADATA) != 0;
+    }
+
+    public Date captureDate() {
+      return (flags & FLAG_CAPTURE_TIME) != 0 ? new Date(captureTime) : null;
+    }
+
+    public double[] coordinates() {
+      return (flags & FLAG_GPS) != 0 ? new double[]{latitude, longitude} : null;
+    }
+
+    public Entry withMetadata(Date captureDate, double[] coordinates, String camera) {
+      byte newFlags = (byte) ((flags & ~(FLAG_CAPTURE_TIME | FLAG_GPS)) | FLAG_METADATA);
+      if (captureDate != null) {
+        newFlags |= FLAG_CAPTURE_TIME;
+      }
+      if (coordinates != null) {
+        newFlags |= FLAG_GPS;
+      }
+      return new Entry(path, size, modified, fileKey, newFlags, mediaType,
+                       captureDate != null ? captureDate.getTime() : 0,
+                       coordinates != null ? coordinates[0] : 0,
+                       coordinates != null ? coordinates[1] : 0,
+                       camera, sampledDigest, fullDigest, perceptualHash);
+    }
+
+    public Entry withSampledDigest(Digest digest) {
+      return new Entry(path, size, modified, fileKey, flags, mediaType, captureTime, latitude, longitude, camera, digest, fullDigest, perceptualHash);
+    }
+
+    public Entry withFullDigest(Digest digest) {
+      return new Entry(path, size, modified, fileKey, flags, mediaType, captureTime, latitude, longitude, camera, sampledDigest, digest, perceptualHash);
+    }
+
+    /**
+     * @return The perceptual fingerprint if it was computed with the given algorithm, otherwise null.
+     */
+    public Long perceptualHash(PerceptualHashAlgorithm algorithm) {
+      return (flags & perceptualHashFlag(algorithm)) != 0 ? perceptualHash : null;
+    }
+
+    public Entry withPerceptualHash(PerceptualHashAlgorithm algorithm, long fingerprint) {
+      final byte newFlags = (byte) ((flags & ~(FLAG_DHASH | FLAG_PHASH)) | perceptualHashFlag(algorithm));
+      return new Entry(path, size, modified, fileKey, newFlags, mediaType, captureTime, latitude, longitude, camera,
+                       sampledDigest, fullDigest, fingerprint);
+    }
+
+    private static byte perceptualHashFlag(PerceptualHashAlgorithm algorithm) {
+      return algorithm == PerceptualHashAlgorithm.DHASH ? FLAG_DHASH : FLAG_PHASH;
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package com.omprakashyadav.arrange.photos;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Finds visually similar images, such as resized, re-encoded or re-exported copies, by their perceptual fingerprints.
+ * <p>
+ * Images are fingerprinted in parallel, reusing fingerprints from the scan catalog for unchanged files. The fingerprints
+ * go into a {@link FingerprintIndex}, so finding the neighbours of every image takes one radius search each instead of
+ * comparing all pairs.
+ */
+public class SimilarImageFinder {
+
+  private final ScanCatalog catalog;
+  private final PerceptualHashAlgorithm algorithm;
+  private final int maxDistance;
+  private final int threads;
+
+  /**
+   * @param maxDistance Maximum number of differing fingerprint bits for two images to be similar.
+   */
+  public SimilarImageFinder(ScanCatalog catalog, PerceptualHashAlgorithm algorithm, int maxDistance, int threads) {
+    this.catalog = catalog;
+    this.algorithm = algorithm;
+    this.maxDistance = maxDistance;
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * A set of similar images.
+   *
+   * @param files Catalog entries of the images, at least two. Every image is within the maximum distance of the first.
+   */
+  public record SimilarGroup(List<ScanCatalog.Entry> files) {
+  }
+
+  /**
+   * Groups similar images. Each group is seeded by the first image, in path order, not grouped yet, and takes every
+   * ungrouped image within the maximum distance of it. Similarity isn't transitive, so chains of small differences
+   * don't merge unrelated images.
+   *
+   * @param images Catalog entries of the images.
+   * @return The groups. Images which can't be decoded are reported and left out.
+   */
+  public List<SimilarGroup> findSimilar(List<ScanCatalog.Entry> images) {
+    final List<ScanCatalog.Entry> sorted = new ArrayList<>(images);
+    sorted.sort(Comparator.comparing(ScanCatalog.Entry::path));
+    final long[] fingerprints = new long[sorted.size()];
+    final boolean[] fingerprinted = new boolean[sorted.size()];
+    fingerprint(sorted, fingerprints, fingerprinted);
+
+    final FingerprintIndex index = new FingerprintIndex(fingerprints);
+    final boolean[] grouped = new boolean[sorted.size()];
+    final List<SimilarGroup> groups = new ArrayList<>();
+    for (int i = 0; i < sorted.size(); i++) {
+      if (!fingerprinted[i] || grouped[i]) {
+        continue;
+      }
+      final List<Integer> members = new ArrayList<>();
+      members.add(i);
+      grouped[i] = true;
+      index.search(fingerprints[i], maxDistance, j -> {
+        if (fingerprinted[j] && !grouped[j]) {
+          grouped[j] = true;
+          members.add(j);
+        }
+      });
+      if (members.size() > 1) {
+        groups.add(new SimilarGroup(members.stream().sorted().map(sorted::get).toList()));
+      }
+    }
+    return groups;
+  }
+
+  private void fingerprint(List<ScanCatalog.Entry> images, long[] fingerprints, boolean[] fingerprinted) {
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < images.size(); i++) {
+        final int index = i;
+        futures.add(executor.submit(() -> {
+          final ScanCatalog.Entry image = images.get(index);
+          try {
+            fingerprints[index] = catalog.perceptualHash(image, algorithm);
+            fingerprinted[index] = true;
+          } catch (IOException | RuntimeException e) {
+            System.err.println("Error fingerprinting file: " + image.path() + " -> " + e.getMessage());
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,311 @@
+package com.omprakashyadav.arrange.photos;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Compact index of file sizes and paths, used to find files sharing a size among millions of files.
+ * <p>
+ * Files are kept in parallel primitive arrays: a {@code long} size and an {@code int} offset into a byte arena holding
+ * the UTF-8 encoded absolute paths, about 16 bytes plus the path per file instead of a {@link Path}, a boxed key and a
+ * list per size. When the index outgrows its memory budget the files are sorted by size and spilled to a run file, and
+ * the runs are k-way merged when the collisions are read, so memory stays bounded whatever the number of files.
+ * <p>
+ * Not thread safe, files are added from a single thread.
+ */
+public class SizeIndex implements Closeable {
+
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int BYTES_PER_FILE = Long.BYTES + Integer.BYTES * 2; // size, offset, sort order
+  private static final int RUN_BUFFER_SIZE = 64 * 1024;
+  // Keeps the arena offsets within an int
+  private static final long MAX_ARENA_SIZE = Integer.MAX_VALUE - 64;
+  private static final long MIN_MEMORY_BUDGET = 1024 * 1024;
+
+  private final long memoryBudget;
+  private long[] sizes = new long[INITIAL_CAPACITY];
+  private int[] offsets = new int[INITIAL_CAPACITY + 1];
+  private byte[] arena = new byte[INITIAL_CAPACITY * 64];
+  private int count;
+  private long total;
+  private Path spillDirectory;
+  private final List<Path> runs = new ArrayList<>();
+
+  /**
+   * @param memoryBudget Approximate number of bytes the index may hold in memory before spilling to disk.
+   */
+  public SizeIndex(long memoryBudget) {
+    this(memoryBudget, MIN_MEMORY_BUDGET);
+  }
+
+  /**
+   * @param minimumBudget Lower bound of the budget, tests lower it to spill a handful of files.
+   */
+  SizeIndex(long memoryBudget, long minimumBudget) {
+    this.memoryBudget = Math.max(minimumBudget, memoryBudget);
+  }
+
+  /**
+   * @return The number of files added.
+   */
+  public long size() {
+    return total;
+  }
+
+  public void add(long size, Path file) {
+    final byte[] path = file.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+    if (count > 0 && (((long) count + 1) * BYTES_PER_FILE + offsets[count] + path.length > memoryBudget
+                      || (long) offsets[count] + path.length > MAX_ARENA_SIZE)) {
+      spill();
+    }
+    if (count == sizes.length) {
+      final int capacity = count + (count >> 1);
+      sizes = Arrays.copyOf(sizes, capacity);
+      offsets = Arrays.copyOf(offsets, capacity + 1);
+    }
+    final int offset = offsets[count];
+    if (offset + path.length > arena.length) {
+      arena = Arrays.copyOf(arena, (int) Math.min(MAX_ARENA_SIZE, Math.max(offset + path.length, (long) arena.length + (arena.length >> 1))));
+    }
+    System.arraycopy(path, 0, arena, offset, path.length);
+    sizes[count] = size;
+    offsets[count + 1] = offset + path.length;
+    count++;
+    total++;
+  }
+
+  /**
+   * @return The number of runs spilled to disk so far.
+   */
+  int spilledRuns() {
+    return runs.size();
+  }
+
+  /**
+   * Calls back with every size shared by at least two files, in increasing size order. The index is emptied as it is
+   * read, so it can only be read once.
+   *
+   * @param onCollision Called with the size and the files of that size.
+   * @throws IOException If a spilled run can't be read, or thrown by the callback.
+   */
+  public void forEachCollision(CollisionConsumer onCollision) throws IOException {
+    if (runs.isEmpty()) {
+      final int[] order = sortedOrder();
+      int start = 0;
+      for (int i = 1; i <= count; i++) {
+        if (i == count || sizes[order[i]] != sizes[order[start]]) {
+          if (i - start > 1) {
+            final List<Path> files = new ArrayList<>(i - start);
+            for (int j = start; j < i; j++) {
+              files.add(Path.of(path(order[j])));
+            }
+            onCollision.accept(sizes[order[start]], files);
+          }
+          start = i;
+        }
+      }
+      clear();
+      return;
+    }
+    if (count > 0) {
+      spill();
+    }
+    mergeRuns(onCollision);
+  }
+
+  /**
+   * Deletes the spilled runs.
+   */
+  @Override
+  public void close() throws IOException {
+    for (Path run : runs) {
+      Files.deleteIfExists(run);
+    }
+    runs.clear();
+    if (spillDirectory != null) {
+      Files.deleteIfExists(spillDirectory);
+      spillDirectory = null;
+    }
+  }
+
+  @FunctionalInterface
+  public interface CollisionConsumer {
+    void accept(long size, List<Path> files) throws IOException;
+  }
+
+  private String path(int index) {
+    return new String(arena, offsets[index], offsets[index + 1] - offsets[index], StandardCharsets.UTF_8);
+  }
+
+  private void clear() {
+    count = 0;
+    sizes = new long[INITIAL_CAPACITY];
+    offsets = new int[INITIAL_CAPACITY + 1];
+    arena = new byte[INITIAL_CAPACITY * 64];
+  }
+
+  /**
+   * Writes the files sorted by size to a new run: the size, the path length and the UTF-8 path of each file.
+   */
+  private void spill() {
+    try {
+      if (spillDirectory == null) {
+        spillDirectory = Files.createTempDirectory("photo-organizer-sizes");
+      }
+      final Path run = spillDirectory.resolve("run-" + runs.size() + ".bin");
+      runs.add(run);
+      final int[] order = sortedOrder();
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), RUN_BUFFER_SIZE))) {
+        for (int i = 0; i < count; i++) {
+          final int index = order[i];
+          out.writeLong(sizes[index]);
+          out.writeInt(offsets[index + 1] - offsets[index]);
+          out.write(arena, offsets[index], offsets[index + 1] - offsets[index]);
+        }
+      }
+      // Keep the grown arrays, the next run will need them again
+      count = 0;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void mergeRuns(CollisionConsumer onCollision) throws IOException {
+    final PriorityQueue<RunReader> heads = new PriorityQueue<>((a, b) -> Long.compare(a.size, b.size));
+    clear();
+    try {
+      for (Path run : runs) {
+        final RunReader reader = new RunReader(run);
+        if (reader.next()) {
+          heads.add(reader);
+        } else {
+          reader.close();
+        }
+      }
+      long groupSize = -1;
+      final List<Path> group = new ArrayList<>();
+      while (!heads.isEmpty()) {
+        final RunReader reader = heads.poll();
+        if (reader.size != groupSize) {
+          if (group.size() > 1) {
+            onCollision.accept(groupSize, List.copyOf(group));
+          }
+          group.clear();
+          groupSize = reader.size;
+        }
+        group.add(Path.of(new String(reader.path, StandardCharsets.UTF_8)));
+        if (reader.next()) {
+          heads.add(reader);
+        } else {
+          reader.close();
+        }
+      }
+      if (group.size() > 1) {
+        onCollision.accept(groupSize, List.copyOf(group));
+      }
+    } finally {
+      for (RunReader reader : heads) {
+        reader.close();
+      }
+    }
+  }
+
+  /**
+   * @return The indexes of the files in increasing size order.
+   */
+  private int[] sortedOrder() {
+    final int[] order = new int[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
+    sort(order, 0, count - 1);
+    return order;
+  }
+
+  /**
+   * Three-way quicksort of the indexes by size, so the many files sharing a common size don't degrade it.
+   */
+  private void sort(int[] order, int low, int high) {
+    while (high - low > 16) {
+      final long pivot = medianOfThree(sizes[order[low]], sizes[order[(low + high) >>> 1]], sizes[order[high]]);
+      int lt = low;
+      int gt = high;
+      int i = low;
+      while (i <= gt) {
+        final long size = sizes[order[i]];
+        if (size < pivot) {
+          swap(order, lt++, i++);
+        } else if (size > pivot) {
+          swap(order, i, gt--);
+        } else {
+          i++;
+        }
+      }
+      // Recurse into the smaller side, loop on the larger one to bound the stack depth
+      if (lt - low < high - gt) {
+        sort(order, low, lt - 1);
+        low = gt + 1;
+      } else {
+        sort(order, gt + 1, high);
+        high = lt - 1;
+      }
+    }
+    for (int i = low + 1; i <= high; i++) {
+      final int index = order[i];
+      int j = i - 1;
+      while (j >= low && sizes[order[j]] > sizes[index]) {
+        order[j + 1] = order[j];
+        j--;
+      }
+      order[j + 1] = index;
+    }
+  }
+
+  private static long medianOfThree(long a, long b, long c) {
+    return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+  }
+
+  private static void swap(int[] order, int i, int j) {
+    final int index = order[i];
+    order[i] = order[j];
+    order[j] = index;
+  }
+
+  private static class RunReader implements Closeable {
+    private final DataInputStream in;
+    private long size;
+    private byte[] path;
+
+    RunReader(Path run) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), RUN_BUFFER_SIZE));
+    }
+
+    boolean next() throws IOException {
+      try {
+        size = in.readLong();
+      } catch (EOFException e) {
+        return false;
+      }
+      path = new byte[in.readInt()];
+      in.readFully(path);
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,298 @@
+package com.omprakashyadav.arrange.photos;
+
+import java.util.Arrays;
+
+/**
+ * In-memory reverse geocoding cache which answers any point within {@code radiusMeters} of an already resolved point.
+ * <p>
+ * Resolved points are bucketed into grid cells at least {@code radiusMeters} wide, identified by the row and column
+ * packed into a {@code long}, so a lookup only has to check the 3x3 cells around the point. Cells are indexed by an
+ * open addressing table of primitive keys and entries are kept in parallel arrays, linked in LRU order. Once
+ * {@code maxEntries} points are cached the least recently used one is evicted. An entry costs about 60 bytes plus the
+ * value.
+ *
+ * @param <V> The cached value, for example the location or a pending lookup of it.
+ */
+public class SpatialLocationCache<V> {
+
+  private static final double EARTH_RADIUS_METERS = 6_371_000;
+  private static final double METERS_PER_DEGREE = Math.toRadians(1) * EARTH_RADIUS_METERS;
+  private static final int NONE = -1;
+
+  private final double radiusMeters;
+  private final double cellDegrees;
+  private final int maxEntries;
+
+  // Cell table, a slot is empty when its head is NONE
+  private long[] cellKeys;
+  private int[] cellHeads;
+  private int cellCount;
+
+  // Entries
+  private double[] latitudes;
+  private double[] longitudes;
+  private Object[] values;
+  private long[] entryCells;
+  private int[] nextInCell;
+  private int[] newer;
+  private int[] older;
+  private int size;
+  private int newest = NONE;
+  private int oldest = NONE;
+
+  public SpatialLocationCache(double radiusMeters, int maxEntries) {
+    this.radiusMeters = Math.max(1, radiusMeters);
+    this.cellDegrees = this.radiusMeters / METERS_PER_DEGREE;
+    this.maxEntries = Math.max(1, maxEntries);
+    allocateTable(16);
+    allocateEntries(Math.min(this.maxEntries, 16));
+  }
+
+  /**
+   * @return The value of the nearest cached point within the radius, or null if there is none.
+   */
+  public synchronized V get(double latitude, double longitude) {
+    final int nearest = nearest(latitude, longitude);
+    if (nearest == NONE) {
+      return null;
+    }
+    unlinkLru(nearest);
+    linkNewest(nearest);
+    return value(nearest);
+  }
+
+  /**
+   * Caches the value unless a point within the radius is cached already, atomically.
+   *
+   * @return The value of the nearest cached point within the radius, or null if the given value was cached.
+   */
+  public synchronized V putIfAbsent(double latitude, double longitude, V value) {
+    final V existing = get(latitude, longitude);
+    if (existing == null) {
+      put(latitude, longitude, value);
+    }
+    return existing;
+  }
+
+  private int nearest(double latitude, double longitude) {
+    final int row = row(latitude);
+    int nearest = NONE;
+    double nearestDistance = radiusMeters;
+    for (int r = row - 1; r <= row + 1; r++) {
+      final int columns = columns(r);
+      final int column = column(longitude, r);
+      // Rows near the poles have fewer than three columns, check each of them once
+      final int first = columns <= 3 ? 0 : column - 1;
+      final int last = columns <= 3 ? columns - 1 : column + 1;
+      for (int c = first; c <= last; c++) {
+        for (int entry = cellHead(pack(r, Math.floorMod(c, columns))); entry != NONE; entry = nextInCell[entry]) {
+          final double distance = distanceMeters(latitude, longitude, latitudes[entry], longitudes[entry]);
+          if (distance <= nearestDistance) {
+            nearest = entry;
+            nearestDistance = distance;
+          }
+        }
+      }
+    }
+    return nearest;
+  }
+
+  public synchronized void put(double latitude, double longitude, V value) {
+    final int entry;
+    if (size < maxEntries) {
+      if (size == latitudes.length) {
+        allocateEntries(Math.min(maxEntries, size * 2));
+      }
+      entry = size++;
+    } else {
+      entry = oldest;
+      unlinkLru(entry);
+      removeFromCell(entry);
+    }
+    latitudes[entry] = latitude;
+    longitudes[entry] = longitude;
+    values[entry] = value;
+    final int row = row(latitude);
+    entryCells[entry] = pack(row, column(longitude, row));
+    addToCell(entry);
+    linkNewest(entry);
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  @SuppressWarnings("unchecked")
+  private V value(int entry) {
+    return (V) values[entry];
+  }
+
+  private int row(double latitude) {
+    return (int) Math.floor((Math.min(90, Math.max(-90, latitude)) + 90) / cellDegrees);
+  }
+
+  /**
+   * Cells are {@code cellDegrees} high. Each row is split into as many equal columns as fit while staying
+   * {@code radiusMeters} wide at the row's edge closest to the pole, so columns get wider towards the poles and the
+   * column at the antimeridian is never a narrow sliver.
+   */
+  private int columns(int row) {
+    final double edge = Math.min(90, Math.max(Math.abs(row * cellDegrees - 90), Math.abs((row + 1) * cellDegrees - 90)));
+    final double minDegrees = cellDegrees / Math.cos(Math.toRadians(edge));
+    return (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.floor(360 / minDegrees)));
+  }
+
+  private int column(double longitude, int row) {
+    final int columns = columns(row);
+    return Math.floorMod((int) Math.floor((longitude + 180) / (360.0 / columns)), columns);
+  }
+
+  private static long pack(int row, int column) {
+    return ((long) row << 32) | (column & 0xFFFFFFFFL);
+  }
+
+  private static double distanceMeters(double latitude1, double longitude1, double latitude2, double longitude2) {
+    double deltaLongitude = Math.abs(longitude1 - longitude2);
+    if (deltaLongitude > 180) {
+      deltaLongitude = 360 - deltaLongitude;
+    }
+    // Equirectangular approximation, accurate enough at cache radii
+    final double x = Math.toRadians(deltaLongitude) * Math.cos(Math.toRadians((latitude1 + latitude2) / 2));
+    final double y = Math.toRadians(latitude1 - latitude2);
+    return Math.sqrt(x * x + y * y) * EARTH_RADIUS_METERS;
+  }
+
+  private int slot(long key) {
+    return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & (cellKeys.length - 1);
+  }
+
+  private int findSlot(long key) {
+    final int mask = cellKeys.length - 1;
+    int slot = slot(key);
+    while (cellHeads[slot] != NONE && cellKeys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private int cellHead(long key) {
+    return cellHeads[findSlot(key)];
+  }
+
+  private void addToCell(int entry) {
+    final long key = entryCells[entry];
+    int slot = findSlot(key);
+    if (cellHeads[slot] == NONE) {
+      if ((cellCount + 1) * 2 > cellKeys.length) {
+        rehash(cellKeys.length * 2);
+        slot = findSlot(key);
+      }
+      cellKeys[slot] = key;
+      cellCount++;
+    }
+    nextInCell[entry] = cellHeads[slot];
+    cellHeads[slot] = entry;
+  }
+
+  private void removeFromCell(int entry) {
+    final int slot = findSlot(entryCells[entry]);
+    if (cellHeads[slot] == entry) {
+      cellHeads[slot] = nextInCell[entry];
+    } else {
+      int previous = cellHeads[slot];
+      while (nextInCell[previous] != entry) {
+        previous = nextInCell[previous];
+      }
+      nextInCell[previous] = nextInCell[entry];
+    }
+    if (cellHeads[slot] == NONE) {
+      deleteSlot(slot);
+      cellCount--;
+    }
+  }
+
+  /**
+   * Backward shift deletion: moves later entries of the probe sequence into the hole so lookups never stop early.
+   */
+  private void deleteSlot(int hole) {
+    final int mask = cellKeys.length - 1;
+    int slot = hole;
+    while (true) {
+      slot = (slot + 1) & mask;
+      if (cellHeads[slot] == NONE) {
+        break;
+      }
+      final int home = slot(cellKeys[slot]);
+      if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+        cellKeys[hole] = cellKeys[slot];
+        cellHeads[hole] = cellHeads[slot];
+        hole = slot;
+      }
+    }
+    cellHeads[hole] = NONE;
+  }
+
+  private void rehash(int capacity) {
+    final long[] oldKeys = cellKeys;
+    final int[] oldHeads = cellHeads;
+    allocateTable(capacity);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldHeads[i] != NONE) {
+        final int slot = findSlot(oldKeys[i]);
+        cellKeys[slot] = oldKeys[i];
+        cellHeads[slot] = oldHeads[i];
+      }
+    }
+  }
+
+  private void allocateTable(int capacity) {
+    cellKeys = new long[capacity];
+    cellHeads = new int[capacity];
+    Arrays.fill(cellHeads, NONE);
+  }
+
+  private void allocateEntries(int capacity) {
+    if (latitudes == null) {
+      latitudes = new double[capacity];
+      longitudes = new double[capacity];
+      values = new Object[capacity];
+      entryCells = new long[capacity];
+      nextInCell = new int[capacity];
+      newer = new int[capacity];
+      older = new int[capacity];
+      return;
+    }
+    latitudes = Arrays.copyOf(latitudes, capacity);
+    longitudes = Arrays.copyOf(longitudes, capacity);
+    values = Arrays.copyOf(values, capacity);
+    entryCells = Arrays.copyOf(entryCells, capacity);
+    nextInCell = Arrays.copyOf(nextInCell, capacity);
+    newer = Arrays.copyOf(newer, capacity);
+    older = Arrays.copyOf(older, capacity);
+  }
+
+  private void linkNewest(int entry) {
+    newer[entry] = NONE;
+    older[entry] = newest;
+    if (newest != NONE) {
+      newer[newest] = entry;
+    }
+    newest = entry;
+    if (oldest == NONE) {
+      oldest = entry;
+    }
+  }
+
+  private void unlinkLru(int entry) {
+    if (newer[entry] != NONE) {
+      older[newer[entry]] = older[entry];
+    } else {
+      newest = older[entry];
+    }
+    if (older[entry] != NONE) {
+      newer[older[entry]] = newer[entry];
+    } else {
+      oldest = newer[entry];
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package com.omprakashyadav.arrange.photos;
+
+public enum Stage {
+  //Finding a file in the input directory, listing and stat included
+  WALK("walk"),
+  //Reading the capture date and GPS coordinates of a file
+  METADATA("metadata"),
+  //Hashing a file to confirm duplicates
+  HASH("hash"),
+  //Copying, moving or linking a file into the output directory, comparing it to a clashing file included
+  COPY("copy"),
+  //Resolving the place of a GPS position
+  GEOCODE("geocode");
+
+  private final String id;
+
+  Stage(String id) {
+    this.id = id;
+  }
+
+  public String getId() {
+    return id;
+  }
+}
@@ -1,69 +1,261 @@
 package com.omprakashyadav.arrange.photos;
 
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Counters, per-stage latencies and throughput of a run.
+ * <p>
+ * Counters are {@link LongAdder}s, striped per thread under contention, so workers updating them on every file don't
+ * serialize on a shared cache line. Readers sum the stripes, which is cheap at the rate of a progress display. Besides
+ * the final summary the stats can be rendered as a progress line, see {@link ProgressReporter}, and in the Prometheus
+ * text format.
+ */
 public class StatsCollector {
-  private final AtomicInteger totalImages = new AtomicInteger();
-  private final AtomicInteger totalVideos = new AtomicInteger();
-  private final AtomicInteger unknownDateImages = new AtomicInteger();
-  private final AtomicInteger unknownDateVideos = new AtomicInteger();
-  private final AtomicInteger duplicateFiles = new AtomicInteger();
-  private final AtomicInteger errors = new AtomicInteger();
-  private final AtomicLong imageSize = new AtomicLong();
-  private final AtomicLong videoSize = new AtomicLong();
+  // Prometheus histogram bounds: powers of 4 from about 1 microsecond to 18 minutes
+  private static final int FIRST_BOUND_BITS = 10;
+  private static final int LAST_BOUND_BITS = 40;
+
+  private final LongAdder totalImages = new LongAdder();
+  private final LongAdder totalVideos = new LongAdder();
+  private final LongAdder unknownDateImages = new LongAdder();
+  private final LongAdder unknownDateVideos = new LongAdder();
+  private final LongAdder duplicateFiles = new LongAdder();
+  private final LongAdder alreadyOrganizedFiles = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder imageSize = new LongAdder();
+  private final LongAdder videoSize = new LongAdder();
+  private final LongAdder scannedFiles = new LongAdder();
+  private final LongAdder scannedBytes = new LongAdder();
+  private final LongAdder completedFiles = new LongAdder();
+  private final LongAdder completedBytes = new LongAdder();
+  private final Map<TransferMode, LongAdder> transferredFiles = new EnumMap<>(TransferMode.class);
+  private final Map<TransferMode, LongAdder> transferredBytes = new EnumMap<>(TransferMode.class);
+  private final Map<Stage, LatencyHistogram> latencies = new EnumMap<>(Stage.class);
+  private final long startNanos = System.nanoTime();
+  private volatile boolean scanComplete;
+
+  public StatsCollector() {
+    for (TransferMode mode : TransferMode.values()) {
+      transferredFiles.put(mode, new LongAdder());
+      transferredBytes.put(mode, new LongAdder());
+    }
+    for (Stage stage : Stage.values()) {
+      latencies.put(stage, new LatencyHistogram());
+    }
+  }
 
   public void incrementTotalImages() {
-    totalImages.incrementAndGet();
+    totalImages.increment();
   }
 
   public void incrementTotalVideos() {
-    totalVideos.incrementAndGet();
+    totalVideos.increment();
   }
 
   public void incrementUnknownDateImages() {
-    unknownDateImages.incrementAndGet();
+    unknownDateImages.increment();
   }
 
   public void incrementUnknownDateVideos() {
-    unknownDateVideos.incrementAndGet();
+    unknownDateVideos.increment();
   }
 
   public void incrementDuplicateFiles() {
-    duplicateFiles.incrementAndGet();
+    duplicateFiles.increment();
+  }
+
+  public void incrementAlreadyOrganizedFiles() {
+    alreadyOrganizedFiles.increment();
   }
 
   public void incrementErrors() {
-    errors.incrementAndGet();
+    errors.increment();
   }
 
   public void addImageSize(long size) {
-    imageSize.addAndGet(size);
+    imageSize.add(size);
   }
 
   public void addVideoSize(long size) {
-    videoSize.addAndGet(size);
+    videoSize.add(size);
+  }
+
+  public void addTransferred(TransferMode mode, long size) {
+    transferredFiles.get(mode).increment();
+    transferredBytes.get(mode).add(size);
+  }
+
+  /**
+   * Counts a file found by the scan, the work still to do is the scanned files which aren't completed yet.
+   */
+  public void addScanned(long size) {
+    scannedFiles.increment();
+    scannedBytes.add(size);
+  }
+
+  /**
+   * Marks the scan as done, from then on the scanned totals are final and an ETA can be given.
+   */
+  public void scanComplete() {
+    scanComplete = true;
+  }
+
+  /**
+   * Counts a file which went all the way through, whether it was placed, skipped or failed.
+   */
+  public void addCompleted(long size) {
+    completedFiles.increment();
+    completedBytes.add(size);
+  }
+
+  public void recordLatency(Stage stage, long nanos) {
+    latencies.get(stage).record(nanos);
+  }
+
+  public long scannedFiles() {
+    return scannedFiles.sum();
+  }
+
+  public long scannedBytes() {
+    return scannedBytes.sum();
+  }
+
+  public boolean isScanComplete() {
+    return scanComplete;
+  }
+
+  public long completedFiles() {
+    return completedFiles.sum();
+  }
+
+  public long completedBytes() {
+    return completedBytes.sum();
+  }
+
+  public long errors() {
+    return errors.sum();
+  }
+
+  LatencyHistogram latency(Stage stage) {
+    return latencies.get(stage);
+  }
+
+  public long elapsedNanos() {
+    return System.nanoTime() - startNanos;
   }
 
   public void printStats() {
     System.out.println("\n--- Statistics ---");
-    System.out.println("Total Images: " + totalImages.get());
-    System.out.println("Total Videos: " + totalVideos.get());
-    System.out.println("Images with Unknown Dates: " + unknownDateImages.get());
-    System.out.println("Videos with Unknown Dates: " + unknownDateVideos.get());
-    System.out.println("Duplicate Files: " + duplicateFiles.get());
-    System.out.println("Total Errors: " + errors.get());
-    System.out.println("Total Image Size: " + humanReadableSize(imageSize.get()));
-    System.out.println("Total Video Size: " + humanReadableSize(videoSize.get()));
-    System.out.println("Average Image Size: " + humanReadableSize(imageSize.get() / Math.max(1, totalImages.get())));
-    System.out.println("Average Video Size: " + humanReadableSize(videoSize.get() / Math.max(1, totalVideos.get())));
-    System.out.println("Total Files Processed: " + (totalImages.get() + totalVideos.get()));
-  }
-
-  private String humanReadableSize(long bytes) {
+    System.out.println("Total Images: " + totalImages.sum());
+    System.out.println("Total Videos: " + totalVideos.sum());
+    System.out.println("Images with Unknown Dates: " + unknownDateImages.sum());
+    System.out.println("Videos with Unknown Dates: " + unknownDateVideos.sum());
+    System.out.println("Duplicate Files: " + duplicateFiles.sum());
+    System.out.println("Files Already Organized: " + alreadyOrganizedFiles.sum());
+    System.out.println("Total Errors: " + errors.sum());
+    System.out.println("Total Image Size: " + humanReadableSize(imageSize.sum()));
+    System.out.println("Total Video Size: " + humanReadableSize(videoSize.sum()));
+    System.out.println("Average Image Size: " + humanReadableSize(imageSize.sum() / Math.max(1, totalImages.sum())));
+    System.out.println("Average Video Size: " + humanReadableSize(videoSize.sum() / Math.max(1, totalVideos.sum())));
+    System.out.println("Total Files Processed: " + (totalImages.sum() + totalVideos.sum()));
+    final double seconds = Math.max(1e-3, elapsedNanos() / 1e9);
+    for (TransferMode mode : TransferMode.values()) {
+      final long files = transferredFiles.get(mode).sum();
+      final long bytes = transferredBytes.get(mode).sum();
+      if (files > 0) {
+        System.out.printf("Throughput (%s): %d files, %s in %.1f s, %.1f MB/s, %.1f files/s%n", mode.getId(), files,
+                          humanReadableSize(bytes), seconds, bytes / seconds / (1024 * 1024), files / seconds);
+      }
+    }
+    printLatencies();
+  }
+
+  /**
+   * Prints the latency percentiles of the stages which ran.
+   */
+  public void printLatencies() {
+    for (Stage stage : Stage.values()) {
+      final LatencyHistogram histogram = latencies.get(stage);
+      if (histogram.count() > 0) {
+        System.out.printf("Latency (%s): %d files, mean %s, p50 %s, p95 %s, p99 %s, max %s%n", stage.getId(),
+                          histogram.count(), humanReadableDuration(histogram.sumNanos() / histogram.count()),
+                          humanReadableDuration(histogram.percentileNanos(0.5)),
+                          humanReadableDuration(histogram.percentileNanos(0.95)),
+                          humanReadableDuration(histogram.percentileNanos(0.99)),
+                          humanReadableDuration(histogram.maxNanos()));
+      }
+    }
+  }
+
+  /**
+   * @return The stats in the Prometheus text exposition format.
+   */
+  public String toPrometheusText() {
+    final StringBuilder text = new StringBuilder(8192);
+    counter(text, "scanned_files_total", "Files found by the scan.", scannedFiles.sum());
+    counter(text, "scanned_bytes_total", "Bytes of the files found by the scan.", scannedBytes.sum());
+    counter(text, "completed_files_total", "Files which went through every stage.", completedFiles.sum());
+    counter(text, "completed_bytes_total", "Bytes of the files which went through every stage.", completedBytes.sum());
+    counter(text, "images_total", "Images processed.", totalImages.sum());
+    counter(text, "videos_total", "Videos processed.", totalVideos.sum());
+    counter(text, "duplicate_files_total", "Files clashing with a different file of the same name.", duplicateFiles.sum());
+    counter(text, "already_organized_files_total", "Files skipped because an earlier run organized them.", alreadyOrganizedFiles.sum());
+    counter(text, "errors_total", "Files which failed.", errors.sum());
+    header(text, "transferred_files_total", "Files placed in the output directory.", "counter");
+    for (TransferMode mode : TransferMode.values()) {
+      sample(text, "transferred_files_total", "mode=\"" + mode.getId() + "\"", Long.toString(transferredFiles.get(mode).sum()));
+    }
+    header(text, "transferred_bytes_total", "Bytes placed in the output directory.", "counter");
+    for (TransferMode mode : TransferMode.values()) {
+      sample(text, "transferred_bytes_total", "mode=\"" + mode.getId() + "\"", Long.toString(transferredBytes.get(mode).sum()));
+    }
+    header(text, "stage_duration_seconds", "Time spent on a file by each stage.", "histogram");
+    for (Stage stage : Stage.values()) {
+      final LatencyHistogram histogram = latencies.get(stage);
+      final String labels = "stage=\"" + stage.getId() + "\"";
+      // Buckets are capped at the count read first, so they don't exceed +Inf while files are being recorded
+      final long count = histogram.count();
+      for (int bits = FIRST_BOUND_BITS; bits <= LAST_BOUND_BITS; bits += 2) {
+        final String bound = String.format(Locale.ROOT, "%.9f", (1L << bits) / 1e9);
+        sample(text, "stage_duration_seconds_bucket", labels + ",le=\"" + bound + "\"",
+               Long.toString(Math.min(count, histogram.countBelow(1L << bits))));
+      }
+      sample(text, "stage_duration_seconds_bucket", labels + ",le=\"+Inf\"", Long.toString(count));
+      sample(text, "stage_duration_seconds_sum", labels, String.format(Locale.ROOT, "%.9f", histogram.sumNanos() / 1e9));
+      sample(text, "stage_duration_seconds_count", labels, Long.toString(count));
+    }
+    return text.toString();
+  }
+
+  private static void counter(StringBuilder text, String name, String help, long value) {
+    header(text, name, help, "counter");
+    text.append("photo_organizer_").append(name).append(' ').append(value).append('\n');
+  }
+
+  private static void header(StringBuilder text, String name, String help, String type) {
+    text.append("# HELP photo_organizer_").append(name).append(' ').append(help).append('\n');
+    text.append("# TYPE photo_organizer_").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(StringBuilder text, String name, String labels, String value) {
+    text.append("photo_organizer_").append(name).append('{').append(labels).append("} ").append(value).append('\n');
+  }
+
+  static String humanReadableSize(long bytes) {
     if (bytes < 1024) return bytes + " B";
     int exp = (int) (Math.log(bytes) / Math.log(1024));
     String pre = "KMGTPE".charAt(exp - 1) + "";
     return String.format("%.1f %sB", bytes / Math.pow(1024, exp), pre);
   }
-}
\ No newline at end of file
+
+  private static String humanReadableDuration(long nanos) {
+    if (nanos < TimeUnit.MICROSECONDS.toNanos(1)) return nanos + " ns";
+    if (nanos < TimeUnit.MILLISECONDS.toNanos(1)) return String.format("%.1f us", nanos / 1e3);
+    if (nanos < TimeUnit.SECONDS.toNanos(1)) return String.format("%.1f ms", nanos / 1e6);
+    return String.format("%.2f s", nanos / 1e9);
+  }
+}
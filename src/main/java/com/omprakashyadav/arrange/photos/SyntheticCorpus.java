@@ -0,0 +1,234 @@
+package com.omprakashyadav.arrange.photos;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Generates a reproducible media library to benchmark against: JPEGs and PNGs with an EXIF capture date and mostly
+ * GPS coordinates, MP4s with an {@code mvhd} creation time, spread over nested directories, with a share of the files
+ * being byte-identical copies of others.
+ * <p>
+ * The files carry just enough structure for the organizer's readers, the rest is random filler to reach the requested
+ * size, so they don't render as images or play as videos. The same spec and seed always give the same files.
+ */
+public class SyntheticCorpus {
+
+  private static final DateTimeFormatter EXIF_DATE = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+  private static final long MP4_EPOCH_OFFSET_SECONDS = 2082844800L; // 1904-01-01 to 1970-01-01
+  private static final long FIRST_CAPTURE = LocalDateTime.of(2012, 1, 1, 0, 0).toEpochSecond(ZoneOffset.UTC);
+  private static final long LAST_CAPTURE = LocalDateTime.of(2024, 12, 31, 23, 59).toEpochSecond(ZoneOffset.UTC);
+  private static final double GPS_SHARE = 0.7;
+  private static final int DIRECTORIES_PER_LEVEL = 4;
+  private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+  private static final byte[] JFIF = {(byte) 0xFF, (byte) 0xE0, 0, 16, 'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0};
+
+  /**
+   * What to generate.
+   *
+   * @param images         Number of JPEG files.
+   * @param pngs           Number of PNG files.
+   * @param videos         Number of MP4 files.
+   * @param duplicateRatio Share of the files, from 0 to 1, which are copies of an earlier file of the same type.
+   * @param depth          Maximum directory nesting below the corpus directory.
+   * @param imageSize      Average size of an image in bytes, actual sizes range from half to one and a half times it.
+   * @param videoSize      Average size of a video in bytes.
+   * @param seed           Seed of the random contents, dates and places.
+   */
+  public record Spec(int images, int pngs, int videos, double duplicateRatio, int depth, int imageSize, int videoSize,
+                     long seed) {
+  }
+
+  /**
+   * @param files      Number of files written, duplicates included.
+   * @param duplicates Number of files which are copies of another file.
+   * @param bytes      Total size of the files.
+   */
+  public record Summary(int files, int duplicates, long bytes) {
+  }
+
+  private enum Kind {
+    JPEG("IMG_%06d.jpg"),
+    PNG("PNG_%06d.png"),
+    MP4("VID_%06d.mp4");
+
+    private final String namePattern;
+
+    Kind(String namePattern) {
+      this.namePattern = namePattern;
+    }
+  }
+
+  /**
+   * Writes the corpus into the directory, which is created if needed.
+   */
+  public static Summary generate(Path directory, Spec spec) throws IOException {
+    final Random random = new Random(spec.seed());
+    final List<List<Path>> written = List.of(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+    final int files = spec.images() + spec.pngs() + spec.videos();
+    int duplicates = 0;
+    long bytes = 0;
+    for (int i = 0; i < files; i++) {
+      final Kind kind = i < spec.images() ? Kind.JPEG : i < spec.images() + spec.pngs() ? Kind.PNG : Kind.MP4;
+      final List<Path> sameKind = written.get(kind.ordinal());
+      final Path parent = randomDirectory(directory, spec.depth(), random);
+      Files.createDirectories(parent);
+      final Path file = parent.resolve(String.format(kind.namePattern, i));
+      if (!sameKind.isEmpty() && random.nextDouble() < spec.duplicateRatio()) {
+        Files.copy(sameKind.get(random.nextInt(sameKind.size())), file);
+        duplicates++;
+      } else {
+        Files.write(file, randomFile(kind, spec, random));
+      }
+      sameKind.add(file);
+      bytes += Files.size(file);
+    }
+    return new Summary(files, duplicates, bytes);
+  }
+
+  private static Path randomDirectory(Path directory, int depth, Random random) {
+    Path parent = directory;
+    final int levels = depth > 0 ? random.nextInt(depth + 1) : 0;
+    for (int level = 0; level < levels; level++) {
+      parent = parent.resolve("album" + level + "_" + random.nextInt(DIRECTORIES_PER_LEVEL));
+    }
+    return parent;
+  }
+
+  private static byte[] randomFile(Kind kind, Spec spec, Random random) {
+    final LocalDateTime captureDate = LocalDateTime.ofEpochSecond(FIRST_CAPTURE + (long) (random.nextDouble() * (LAST_CAPTURE - FIRST_CAPTURE)), 0, ZoneOffset.UTC);
+    final double[] coordinates = random.nextDouble() < GPS_SHARE
+                                 ? new double[]{random.nextDouble() * 140 - 60, random.nextDouble() * 360 - 180}
+                                 : null;
+    final int averageSize = kind == Kind.MP4 ? spec.videoSize() : spec.imageSize();
+    final byte[] filler = new byte[Math.max(0, averageSize / 2 + random.nextInt(Math.max(1, averageSize)))];
+    random.nextBytes(filler);
+    return switch (kind) {
+      case JPEG -> jpeg(captureDate, coordinates, filler);
+      case PNG -> png(captureDate, coordinates, filler);
+      case MP4 -> mp4(captureDate, filler);
+    };
+  }
+
+  /**
+   * @return A JPEG with an EXIF APP1 segment, followed by the filler as scan data.
+   */
+  static byte[] jpeg(LocalDateTime captureDate, double[] coordinates, byte[] filler) {
+    final byte[] tiff = tiff(captureDate, coordinates);
+    final ByteBuffer jpeg = ByteBuffer.allocate(2 + JFIF.length + 10 + tiff.length + 6 + filler.length + 2);
+    jpeg.putShort((short) 0xFFD8).put(JFIF);
+    jpeg.putShort((short) 0xFFE1).putShort((short) (2 + 6 + tiff.length)).put("Exif\0\0".getBytes(StandardCharsets.US_ASCII)).put(tiff);
+    jpeg.putShort((short) 0xFFDA).putShort((short) 2).put(filler).putShort((short) 0xFFD9);
+    return jpeg.array();
+  }
+
+  /**
+   * @return A 1x1 grey PNG with an eXIf chunk, the filler in a private ancillary chunk which decoders skip.
+   */
+  static byte[] png(LocalDateTime captureDate, double[] coordinates, byte[] filler) {
+    final byte[] header = ByteBuffer.allocate(13).putInt(1).putInt(1).put((byte) 8).put((byte) 0).array();
+    final Deflater deflater = new Deflater();
+    deflater.setInput(new byte[]{0, (byte) 0x80}); // filter type, pixel
+    deflater.finish();
+    final byte[] pixels = new byte[64];
+    final int pixelsLength = deflater.deflate(pixels);
+    deflater.end();
+    final byte[] tiff = tiff(captureDate, coordinates);
+    final ByteBuffer png = ByteBuffer.allocate(PNG_SIGNATURE.length + 5 * 12 + header.length + tiff.length + filler.length + pixelsLength);
+    png.put(PNG_SIGNATURE);
+    chunk(png, "IHDR", header, header.length);
+    chunk(png, "eXIf", tiff, tiff.length);
+    chunk(png, "beNc", filler, filler.length);
+    chunk(png, "IDAT", pixels, pixelsLength);
+    chunk(png, "IEND", new byte[0], 0);
+    return png.array();
+  }
+
+  /**
+   * @return An MP4 with a version 0 {@code mvhd} holding the creation time, the filler as media data.
+   */
+  static byte[] mp4(LocalDateTime captureDate, byte[] filler) {
+    final long creationTime = captureDate.toEpochSecond(ZoneOffset.UTC) + MP4_EPOCH_OFFSET_SECONDS;
+    final ByteBuffer mp4 = ByteBuffer.allocate(24 + 8 + 108 + 8 + filler.length);
+    mp4.putInt(24).put("ftypisom".getBytes(StandardCharsets.US_ASCII)).putInt(0x200).put("isommp41".getBytes(StandardCharsets.US_ASCII));
+    mp4.putInt(8 + 108).put("moov".getBytes(StandardCharsets.US_ASCII));
+    mp4.putInt(108).put("mvhd".getBytes(StandardCharsets.US_ASCII));
+    mp4.putInt(0).putInt((int) creationTime).putInt((int) creationTime).putInt(1000).putInt(0); // version and flags, times, timescale, duration
+    mp4.putInt(0x00010000).putShort((short) 0x0100).put(new byte[10]); // rate, volume, reserved
+    mp4.putInt(0x00010000).putInt(0).putInt(0).putInt(0).putInt(0x00010000).putInt(0).putInt(0).putInt(0).putInt(0x40000000); // identity matrix
+    mp4.put(new byte[24]).putInt(1); // pre-defined, next track id
+    mp4.putInt(8 + filler.length).put("mdat".getBytes(StandardCharsets.US_ASCII)).put(filler);
+    return mp4.array();
+  }
+
+  /**
+   * @return A little-endian TIFF holding DateTimeOriginal in an EXIF IFD and, if given, the coordinates in a GPS IFD.
+   */
+  static byte[] tiff(LocalDateTime captureDate, double[] coordinates) {
+    final int pointers = coordinates != null ? 2 : 1;
+    final int ifd0 = 8;
+    final int exifIfd = ifd0 + 2 + pointers * 12 + 4;
+    final int gpsIfd = exifIfd + 2 + 12 + 4;
+    final int date = coordinates != null ? gpsIfd + 2 + 4 * 12 + 4 : gpsIfd;
+    final int latitudeData = date + 20;
+    final int longitudeData = latitudeData + 24;
+    final ByteBuffer tiff = ByteBuffer.allocate(coordinates != null ? longitudeData + 24 : latitudeData).order(ByteOrder.LITTLE_ENDIAN);
+    tiff.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(ifd0);
+    tiff.putShort((short) pointers);
+    entry(tiff, 0x8769, 4, 1, exifIfd);
+    if (coordinates != null) {
+      entry(tiff, 0x8825, 4, 1, gpsIfd);
+    }
+    tiff.putInt(0);
+    tiff.putShort((short) 1);
+    entry(tiff, 0x9003, 2, 20, date);
+    tiff.putInt(0);
+    if (coordinates != null) {
+      tiff.putShort((short) 4);
+      entry(tiff, 1, 2, 2, coordinates[0] < 0 ? 'S' : 'N');
+      entry(tiff, 2, 5, 3, latitudeData);
+      entry(tiff, 3, 2, 2, coordinates[1] < 0 ? 'W' : 'E');
+      entry(tiff, 4, 5, 3, longitudeData);
+      tiff.putInt(0);
+    }
+    tiff.put(EXIF_DATE.format(captureDate).getBytes(StandardCharsets.US_ASCII)).put((byte) 0);
+    if (coordinates != null) {
+      degrees(tiff, Math.abs(coordinates[0]));
+      degrees(tiff, Math.abs(coordinates[1]));
+    }
+    return tiff.array();
+  }
+
+  private static void entry(ByteBuffer tiff, int tag, int type, int count, int value) {
+    tiff.putShort((short) tag).putShort((short) type).putInt(count).putInt(value);
+  }
+
+  /**
+   * Writes degrees, minutes and seconds as rationals, the seconds in hundredths.
+   */
+  private static void degrees(ByteBuffer tiff, double value) {
+    final int degrees = (int) value;
+    final int minutes = (int) ((value - degrees) * 60);
+    final long hundredthSeconds = Math.round(((value - degrees) * 60 - minutes) * 6000);
+    tiff.putInt(degrees).putInt(1).putInt(minutes).putInt(1).putInt((int) hundredthSeconds).putInt(100);
+  }
+
+  private static void chunk(ByteBuffer png, String type, byte[] data, int length) {
+    final byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+    final CRC32 crc = new CRC32();
+    crc.update(typeBytes);
+    crc.update(data, 0, length);
+    png.putInt(length).put(typeBytes).put(data, 0, length).putInt((int) crc.getValue());
+  }
+}
@@ -0,0 +1,35 @@
+package com.omprakashyadav.arrange.photos;
+
+/**
+ * Token bucket rate limiter which never blocks: callers reserve a token and are told how long to wait before using
+ * it. Tokens accrue at {@code permitsPerSecond} up to a burst of one second's worth.
+ */
+public class TokenBucket {
+
+  private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+  private final double permitsPerSecond;
+  private final double capacity;
+  private double tokens;
+  private long lastRefill;
+
+  public TokenBucket(double permitsPerSecond) {
+    this.permitsPerSecond = Math.max(0.001, permitsPerSecond);
+    this.capacity = Math.max(1, this.permitsPerSecond);
+    this.tokens = capacity;
+    this.lastRefill = System.nanoTime();
+  }
+
+  /**
+   * Takes a token, going into debt if none is left so later callers queue up behind this one.
+   *
+   * @return Nanoseconds to wait before the reserved token may be used, 0 if it may be used right away.
+   */
+  public synchronized long reserve() {
+    final long now = System.nanoTime();
+    tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerSecond / NANOS_PER_SECOND);
+    lastRefill = now;
+    tokens -= 1;
+    return tokens >= 0 ? 0 : (long) (-tokens / permitsPerSecond * NANOS_PER_SECOND);
+  }
+}
@@ -10,7 +10,8 @@ import picocli.CommandLine;
   subcommands = {
     PhotoOrganizerCli.class, // Add the existing PhotoOrganizerCli as a subcommand
     PhotoSyncCli.class,       // Add the new PhotoSyncCli as a subcommand
-    DuplicateFileDetectCli.class // Add the new DuplicateFileDetectCli as a subcommand
+    DuplicateFileDetectCli.class, // Add the new DuplicateFileDetectCli as a subcommand
+    BenchCli.class // Generates a synthetic library and measures the commands against it
   }
 )
 public class TopLevelCommand {
@@ -0,0 +1,34 @@
+package com.omprakashyadav.arrange.photos;
+
+public enum TransferMode {
+  //Leave the input untouched
+  COPY("copy"),
+  //Rename into the output directory, copy and delete only when it is on another filesystem
+  MOVE("move"),
+  //Hard link to the input, copy only when it is on another filesystem
+  HARD_LINK("hard"),
+  //Symbolic link to the input
+  SYMBOLIC_LINK("sym");
+
+  private final String id;
+
+  TransferMode(String id) {
+    this.id = id;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public static TransferMode fromString(String v) {
+    if (v != null) {
+      v = v.trim();
+      for (TransferMode mode : TransferMode.values()) {
+        if (mode.id.equalsIgnoreCase(v) || mode.name().equalsIgnoreCase(v)) {
+          return mode;
+        }
+      }
+    }
+    return COPY;
+  }
+}
@@ -0,0 +1,380 @@
+package com.omprakashyadav.arrange.photos;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.TemporalAccessor;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process reader for the creation time and GPS position of ISO-BMFF / QuickTime ({@code .mp4}, {@code .mov}) and
+ * RIFF ({@code .avi}) videos. Only box and chunk headers are walked with positional reads, so media data (mdat, movi)
+ * is skipped without being read.
+ * <p>
+ * For MP4/MOV the creation time is taken from, in order: the {@code com.apple.quicktime.creationdate} metadata key,
+ * the {@code udta/©day} string and finally {@code moov/mvhd}. For AVI it is the {@code IDIT} chunk.
+ */
+public class VideoContainerReader {
+
+  private static final int MAX_METADATA_BOX_SIZE = 1024 * 1024;
+  private static final long MP4_EPOCH_OFFSET_SECONDS = 2082844800L; // 1904-01-01 to 1970-01-01
+
+  private static final int MOOV = 0x6D6F6F76;
+  private static final int MVHD = 0x6D766864;
+  private static final int UDTA = 0x75647461;
+  private static final int META = 0x6D657461;
+  private static final int HDLR = 0x68646C72;
+  private static final int KEYS = 0x6B657973;
+  private static final int ILST = 0x696C7374;
+  private static final int DATA = 0x64617461;
+  private static final int DAY = 0xA9646179; // ©day
+  private static final int XYZ = 0xA978797A; // ©xyz
+
+  private static final int RIFF = 0x52494646;
+  private static final int LIST = 0x4C495354;
+  private static final int HDRL = 0x6864726C;
+  private static final int IDIT = 0x49444954;
+
+  private static final Pattern ISO_6709 = Pattern.compile("([+-]\\d+(?:\\.\\d+)?)([+-]\\d+(?:\\.\\d+)?)");
+  private static final DateTimeFormatter ISO_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss[.SSS][XXX][XX]");
+  private static final DateTimeFormatter CTIME_DATE = new DateTimeFormatterBuilder().parseCaseInsensitive()
+                                                                                     .appendPattern("EEE MMM d HH:mm:ss yyyy")
+                                                                                     .toFormatter(Locale.ENGLISH);
+  private static final DateTimeFormatter EXIF_DATE = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+
+  /**
+   * @param creationDate The creation time, or null.
+   * @param coordinates  Latitude and longitude in decimal degrees, or null.
+   */
+  public record VideoHeader(Date creationDate, double[] coordinates) {
+    static final VideoHeader EMPTY = new VideoHeader(null, null);
+  }
+
+  /**
+   * Reads the creation time and location of a video.
+   *
+   * @param path The video file.
+   * @return The header, with null values for what the file doesn't have, or null if the container isn't supported.
+   */
+  public static VideoHeader read(Path path) {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      final ByteBuffer header = ByteBuffer.allocate(16);
+      if (!readFully(channel, header, 0, 12)) {
+        return null;
+      }
+      if (header.getInt(0) == RIFF) {
+        return readAvi(channel);
+      }
+      if (header.getInt(4) == 0x66747970 || header.getInt(4) == MOOV || header.getInt(4) == 0x77696465 // ftyp, moov, wide
+          || header.getInt(4) == 0x6D646174 || header.getInt(4) == 0x66726565) { // mdat, free
+        return readMp4(channel, header);
+      }
+      return null;
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static VideoHeader readMp4(FileChannel channel, ByteBuffer header) throws IOException {
+    final Box moov = findBox(channel, header, 0, channel.size(), MOOV);
+    if (moov == null) {
+      return VideoHeader.EMPTY;
+    }
+    Date mvhdDate = null;
+    String dayDate = null;
+    String metaDate = null;
+    String location = null;
+    long position = moov.contentStart();
+    while (position + 8 <= moov.end()) {
+      final Box box = readBox(channel, header, position, moov.end());
+      if (box == null) {
+        break;
+      }
+      if (box.type() == MVHD) {
+        mvhdDate = readMvhd(channel, box);
+      } else if (box.type() == UDTA && box.contentSize() <= MAX_METADATA_BOX_SIZE) {
+        final ByteBuffer udta = readContent(channel, box);
+        dayDate = firstNonNull(dayDate, readQuickTimeString(udta, DAY));
+        location = firstNonNull(location, readQuickTimeString(udta, XYZ));
+        final ByteBuffer udtaMeta = findChild(udta, META);
+        if (udtaMeta != null) {
+          dayDate = firstNonNull(dayDate, readItemListString(udtaMeta, DAY));
+        }
+      } else if (box.type() == META && box.contentSize() <= MAX_METADATA_BOX_SIZE) {
+        final ByteBuffer meta = readContent(channel, box);
+        metaDate = readMdtaString(meta, "com.apple.quicktime.creationdate");
+        location = firstNonNull(location, readMdtaString(meta, "com.apple.quicktime.location.ISO6709"));
+      }
+      position = box.end();
+    }
+    Date creationDate = parseIsoDate(metaDate);
+    if (creationDate == null) {
+      creationDate = parseIsoDate(dayDate);
+    }
+    if (creationDate == null) {
+      creationDate = mvhdDate;
+    }
+    return new VideoHeader(creationDate, parseIso6709(location));
+  }
+
+  private static Date readMvhd(FileChannel channel, Box box) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(12);
+    if (!readFully(channel, buffer, box.contentStart(), 12)) {
+      return null;
+    }
+    final long seconds = buffer.get(0) == 1 ? buffer.getLong(4) : buffer.getInt(4) & 0xFFFFFFFFL;
+    return seconds > 0 ? new Date((seconds - MP4_EPOCH_OFFSET_SECONDS) * 1000) : null;
+  }
+
+  /**
+   * QuickTime user data text: 16 bit length, 16 bit language, then the string.
+   */
+  private static String readQuickTimeString(ByteBuffer container, int type) {
+    final ByteBuffer box = findChild(container, type);
+    if (box == null || box.remaining() < 4) {
+      return null;
+    }
+    final int length = Math.min(box.getShort(0) & 0xFFFF, box.remaining() - 4);
+    return string(box, 4, length);
+  }
+
+  /**
+   * iTunes style item list: meta (full box) / ilst / type / data.
+   */
+  private static String readItemListString(ByteBuffer meta, int type) {
+    final ByteBuffer ilst = findChild(metaChildren(meta), ILST);
+    if (ilst == null) {
+      return null;
+    }
+    final ByteBuffer item = findChild(ilst, type);
+    return item != null ? readDataString(item) : null;
+  }
+
+  /**
+   * QuickTime metadata: meta / keys lists "mdta" key names, ilst items are typed by the 1-based key index.
+   */
+  private static String readMdtaString(ByteBuffer meta, String key) {
+    final ByteBuffer children = metaChildren(meta);
+    final ByteBuffer keys = findChild(children, KEYS);
+    final ByteBuffer ilst = findChild(children, ILST);
+    if (keys == null || ilst == null || keys.remaining() < 8) {
+      return null;
+    }
+    final int count = keys.getInt(4);
+    int position = 8;
+    for (int index = 1; index <= count && position + 8 <= keys.limit(); index++) {
+      final int size = keys.getInt(position);
+      if (size < 8 || position + size > keys.limit()) {
+        return null;
+      }
+      if (key.equals(string(keys, position + 8, size - 8))) {
+        final ByteBuffer item = findChild(ilst, index);
+        return item != null ? readDataString(item) : null;
+      }
+      position += size;
+    }
+    return null;
+  }
+
+  private static String readDataString(ByteBuffer item) {
+    final ByteBuffer data = findChild(item, DATA);
+    return data != null && data.remaining() > 8 ? string(data, 8, data.remaining() - 8) : null;
+  }
+
+  /**
+   * The ISO meta box is a full box with version and flags, the QuickTime one isn't. Only the latter starts with hdlr.
+   */
+  private static ByteBuffer metaChildren(ByteBuffer meta) {
+    if (meta.remaining() >= 8 && meta.getInt(4) == HDLR) {
+      return meta;
+    }
+    return meta.remaining() >= 4 ? meta.slice(4, meta.remaining() - 4) : meta;
+  }
+
+  private static ByteBuffer findChild(ByteBuffer container, int type) {
+    if (container == null) {
+      return null;
+    }
+    int position = 0;
+    while (position + 8 <= container.limit()) {
+      final long size = container.getInt(position) & 0xFFFFFFFFL;
+      if (size < 8 || position + size > container.limit()) {
+        return null;
+      }
+      if (container.getInt(position + 4) == type) {
+        return container.slice(position + 8, (int) size - 8);
+      }
+      position += (int) size;
+    }
+    return null;
+  }
+
+  private static Box findBox(FileChannel channel, ByteBuffer header, long start, long end, int type) throws IOException {
+    long position = start;
+    while (position + 8 <= end) {
+      final Box box = readBox(channel, header, position, end);
+      if (box == null) {
+        return null;
+      }
+      if (box.type() == type) {
+        return box;
+      }
+      position = box.end();
+    }
+    return null;
+  }
+
+  private static Box readBox(FileChannel channel, ByteBuffer header, long position, long end) throws IOException {
+    if (!readFully(channel, header, position, 16)) {
+      if (!readFully(channel, header, position, 8)) {
+        return null;
+      }
+    }
+    long size = header.getInt(0) & 0xFFFFFFFFL;
+    int headerSize = 8;
+    if (size == 1) {
+      size = header.getLong(8);
+      headerSize = 16;
+    } else if (size == 0) {
+      size = end - position;
+    }
+    if (size < headerSize || position + size > end) {
+      return null;
+    }
+    return new Box(header.getInt(4), position + headerSize, position + size);
+  }
+
+  private static ByteBuffer readContent(FileChannel channel, Box box) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate((int) box.contentSize());
+    readFully(channel, buffer, box.contentStart(), buffer.capacity());
+    return buffer.clear();
+  }
+
+  /**
+   * RIFF chunks are little endian and padded to an even size. IDIT lives in the hdrl list.
+   */
+  private static VideoHeader readAvi(FileChannel channel) throws IOException {
+    final ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+    final long end = channel.size();
+    long position = 12;
+    while (position + 12 <= end) {
+      if (!readFully(channel, header, position, 12)) {
+        break;
+      }
+      final int id = Integer.reverseBytes(header.getInt(0));
+      final long size = header.getInt(4) & 0xFFFFFFFFL;
+      if (id == LIST && Integer.reverseBytes(header.getInt(8)) == HDRL) {
+        final long listEnd = Math.min(end, position + 8 + size);
+        long child = position + 12;
+        while (child + 8 <= listEnd) {
+          if (!readFully(channel, header, child, 8)) {
+            break;
+          }
+          final long childSize = header.getInt(4) & 0xFFFFFFFFL;
+          if (Integer.reverseBytes(header.getInt(0)) == IDIT && childSize <= 256) {
+            final ByteBuffer idit = ByteBuffer.allocate((int) childSize);
+            readFully(channel, idit, child + 8, (int) childSize);
+            return new VideoHeader(parseAviDate(string(idit, 0, (int) childSize)), null);
+          }
+          child += 8 + childSize + (childSize & 1);
+        }
+        return VideoHeader.EMPTY;
+      }
+      position += 8 + size + (size & 1);
+    }
+    return VideoHeader.EMPTY;
+  }
+
+  private static Date parseIsoDate(String value) {
+    if (value == null || value.length() < 19) {
+      return null;
+    }
+    try {
+      final TemporalAccessor parsed = ISO_DATE.parseBest(value.trim(), OffsetDateTime::from, LocalDateTime::from);
+      if (parsed instanceof OffsetDateTime offsetDateTime) {
+        return Date.from(offsetDateTime.toInstant());
+      }
+      return Date.from(((LocalDateTime) parsed).toInstant(ZoneOffset.UTC));
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static Date parseAviDate(String value) {
+    if (value == null) {
+      return null;
+    }
+    for (DateTimeFormatter formatter : List.of(CTIME_DATE, EXIF_DATE)) {
+      try {
+        return Date.from(LocalDateTime.parse(value.trim().replaceAll("\\s+", " "), formatter).toInstant(ZoneOffset.UTC));
+      } catch (RuntimeException e) {
+        // Try the next format
+      }
+    }
+    return null;
+  }
+
+  private static double[] parseIso6709(String value) {
+    if (value == null) {
+      return null;
+    }
+    final Matcher matcher = ISO_6709.matcher(value);
+    if (!matcher.find()) {
+      return null;
+    }
+    final double latitude = Double.parseDouble(matcher.group(1));
+    final double longitude = Double.parseDouble(matcher.group(2));
+    if (latitude < -90 || latitude > 90 || longitude < -180 || longitude > 180) {
+      return null;
+    }
+    return new double[]{latitude, longitude};
+  }
+
+  private static String string(ByteBuffer buffer, int offset, int length) {
+    if (length <= 0 || offset + length > buffer.limit()) {
+      return null;
+    }
+    final byte[] bytes = new byte[length];
+    buffer.get(offset, bytes);
+    int end = length;
+    while (end > 0 && bytes[end - 1] == 0) {
+      end--;
+    }
+    return new String(bytes, 0, end, StandardCharsets.UTF_8);
+  }
+
+  private static <T> T firstNonNull(T first, T second) {
+    return first != null ? first : second;
+  }
+
+  private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position, int length) throws IOException {
+    buffer.clear().limit(length);
+    while (buffer.hasRemaining()) {
+      final int read = channel.read(buffer, position);
+      if (read == -1) {
+        return false;
+      }
+      position += read;
+    }
+    return true;
+  }
+
+  private record Box(int type, long contentStart, long end) {
+    long contentSize() {
+      return end - contentStart;
+    }
+  }
+}
@@ -14,9 +14,11 @@ public class VideoMetadataReader {
 
   private static final ObjectMapper objectMapper = new ObjectMapper();
 
-  public static Date getCreationDateFromFFmpeg(Path videoFilePath) throws Exception {
+  public static Date getCreationDateFromFFmpeg(Path videoFilePath, boolean verbose) throws Exception {
     String[] strings = {"ffprobe", "-i", videoFilePath.toAbsolutePath().toString(), "-show_format", "-show_streams", "-print_format", "json"};
-    System.out.println("Running command: " + String.join(" ", strings));
+    if (verbose) {
+      System.out.println("Running command: " + String.join(" ", strings));
+    }
     ProcessBuilder processBuilder = new ProcessBuilder(
       strings
     );
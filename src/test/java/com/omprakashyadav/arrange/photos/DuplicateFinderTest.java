@@ -0,0 +1,65 @@
+package com.omprakashyadav.arrange.photos;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DuplicateFinderTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void findsIdenticalFilesAcrossSpilledRuns() throws IOException {
+    final byte[] small = random(100, 1);
+    final byte[] large = random(300 * 1024, 2);
+    final byte[] largeVariant = large.clone();
+    // Between the sampled head and middle blocks, so only the full digest tells the files apart
+    largeVariant[100 * 1024] ^= 1;
+
+    final Path smallOriginal = write("small.jpg", small);
+    final Path smallCopy = write("small-copy.jpg", small);
+    final Path smallOther = write("small-other.jpg", random(100, 3));
+    final Path largeOriginal = write("large.jpg", large);
+    final Path largeCopy = write("large-copy.jpg", large);
+    final Path largeVariantFile = write("large-variant.jpg", largeVariant);
+
+    final Map<Digest, DuplicateFinder.DuplicateGroup> groups;
+    try (SizeIndex index = new SizeIndex(512, 0)) {
+      int padding = 0;
+      for (Path file : new Path[]{smallOriginal, largeOriginal, smallOther, largeVariantFile, smallCopy, largeCopy}) {
+        index.add(Files.size(file), file);
+        // Files which were deleted since the scan, they spread the real files over several runs
+        for (int i = 0; i < 10; i++) {
+          index.add(1_000_000 + padding, directory.resolve("missing-" + padding++ + ".jpg"));
+        }
+      }
+      assertTrue(index.spilledRuns() > 1, "expected the index to spill, runs: " + index.spilledRuns());
+      groups = new DuplicateFinder(ScanCatalog.inMemory(), HashEngine.of(HashAlgorithm.SHA_256)).findDuplicates(index);
+    }
+
+    final Set<Set<Path>> found = new HashSet<>();
+    groups.values().forEach(group -> found.add(group.files()));
+    assertEquals(Set.of(Set.of(smallOriginal, smallCopy), Set.of(largeOriginal, largeCopy)), found);
+  }
+
+  private Path write(String name, byte[] content) throws IOException {
+    return Files.write(directory.resolve(name), content).toAbsolutePath();
+  }
+
+  private static byte[] random(int size, long seed) {
+    final byte[] content = new byte[size];
+    new Random(seed).nextBytes(content);
+    return content;
+  }
+}
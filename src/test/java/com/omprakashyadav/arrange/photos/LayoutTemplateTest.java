@@ -0,0 +1,87 @@
+package com.omprakashyadav.arrange.photos;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LayoutTemplateTest {
+
+  private static final String[] ZONES = {"UTC", "Europe/Paris", "America/New_York", "Asia/Kolkata", "Australia/Lord_Howe",
+                                         "+05:45", "-09:30", "Pacific/Kiritimati"};
+
+  @Test
+  void dateFieldsMatchJavaTime() {
+    final Random random = new Random(7);
+    for (String zoneId : ZONES) {
+      final ZoneId zone = ZoneId.of(zoneId);
+      final LayoutTemplate template = LayoutTemplate.compile("{yyyy}/{yy}/{MM}/{M}/{MMM}/{MMMM}/{dd}/{d}", zone);
+      for (int i = 0; i < 20_000; i++) {
+        // From 1900 to 2100, including dates before the epoch
+        final long millis = -2_208_988_800_000L + (long) (random.nextDouble() * 6_311_433_600_000L);
+        final ZonedDateTime date = Instant.ofEpochMilli(millis).atZone(zone);
+        final String month = date.getMonth().name();
+        final String expected = String.format(Locale.ROOT, "%d/%02d/%02d/%d/%s/%s/%02d/%d", date.getYear(),
+                                              date.getYear() % 100, date.getMonthValue(), date.getMonthValue(),
+                                              month.substring(0, 3), month, date.getDayOfMonth(), date.getDayOfMonth());
+        assertEquals(expected, template.format(new Date(millis)), zoneId + " " + date);
+      }
+    }
+  }
+
+  @Test
+  void presetLayoutsRenderTheirDateFolders() {
+    final ZoneId zone = ZoneId.of("Europe/Paris");
+    // Midnight in Paris is still the previous day in UTC
+    final Date date = Date.from(ZonedDateTime.of(2021, 3, 7, 0, 30, 0, 0, zone).toInstant());
+    assertEquals("2021/MAR/7", DirectoryStructureLayout.YEAR_MONTH_DAY.toTemplate(zone).format(date));
+    assertEquals("2021/MAR", DirectoryStructureLayout.YEAR_MONTH.toTemplate(zone).format(date));
+    assertEquals("2021/MAR/6", DirectoryStructureLayout.YEAR_MONTH_DAY.toTemplate(ZoneId.of("UTC")).format(date));
+
+    final LayoutTemplate place = LayoutTemplate.parse("YYYY/MMM/DD/PLACE", zone);
+    assertTrue(place.hasPlace());
+    assertEquals("2021/MAR/7", place.format(date));
+    assertFalse(LayoutTemplate.parse("YYYY/MMM", zone).hasPlace());
+  }
+
+  @Test
+  void daysSharingACacheSlotDoNotMix() {
+    final LayoutTemplate template = LayoutTemplate.compile("{yyyy}-{MM}-{dd}", ZoneId.of("UTC"));
+    final long day = TimeUnit.DAYS.toMillis(1);
+    final long start = Date.from(Instant.parse("2020-01-01T12:00:00Z")).getTime();
+    for (int round = 0; round < 2; round++) {
+      assertEquals("2020-01-01", template.format(new Date(start)));
+      // 4096 days later falls in the same slot of the per-day cache
+      assertEquals("2031-03-20", template.format(new Date(start + 4096 * day)));
+    }
+  }
+
+  @Test
+  void cameraAndTypeFields() {
+    final LayoutTemplate template = LayoutTemplate.parse("{type}/{yyyy}/{camera}/{place}", ZoneId.of("UTC"));
+    final Date date = new Date(0);
+    assertTrue(template.hasPlace());
+    assertEquals("Images/1970/Canon EOS R5", template.format(date, "Canon EOS R5", MediaType.IMAGE));
+    assertEquals("Videos/1970/Unknown_Camera", template.format(date, null, MediaType.VIDEO));
+    assertEquals("Other/1970/a_b_c", template.format(date, "a/b:c", MediaType.OTHER));
+  }
+
+  @Test
+  void rejectsInvalidTemplates() {
+    final ZoneId zone = ZoneId.of("UTC");
+    assertThrows(IllegalArgumentException.class, () -> LayoutTemplate.compile("{yyyy}/{place}/{MM}", zone));
+    assertThrows(IllegalArgumentException.class, () -> LayoutTemplate.compile("{yyyy}/{hh}", zone));
+    assertThrows(IllegalArgumentException.class, () -> LayoutTemplate.compile("{yyyy}/{MM", zone));
+    assertThrows(IllegalArgumentException.class, () -> LayoutTemplate.compile("yyyy}/{MM}", zone));
+  }
+}
@@ -0,0 +1,106 @@
+package com.omprakashyadav.arrange.photos;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OperationJournalTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void resumeSkipsCompletedAndCleansUpInterruptedOperations() throws IOException {
+    final Path output = directory.resolve("output");
+    final Path done = input("done.jpg", 10);
+    final Path interrupted = input("interrupted.jpg", 20);
+
+    OperationJournal journal = OperationJournal.open(output, false, TransferMode.COPY);
+    final long doneOperation = journal.planned(done, output.resolve("done.jpg"), null, false, 10, 1);
+    Files.write(output.resolve("done.jpg"), new byte[10]);
+    journal.completed(doneOperation, output.resolve("done.jpg"));
+    journal.planned(interrupted, output.resolve("interrupted.jpg"), null, false, 20, 2);
+    final Path partial = Files.write(FileTransfer.partialFile(output.resolve("interrupted.jpg")), new byte[5]);
+    journal.close();
+    assertTrue(OperationJournal.exists(output));
+
+    journal = OperationJournal.open(output, true, TransferMode.COPY);
+    assertTrue(journal.isCompleted(done, 10, 1));
+    assertFalse(journal.isCompleted(done, 10, 3), "a changed source is organized again");
+    assertFalse(journal.isCompleted(interrupted, 20, 2));
+    assertFalse(Files.exists(partial));
+    journal.finish();
+    journal.close();
+    assertFalse(OperationJournal.exists(output));
+  }
+
+  @Test
+  void resumePutsStagedFilesBackInTheInput() throws IOException {
+    final Path output = directory.resolve("output");
+    final Path source = input("staged.jpg", 30);
+    final byte[] content = Files.readAllBytes(source);
+    final Path staged = Files.createDirectories(output.resolve(".staging")).resolve("staged.jpg");
+
+    final OperationJournal journal = OperationJournal.open(output, false, TransferMode.MOVE);
+    journal.planned(source, staged, null, true, 30, 1);
+    Files.move(source, staged);
+    journal.close();
+
+    OperationJournal.open(output, true, TransferMode.MOVE).close();
+    assertArrayEquals(content, Files.readAllBytes(source));
+    assertFalse(Files.exists(staged));
+  }
+
+  @Test
+  void failedOperationsDoNotKeepTheJournal() throws IOException {
+    final Path output = directory.resolve("output");
+    final Path source = input("failed.jpg", 40);
+    final Path staged = Files.createDirectories(output.resolve(".staging")).resolve("failed.jpg");
+
+    final OperationJournal journal = OperationJournal.open(output, false, TransferMode.MOVE);
+    final long operation = journal.planned(source, staged, null, true, 40, 1);
+    Files.move(source, staged);
+    journal.failed(operation);
+    journal.finish();
+    journal.close();
+
+    assertFalse(OperationJournal.exists(output));
+    assertTrue(Files.exists(source), "the staged file is moved back to the input");
+    assertFalse(Files.exists(staged));
+  }
+
+  @Test
+  void tornRecordAtTheEndIsDropped() throws IOException {
+    final Path output = directory.resolve("output");
+    final Path source = input("done.jpg", 10);
+
+    final OperationJournal journal = OperationJournal.open(output, false, TransferMode.COPY);
+    final long operation = journal.planned(source, output.resolve("done.jpg"), null, false, 10, 1);
+    Files.write(output.resolve("done.jpg"), new byte[10]);
+    journal.completed(operation, output.resolve("done.jpg"));
+    journal.close();
+    // A record cut short by a crash: a length with only part of its payload
+    Files.write(output.resolve(OperationJournal.JOURNAL_FILE), new byte[]{0, 0, 0, 40, 1, 0, 0}, StandardOpenOption.APPEND);
+
+    final OperationJournal resumed = OperationJournal.open(output, true, TransferMode.COPY);
+    assertTrue(resumed.isCompleted(source, 10, 1));
+    resumed.finish();
+    resumed.close();
+  }
+
+  private Path input(String name, int size) throws IOException {
+    final byte[] content = new byte[size];
+    for (int i = 0; i < size; i++) {
+      content[i] = (byte) (i * 31 + name.length());
+    }
+    return Files.write(Files.createDirectories(directory.resolve("input")).resolve(name), content);
+  }
+}
@@ -0,0 +1,76 @@
+package com.omprakashyadav.arrange.photos;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SizeIndexTest {
+
+  @Test
+  void reportsSharedSizesInIncreasingOrder() throws IOException {
+    try (SizeIndex index = new SizeIndex(256L * 1024 * 1024)) {
+      index.add(300, file("c1"));
+      index.add(100, file("a1"));
+      index.add(200, file("unique"));
+      index.add(300, file("c2"));
+      index.add(100, file("a2"));
+      index.add(300, file("c3"));
+
+      final Map<Long, Set<Path>> collisions = collisions(index);
+
+      assertEquals(0, index.spilledRuns());
+      assertEquals(List.of(100L, 300L), new ArrayList<>(collisions.keySet()));
+      assertEquals(Set.of(file("a1"), file("a2")), collisions.get(100L));
+      assertEquals(Set.of(file("c1"), file("c2"), file("c3")), collisions.get(300L));
+    }
+  }
+
+  @Test
+  void mergesCollisionsAcrossSpilledRuns() throws IOException {
+    try (SizeIndex index = new SizeIndex(512, 0)) {
+      // Each size is added once per round, so the files of a size end up in different runs
+      for (int round = 0; round < 4; round++) {
+        for (int size = 0; size < 50; size++) {
+          index.add(size, file("round" + round + "-size" + size));
+        }
+        index.add(1000 + round, file("unique" + round));
+      }
+
+      final Map<Long, Set<Path>> collisions = collisions(index);
+
+      assertTrue(index.spilledRuns() > 1, "expected the index to spill, runs: " + index.spilledRuns());
+      assertEquals(204, index.size());
+      assertEquals(50, collisions.size());
+      long previous = -1;
+      for (Map.Entry<Long, Set<Path>> collision : collisions.entrySet()) {
+        assertTrue(collision.getKey() > previous, "sizes out of order at " + collision.getKey());
+        previous = collision.getKey();
+        final Set<Path> expected = new HashSet<>();
+        for (int round = 0; round < 4; round++) {
+          expected.add(file("round" + round + "-size" + collision.getKey()));
+        }
+        assertEquals(expected, collision.getValue());
+      }
+    }
+  }
+
+  private static Map<Long, Set<Path>> collisions(SizeIndex index) throws IOException {
+    final Map<Long, Set<Path>> collisions = new LinkedHashMap<>();
+    index.forEachCollision((size, files) -> collisions.put(size, new HashSet<>(files)));
+    return collisions;
+  }
+
+  private static Path file(String name) {
+    return Path.of("/library", name + ".jpg").toAbsolutePath();
+  }
+}